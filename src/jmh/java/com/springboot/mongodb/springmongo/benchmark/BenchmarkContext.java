@@ -0,0 +1,64 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.service.JsonPatchCompiler;
+import com.springboot.mongodb.springmongo.service.MongoTemplateService;
+import com.springboot.mongodb.springmongo.service.UserService;
+import com.springboot.mongodb.springmongo.writebehind.UserWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Set;
+
+// Wires the service layer by hand like the unit tests do, no Spring context and no Mongo.
+final class BenchmarkContext {
+
+    final ObjectMapper objectMapper = new ObjectMapper();
+    final MongoMappingContext mappingContext = new MongoMappingContext();
+    final MappingMongoConverter converter;
+    final InMemoryMongoTemplate mongoTemplate;
+    final UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+    final JsonPatchCompiler jsonPatchCompiler = new JsonPatchCompiler();
+    final UserService userService = new UserService();
+    final MongoTemplateService mongoTemplateService = new MongoTemplateService();
+
+    BenchmarkContext() {
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setTypeMapper(new DefaultMongoTypeMapper(null));   // like MongoConfig, no _class
+        converter.afterPropertiesSet();
+        mongoTemplate = new InMemoryMongoTemplate(converter);
+        mongoTemplate.put(BenchmarkUsers.sample());
+
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(jsonPatchCompiler, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(jsonPatchCompiler, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(userService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(userService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(userService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(userService, "jsonPatchCompiler", jsonPatchCompiler);
+        UserCache userCache = new UserCache(10_000, Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(userService, "userCache", userCache);
+        // off: the benchmarks measure the write path itself, not the rollup rebuilds
+        UserRollups userRollups = new UserRollups("off", Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ZERO);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        ReflectionTestUtils.setField(mongoTemplateService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(mongoTemplateService, "userCache", userCache);
+        ReflectionTestUtils.setField(mongoTemplateService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(mongoTemplateService, "userRollups", userRollups);
+        ReflectionTestUtils.setField(mongoTemplateService, "singleFlight", new SingleFlight(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(mongoTemplateService, "userWriteBehind", new UserWriteBehind(new SimpleMeterRegistry(), false, Duration.ofMillis(100), 500, 10_000, 3));
+    }
+}
@@ -0,0 +1,47 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.springboot.mongodb.springmongo.model.Address;
+import com.springboot.mongodb.springmongo.model.Company;
+import com.springboot.mongodb.springmongo.model.Location;
+import com.springboot.mongodb.springmongo.model.Name;
+import com.springboot.mongodb.springmongo.model.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Test data shaped like person2.json, but a bit bigger (3 companies x 3 addresses, 10 skills).
+final class BenchmarkUsers {
+
+    static final String ID = "64b7f0c2a1b2c3d4e5f60718";
+
+    private BenchmarkUsers() {
+    }
+
+    static User sample() {
+        List<Company> companies = new ArrayList<>();
+        for (int c = 0; c < 3; c++) {
+            List<Address> addresses = new ArrayList<>();
+            for (int a = 0; a < 3; a++) {
+                addresses.add(new Address("Street " + c + "-" + a, "Landmark " + c + "-" + a));
+            }
+            companies.add(new Company("Company " + c, "user" + c + "@company.com", "+1 (949) 568-347" + c,
+                    new Location("India", addresses)));
+        }
+        List<String> skills = new ArrayList<>(List.of("java", "spring", "mongo", "kafka", "react",
+                "angular", "docker", "kubernetes", "aws", "sql"));
+
+        User user = new User();
+        user.setId(ID);
+        user.setRollNumber(10);
+        user.setName(new Name("Ranjith", "Kuruppanthara"));
+        user.setDateOfJoining("2014-07-23T04:46:35+0000");
+        user.setAge(34);
+        user.setGender("male");
+        user.setTechnology("Java");
+        user.setFavoriteFruit("strawberry");
+        user.setCompany(companies);
+        user.setSkillSet(skills);
+        user.setActive(true);
+        return user;
+    }
+}
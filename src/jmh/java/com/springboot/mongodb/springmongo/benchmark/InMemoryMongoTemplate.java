@@ -0,0 +1,147 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+In-process stand-in for the users collection.
+
+Does the same client side work as the real MongoTemplate (query/update mapping through the converter,
+decoding the result into the entity), the "server" is a map of Documents. Only supports what the benchmarks
+use: findById, and findAndModify by _id with $set / $unset / $push of single values, guards in the query are ignored.
+ioLatencyNanos > 0 parks the calling thread on every operation, like waiting for the reply of a remote server.
+Benchmarks should use idempotent updates ($set), otherwise the stored document keeps growing.
+ */
+class InMemoryMongoTemplate extends MongoTemplate {
+
+    private final MappingMongoConverter converter;
+    private final QueryMapper queryMapper;
+    private final UpdateMapper updateMapper;
+    private final Map<Object, Document> documents = new ConcurrentHashMap<>();
+    private volatile long ioLatencyNanos;
+
+    InMemoryMongoTemplate(MappingMongoConverter converter) {
+        super(new OfflineMongoDatabaseFactory(), converter);
+        this.converter = converter;
+        this.queryMapper = new QueryMapper(converter);
+        this.updateMapper = new UpdateMapper(converter);
+    }
+
+    void put(Object entity) {
+        Document document = new Document();
+        converter.write(entity, document);
+        documents.put(document.get("_id"), document);
+    }
+
+    void setIoLatencyNanos(long ioLatencyNanos) {
+        this.ioLatencyNanos = ioLatencyNanos;
+    }
+
+    @Override
+    public <T> T findById(Object id, Class<T> entityClass) {
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        Document filter = queryMapper.getMappedObject(new Query(Criteria.where("id").is(id)).getQueryObject(), entity);
+        simulateIo();
+        Document document = documents.get(idOf(filter));
+        if (document == null) {
+            return null;
+        }
+        synchronized (document) {
+            return converter.read(entityClass, document);
+        }
+    }
+
+    @Override
+    public <T> T findAndModify(Query query, UpdateDefinition update, FindAndModifyOptions options, Class<T> entityClass) {
+        MongoPersistentEntity<?> entity = converter.getMappingContext().getRequiredPersistentEntity(entityClass);
+        Document filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+        Document mappedUpdate = updateMapper.getMappedObject(update.getUpdateObject(), entity);
+
+        simulateIo();
+        Document document = documents.get(idOf(filter));
+        if (document == null) {
+            return null;
+        }
+        synchronized (document) {
+            apply(document, mappedUpdate);
+            return converter.read(entityClass, document);
+        }
+    }
+
+    private void simulateIo() {
+        if (ioLatencyNanos > 0) {
+            LockSupport.parkNanos(ioLatencyNanos);
+        }
+    }
+
+    private static Object idOf(Document filter) {
+        Object id = filter.get("_id");
+        if (id == null && filter.get("$and") instanceof List<?> and) {
+            for (Object part : and) {
+                if (part instanceof Document d && d.containsKey("_id")) {
+                    return d.get("_id");
+                }
+            }
+        }
+        return id;
+    }
+
+    private static void apply(Document document, Document update) {
+        update.get("$set", new Document()).forEach((path, value) -> set(document, path, value));
+        update.get("$unset", new Document()).keySet().forEach(path -> set(document, path, null));
+        update.get("$push", new Document()).forEach((path, value) -> {
+            @SuppressWarnings("unchecked")
+            List<Object> array = (List<Object>) get(document, path);
+            if (array != null) {
+                array.add(value);
+            }
+        });
+    }
+
+    private static Object get(Document document, String path) {
+        Object current = document;
+        for (String segment : path.split("\\.")) {
+            current = child(current, segment);
+        }
+        return current;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void set(Document document, String path, Object value) {
+        int dot = path.lastIndexOf('.');
+        Object parent = dot < 0 ? document : get(document, path.substring(0, dot));
+        String last = path.substring(dot + 1);
+        if (parent instanceof Document d) {
+            if (value == null) {
+                d.remove(last);
+            } else {
+                d.put(last, value);
+            }
+        } else if (parent instanceof List<?> list) {
+            ((List<Object>) list).set(Integer.parseInt(last), value);
+        }
+    }
+
+    private static Object child(Object current, String segment) {
+        if (current instanceof Document d) {
+            return d.get(segment);
+        }
+        if (current instanceof List<?> list) {
+            return list.get(Integer.parseInt(segment));
+        }
+        return null;
+    }
+}
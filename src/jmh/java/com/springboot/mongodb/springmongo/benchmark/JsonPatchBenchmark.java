@@ -0,0 +1,65 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.service.JsonPatchCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+PATCH /api/users/jsonPatch/{id} with a replace on a nested address plus a test guard.
+
+- convertApplyConvert: the in-memory path (User -> JsonNode -> apply -> User), used when a patch can't be compiled.
+- compile: only JsonPatchCompiler, patch -> Update + guards.
+- jsonPatchUpdate: UserService.jsonPatchUpdate end to end on the compiled path (findAndModify in the in-memory template).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonPatchBenchmark {
+
+    private static final String PATCH = """
+            [
+              {"op": "test", "path": "/age", "value": 34},
+              {"op": "replace", "path": "/company/1/location/address/2/address1", "value": "Infopark Phase 2"},
+              {"op": "replace", "path": "/technology", "value": "Kotlin"}
+            ]
+            """;
+
+    private BenchmarkContext context;
+    private JsonPatch patch;
+    private User user;
+
+    @Setup
+    public void setup() throws IOException {
+        context = new BenchmarkContext();
+        patch = context.objectMapper.readValue(PATCH, JsonPatch.class);
+        user = BenchmarkUsers.sample();
+    }
+
+    @Benchmark
+    public User convertApplyConvert() throws JsonPatchException, IOException {
+        JsonNode patched = patch.apply(context.objectMapper.convertValue(user, JsonNode.class));
+        return context.objectMapper.treeToValue(patched, User.class);
+    }
+
+    @Benchmark
+    public JsonPatchCompiler.CompiledPatch compile() {
+        return context.jsonPatchCompiler.compile(patch);
+    }
+
+    @Benchmark
+    public User jsonPatchUpdate() {
+        return context.userService.jsonPatchUpdate(BenchmarkUsers.ID, patch);
+    }
+}
@@ -0,0 +1,44 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.springboot.mongodb.springmongo.model.User;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// MappingMongoConverter entity <-> Document for the User/Company/Location/Address graph, paid on every save and find.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MappingConverterBenchmark {
+
+    private BenchmarkContext context;
+    private User user;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        context = new BenchmarkContext();
+        user = BenchmarkUsers.sample();
+        document = new Document();
+        context.converter.write(user, document);
+    }
+
+    @Benchmark
+    public Document write() {
+        Document target = new Document();
+        context.converter.write(user, target);
+        return target;
+    }
+
+    @Benchmark
+    public User read() {
+        return context.converter.read(User.class, document);
+    }
+}
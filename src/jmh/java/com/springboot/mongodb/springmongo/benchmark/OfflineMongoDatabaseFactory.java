@@ -0,0 +1,45 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoDatabase;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+
+// A MongoDatabaseFactory without a server, enough to construct a MongoTemplate. Anything that would really
+// talk to Mongo fails, InMemoryMongoTemplate overrides the operations the benchmarks use.
+class OfflineMongoDatabaseFactory implements MongoDatabaseFactory {
+
+    @Override
+    public MongoDatabase getMongoDatabase() {
+        throw new UnsupportedOperationException("No database in benchmarks");
+    }
+
+    @Override
+    public MongoDatabase getMongoDatabase(String dbName) {
+        throw new UnsupportedOperationException("No database in benchmarks");
+    }
+
+    @Override
+    public PersistenceExceptionTranslator getExceptionTranslator() {
+        return new MongoExceptionTranslator();
+    }
+
+    @Override
+    public CodecRegistry getCodecRegistry() {
+        return MongoClientSettings.getDefaultCodecRegistry();
+    }
+
+    @Override
+    public ClientSession getSession(ClientSessionOptions options) {
+        throw new UnsupportedOperationException("No sessions in benchmarks");
+    }
+
+    @Override
+    public MongoDatabaseFactory withSession(ClientSession session) {
+        throw new UnsupportedOperationException("No sessions in benchmarks");
+    }
+}
@@ -0,0 +1,151 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.springboot.mongodb.springmongo.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+Platform vs virtual threads for blocking Mongo calls under high concurrency.
+
+Every invocation fires CONCURRENCY simulated requests at once and waits for all of them:
+    80% reads  -> MongoTemplateService.findByIdWithObjectAndEntityClass
+    20% writes -> UserService.patchUser ($set, findAndModify)
+each operation waits ioLatencyMicros in the in-memory template, like the round-trip to a remote server.
+
+    platform -> fixed pool of 200 threads (Tomcat's default server.tomcat.threads.max)
+    virtual  -> one virtual thread per request (what spring.threads.virtual.enabled=true does), needs Java 21+,
+                on older JVMs this parameter fails in setup and the platform results are still reported
+
+    throughput      -> requests/ms, bursts of CONCURRENCY requests
+    requestLatency  -> p50 / p99 / p99.9 of a single request (SampleTime), timed while Load keeps CONCURRENCY - 1
+                       other requests in flight on the same executor, so queueing for a platform thread is included
+
+    mvn -Pjmh test-compile exec:exec -Djmh.args="ThreadModelBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ThreadModelBenchmark {
+
+    private static final int CONCURRENCY = 2_000;
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threadModel;
+
+    @Param({"1000"})
+    public long ioLatencyMicros;
+
+    private BenchmarkContext context;
+    private ExecutorService executor;
+    private final Map<String, Object> update = Map.of("technology", "Go");
+
+    @Setup(Level.Trial)
+    public void setup() throws ReflectiveOperationException {
+        context = new BenchmarkContext();
+        context.mongoTemplate.setIoLatencyNanos(TimeUnit.MICROSECONDS.toNanos(ioLatencyMicros));
+        executor = switch (threadModel) {
+            case "platform" -> Executors.newFixedThreadPool(PLATFORM_THREADS);
+            // looked up reflectively, the project compiles for Java 17
+            case "virtual" -> (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            default -> throw new IllegalArgumentException(threadModel);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OperationsPerInvocation(CONCURRENCY)
+    public int throughput() throws Exception {
+        return burst();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public User requestLatency(Load load) throws Exception {
+        return executor.submit(this::request).get();
+    }
+
+    private int burst() throws Exception {
+        List<Future<User>> requests = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            requests.add(executor.submit(this::request));
+        }
+        int completed = 0;
+        for (Future<User> request : requests) {
+            if (request.get() != null) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    // one simulated request, 80% reads / 20% writes
+    private User request() {
+        return ThreadLocalRandom.current().nextInt(100) < 20
+                ? context.userService.patchUser(BenchmarkUsers.ID, update)
+                : context.mongoTemplateService.findByIdWithObjectAndEntityClass(BenchmarkUsers.ID);
+    }
+
+    // background requests for requestLatency, keeps CONCURRENCY - 1 of them in flight for the whole trial
+    @State(Scope.Benchmark)
+    public static class Load {
+
+        private final Semaphore inFlight = new Semaphore(CONCURRENCY - 1);
+        private volatile boolean running;
+        private Thread driver;
+
+        @Setup(Level.Trial)
+        public void start(ThreadModelBenchmark benchmark) {
+            running = true;
+            driver = new Thread(() -> {
+                try {
+                    while (running) {
+                        inFlight.acquire();
+                        benchmark.executor.execute(() -> {
+                            try {
+                                benchmark.request();
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                } catch (InterruptedException | RejectedExecutionException e) {
+                    // trial is over
+                }
+            }, "load-driver");
+            driver.setDaemon(true);
+            driver.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws InterruptedException {
+            running = false;
+            driver.interrupt();
+            driver.join();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Request/response body cost of one nested User.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserJacksonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private User user;
+    private byte[] json;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        user = BenchmarkUsers.sample();
+        json = objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public User deserialize() throws IOException {
+        return objectMapper.readValue(json, User.class);
+    }
+}
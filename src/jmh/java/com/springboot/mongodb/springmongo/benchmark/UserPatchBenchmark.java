@@ -0,0 +1,59 @@
+package com.springboot.mongodb.springmongo.benchmark;
+
+import com.springboot.mongodb.springmongo.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+PATCH /api/users/{id} with {"technology": "Go", "favoriteFruit": "mango", "age": 35}
+
+- reflectionPatch: the old implementation (findField + setAccessible + setField per key on a loaded User),
+  kept as the baseline. Loading and saving are not part of it, so it only shows the per-field cost.
+- patchUser: UserService.patchUser, field lookup/conversion through UserFieldRegistry, update mapping and
+  decoding the returned document in the in-memory MongoTemplate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UserPatchBenchmark {
+
+    private BenchmarkContext context;
+    private Map<String, Object> updates;
+    private User user;
+
+    @Setup
+    public void setup() {
+        context = new BenchmarkContext();
+        user = BenchmarkUsers.sample();
+        updates = new HashMap<>();
+        updates.put("technology", "Go");
+        updates.put("favoriteFruit", "mango");
+        updates.put("age", 35);
+    }
+
+    @Benchmark
+    public User reflectionPatch() {
+        updates.forEach((k, v) -> {
+            Field field = ReflectionUtils.findField(User.class, k);
+            field.setAccessible(true);
+            ReflectionUtils.setField(field, user, v);
+        });
+        return user;
+    }
+
+    @Benchmark
+    public User patchUser() {
+        return context.userService.patchUser(BenchmarkUsers.ID, updates);
+    }
+}
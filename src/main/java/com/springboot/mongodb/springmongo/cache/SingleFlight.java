@@ -0,0 +1,86 @@
+package com.springboot.mongodb.springmongo.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/*
+Request coalescing for identical reads that are in flight at the same time.
+
+    request 1  findOne("Alice") --(leader)-------> Mongo ----> result
+    request 2  findOne("Alice") --(waits)--------------------> same result
+    request 3  findOne("Alice")             (after it finished) --(leader)--> Mongo ...
+
+The key is (operation, parameters). The first caller runs the read on its own thread, the callers that come while
+it runs wait for it and get the same result object (no second round-trip, no second decoding), so they must not
+modify it. Nothing is kept once the read has finished: this is not a cache, a read that starts later always sees
+the latest data. An exception is passed to every waiting caller.
+
+Metrics: singleflight.calls{operation, result=leader|coalesced}, e.g.
+    http://localhost:8081/actuator/metrics/singleflight.calls?tag=result:coalesced
+
+GET /api/users/{id} doesn't need this, UserCache already runs one load per id (cache.coalesced{cache=users}).
+ */
+@Component
+public class SingleFlight {
+
+    public record Outcome<T>(T value, boolean coalesced) {
+    }
+
+    private record Key(String operation, Object parameters) {
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public SingleFlight(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> T execute(String operation, Object parameters, Supplier<T> read) {
+        return call(operation, parameters, read).value();
+    }
+
+    // parameters must have a value based equals / hashCode (String, List.of(...), records)
+    @SuppressWarnings("unchecked")
+    public <T> Outcome<T> call(String operation, Object parameters, Supplier<T> read) {
+        Key key = new Key(operation, parameters);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            count(operation, "coalesced");
+            try {
+                return new Outcome<>((T) running.join(), true);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        count(operation, "leader");
+        try {
+            T value = read.get();
+            mine.complete(value);
+            return new Outcome<>(value, false);
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private void count(String operation, String result) {
+        counters.computeIfAbsent(operation + "|" + result, name -> Counter.builder("singleflight.calls")
+                        .description("Reads that ran (leader) or shared an identical read in flight (coalesced)")
+                        .tag("operation", operation)
+                        .tag("result", result)
+                        .register(registry))
+                .increment();
+    }
+}
@@ -0,0 +1,98 @@
+package com.springboot.mongodb.springmongo.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.UserCacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/*
+Read-through cache for GET /api/users/{id}.
+
+    get(id) --hit--> cached User
+            --miss--> loader (findById) --found--> cached for expire-after-write
+
+- Bounded: at most maximum-size users (Caffeine evicts the least useful ones first), and every entry expires
+  expire-after-write after it was loaded, so even a missed invalidation heals by itself.
+- Concurrent misses on the same id run the loader once, the other callers wait for it (no stampede on a hot id).
+  The entry is an async one (a CompletableFuture) that is completed by the calling thread after the Mongo read, so
+  the read never runs inside the map's compute lock. A load inside compute would hold a synchronized bin lock
+  during network I/O, which pins the carrier thread when requests run on virtual threads.
+- Missing users are not cached, a user inserted right after a 404 is visible immediately.
+
+Every write to the users collection must call invalidate(id), or invalidateAll() when the ids are not known
+(multi document updates by query). With app.user-cache.change-stream.enabled=true, UserCacheInvalidator (fed by
+UserChangeStream) also invalidates on writes done by other nodes.
+
+The cached User instances are shared, callers must not modify them.
+ */
+@Component
+@Slf4j
+public class UserCache {
+
+    private final AsyncCache<String, User> cache;
+    private final LongAdder coalesced = new LongAdder();
+
+    public UserCache(@Value("${app.user-cache.maximum-size:10000}") long maximumSize,
+                     @Value("${app.user-cache.expire-after-write:60s}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        log.info("User cache: maximum-size={} expire-after-write={}", maximumSize, expireAfterWrite);
+    }
+
+    public Optional<User> get(String id, Function<String, Optional<User>> loader) {
+        CompletableFuture<User> created = new CompletableFuture<>();
+        CompletableFuture<User> entry = cache.get(id, (key, executor) -> created);
+        if (entry == created) {
+            // we own the miss, load outside the cache lock. A null / failed future is dropped from the cache by Caffeine.
+            try {
+                created.complete(loader.apply(id).orElse(null));
+            } catch (RuntimeException e) {
+                created.completeExceptionally(e);
+                throw e;
+            }
+        } else if (!entry.isDone()) {
+            coalesced.increment();   // someone else's load is running, we share it
+        }
+        return Optional.ofNullable(entry.join());
+    }
+
+    public void invalidate(String id) {
+        if (id != null) {
+            cache.synchronous().invalidate(id);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.synchronous().invalidateAll();
+    }
+
+    // gets that waited for a load started by another request instead of going to Mongo themselves
+    public long coalescedLoads() {
+        return coalesced.sum();
+    }
+
+    // for the Micrometer binding (MetricsConfig)
+    public Cache<String, User> nativeCache() {
+        return cache.synchronous();
+    }
+
+    public UserCacheStats stats() {
+        CacheStats stats = cache.synchronous().stats();
+        return new UserCacheStats(cache.synchronous().estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), stats.averageLoadPenalty() / 1_000_000.0, coalesced.sum());
+    }
+}
@@ -0,0 +1,67 @@
+package com.springboot.mongodb.springmongo.cache;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.springboot.mongodb.springmongo.changes.UserChangeSink;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*
+Cross node invalidation of UserCache.
+
+Each node only invalidates its own cache on its own writes, so without this a user changed through node A stays
+stale on node B until the entry expires. This gets the users change stream (UserChangeStream) and invalidates
+the _id of every insert/update/replace/delete, whoever did the write.
+
+Needs a replica set (change streams don't work on a standalone server), so it is off by default:
+    app.user-cache.change-stream.enabled=true
+
+On a gap (no resume token yet, history lost) we clear the whole cache, since events may have been missed.
+ */
+@Component
+@ConditionalOnProperty(name = "app.user-cache.change-stream.enabled", havingValue = "true")
+public class UserCacheInvalidator implements UserChangeSink {
+
+    @Autowired
+    private UserCache userCache;
+
+    @Override
+    public void onChanges(List<ChangeStreamDocument<Document>> changes) {
+        changes.forEach(this::onChange);
+    }
+
+    @Override
+    public void onGap() {
+        userCache.invalidateAll();
+    }
+
+    void onChange(ChangeStreamDocument<Document> change) {
+        OperationType type = change.getOperationType();
+        BsonDocument key = change.getDocumentKey();
+        if (key == null || type == OperationType.DROP || type == OperationType.RENAME || type == OperationType.INVALIDATE) {
+            userCache.invalidateAll();
+            return;
+        }
+        userCache.invalidate(idOf(key.get("_id")));
+    }
+
+    // cache keys are the String ids of the entity, ObjectId _ids are mapped to their hex string
+    static String idOf(BsonValue id) {
+        if (id == null) {
+            return null;
+        }
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
+}
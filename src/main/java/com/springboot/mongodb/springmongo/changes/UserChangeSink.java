@@ -0,0 +1,28 @@
+package com.springboot.mongodb.springmongo.changes;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.Document;
+
+import java.util.List;
+
+/*
+Something in the app that follows the writes on users (cache invalidation, rollups, a search index ...).
+Every bean implementing this is fed by UserChangeStream, one batch of change events at a time, in oplog order,
+on the change stream thread. A sink should be quick, slow work belongs on its own executor.
+
+Delivery is at-least-once: after a restart the stream resumes from the last saved token, so the events of a batch
+that was being handled when the app stopped come again. Sinks must be idempotent (or recount, see onGap).
+ */
+public interface UserChangeSink {
+
+    void onChanges(List<ChangeStreamDocument<Document>> changes);
+
+    // events may have been missed (no resume token, oplog rolled over, collection dropped, this sink threw),
+    // the sink has to resync from the collection
+    void onGap();
+
+    // needs fullDocument / fullDocumentBeforeChange on update and delete events (pre- and post-images)
+    default boolean needsImages() {
+        return false;
+    }
+}
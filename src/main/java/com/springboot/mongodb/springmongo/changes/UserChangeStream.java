@@ -0,0 +1,241 @@
+package com.springboot.mongodb.springmongo.changes;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.mongodb.client.model.changestream.OperationType;
+import com.springboot.mongodb.springmongo.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+One change stream on users for everything in the app that reacts to data changes, instead of every feature
+opening its own stream (or polling findAllFromEntityClass).
+
+    users --watch--> batch of up to batch-size events --> every UserChangeSink, in order --> save resume token
+
+- Only runs when at least one sink is enabled (app.user-cache.change-stream.enabled, app.user-rollups.mode=change-stream),
+  change streams need a replica set.
+- The resume token of the last handled event is saved in change_stream_resume_tokens after every batch, so after a
+  restart or a failover the stream continues where it stopped instead of missing the writes in between (the sinks
+  get those events again at most once more). While nothing changes the post batch token is saved every minute, so a
+  quiet collection doesn't fall out of the oplog window.
+- A batch is handed over as soon as the server has nothing more for us (maxAwaitTime) or it is full, so under load
+  the sinks get big batches and when it's quiet an event is passed on right away.
+- Gap (no saved token, the token is older than the oplog, collection dropped / renamed): the stream is opened from
+  now, then every sink gets onGap() and resyncs. A sink that throws gets onGap() too, the others keep going.
+ */
+@Component
+@Slf4j
+public class UserChangeStream implements SmartLifecycle {
+
+    static final String TOKENS = "change_stream_resume_tokens";
+
+    private static final long RETRY_MILLIS = 5_000;
+    private static final long IDLE_SAVE_MILLIS = 60_000;
+
+    // ChangeStreamHistoryLost, ChangeStreamFatalError: the saved token can't be resumed from
+    private static final Set<Integer> LOST = Set.of(286, 280);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // none enabled -> no stream at all
+    @Autowired(required = false)
+    private List<UserChangeSink> sinks = List.of();
+
+    @Value("${app.user-changes.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.user-changes.max-await:1s}")
+    private Duration maxAwait;
+
+    private volatile boolean running;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread thread;
+
+    @Override
+    public void start() {
+        if (sinks.isEmpty()) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::watch, "user-change-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        MongoChangeStreamCursor<?> current = cursor;
+        if (current != null) {
+            current.close();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        String collection = mongoTemplate.getCollectionName(User.class);
+        boolean images = sinks.stream().anyMatch(UserChangeSink::needsImages);
+        if (images) {
+            enableImages(collection);
+        }
+        while (running) {
+            BsonDocument token = loadToken(collection);
+            ChangeStreamIterable<Document> watch = mongoTemplate.getCollection(collection).watch()
+                    .batchSize(batchSize)
+                    .maxAwaitTime(maxAwait.toMillis(), TimeUnit.MILLISECONDS);
+            if (images) {
+                watch = watch.fullDocument(FullDocument.WHEN_AVAILABLE).fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE);
+            }
+            if (token != null) {
+                watch = watch.resumeAfter(token);
+            }
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> changes = watch.cursor()) {
+                cursor = changes;
+                if (token == null) {
+                    // only now that the stream is open: a write after the sinks' resync is delivered as an event,
+                    // one before it is in what they reload
+                    gap("no resume token");
+                    saveToken(collection, changes.getResumeToken());
+                }
+                log.info("Watching {} for {} ({})", collection, sinks.stream().map(sink -> sink.getClass().getSimpleName()).toList(),
+                        token == null ? "from now" : "resumed");
+                read(collection, changes);
+            } catch (MongoCommandException e) {
+                if (LOST.contains(e.getErrorCode())) {
+                    log.warn("Cannot resume the {} change stream ({}), starting from now", collection, e.getErrorMessage());
+                    deleteToken(collection);
+                } else {
+                    retry(e);
+                }
+            } catch (MongoException | IllegalStateException e) {
+                retry(e);
+            }
+        }
+    }
+
+    private void read(String collection, MongoChangeStreamCursor<ChangeStreamDocument<Document>> changes) {
+        List<ChangeStreamDocument<Document>> batch = new ArrayList<>();
+        long lastSave = System.currentTimeMillis();
+        while (running) {
+            ChangeStreamDocument<Document> change = changes.tryNext();
+            if (change != null) {
+                batch.add(change);
+            }
+            if (!batch.isEmpty() && (change == null || batch.size() >= batchSize || change.getOperationType() == OperationType.INVALIDATE)) {
+                dispatch(collection, batch);
+                lastSave = System.currentTimeMillis();
+                if (batch.get(batch.size() - 1).getOperationType() == OperationType.INVALIDATE) {
+                    // dropped / renamed, the stream is closed and its tokens are useless
+                    deleteToken(collection);
+                    return;
+                }
+                batch = new ArrayList<>();
+            } else if (change == null && System.currentTimeMillis() - lastSave > IDLE_SAVE_MILLIS && changes.getResumeToken() != null) {
+                saveToken(collection, changes.getResumeToken());
+                lastSave = System.currentTimeMillis();
+            }
+        }
+    }
+
+    void dispatch(String collection, List<ChangeStreamDocument<Document>> batch) {
+        for (UserChangeSink sink : sinks) {
+            try {
+                sink.onChanges(batch);
+            } catch (RuntimeException e) {
+                log.error("{} failed on {} change events, it resyncs", sink.getClass().getSimpleName(), batch.size(), e);
+                sink.onGap();
+            }
+        }
+        saveToken(collection, batch.get(batch.size() - 1).getResumeToken());
+    }
+
+    private void gap(String reason) {
+        log.info("User change stream gap ({}), sinks resync", reason);
+        for (UserChangeSink sink : sinks) {
+            try {
+                sink.onGap();
+            } catch (RuntimeException e) {
+                log.error("{} failed to resync", sink.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    private void retry(RuntimeException e) {
+        if (!running) {
+            return;
+        }
+        // no gap: the next attempt resumes from the saved token
+        log.warn("User change stream failed, resuming in {} ms: {}", RETRY_MILLIS, e.getMessage());
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void enableImages(String collection) {
+        try {
+            mongoTemplate.executeCommand(new Document("collMod", collection)
+                    .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+        } catch (RuntimeException e) {
+            log.warn("Could not enable pre- and post-images on {}, sinks needing them will resync instead: {}",
+                    collection, e.getMessage());
+        }
+    }
+
+    // ---- resume tokens, one document per watched collection ----
+
+    BsonDocument loadToken(String collection) {
+        BsonDocument saved = mongoTemplate.getCollection(TOKENS).withDocumentClass(BsonDocument.class)
+                .find(Filters.eq("_id", collection)).first();
+        return saved == null ? null : saved.getDocument("token", null);
+    }
+
+    void saveToken(String collection, BsonDocument token) {
+        if (token == null) {
+            return;
+        }
+        try {
+            mongoTemplate.getCollection(TOKENS).replaceOne(Filters.eq("_id", collection),
+                    new Document("_id", collection).append("token", token).append("updatedAt", new Date()),
+                    new ReplaceOptions().upsert(true));
+        } catch (MongoException e) {
+            // the next batch saves a newer one, worst case a restart replays a few more events
+            log.warn("Could not save the {} resume token: {}", collection, e.getMessage());
+        }
+    }
+
+    private void deleteToken(String collection) {
+        mongoTemplate.getCollection(TOKENS).deleteOne(Filters.eq("_id", collection));
+    }
+}
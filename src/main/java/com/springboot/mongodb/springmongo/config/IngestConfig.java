@@ -0,0 +1,40 @@
+package com.springboot.mongodb.springmongo.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+// Threads that execute the bulk ingest batches (see BulkIngestService).
+// How many batches of one request run at the same time is limited separately by app.ingest.max-in-flight.
+//
+// With spring.threads.virtual.enabled=true (Java 21+) every batch gets its own virtual thread instead of a pooled
+// platform thread, app.ingest.threads then only limits how many batches run at the same time over all requests.
+@Configuration
+public class IngestConfig {
+
+    @Bean
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor ingestExecutor(@Value("${app.ingest.threads:8}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("ingest-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    @Bean(name = "ingestExecutor")
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor virtualIngestExecutor(@Value("${app.ingest.threads:8}") int threads) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ingest-");
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(threads);
+        executor.setTaskTerminationTimeout(60_000);
+        return executor;
+    }
+}
@@ -0,0 +1,69 @@
+package com.springboot.mongodb.springmongo.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.metrics.MongoDriverMetrics;
+import com.springboot.mongodb.springmongo.metrics.SlowQueryLog;
+import com.springboot.mongodb.springmongo.model.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/*
+Everything is exported through actuator, see management.* in application.properties:
+
+    http://localhost:8081/actuator/prometheus
+    http://localhost:8081/actuator/metrics/http.server.requests?tag=uri:/api/users/{id}
+    http://localhost:8081/actuator/metrics/mongodb.driver.commands
+    http://localhost:8081/actuator/metrics/mongodb.driver.pool.checkout.wait
+
+Endpoint latency is http.server.requests (tagged with uri / method / status, so every handler of every controller
+gets its own histogram), Mongo command latency and pool gauges come from Boot, the rest from the beans below.
+
+Single slow queries (with their plan) are kept by SlowQueryLog:  http://localhost:8081/api/diagnostics/slow-queries
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MongoDriverMetrics mongoDriverMetrics(MeterRegistry registry) {
+        return new MongoDriverMetrics(registry);
+    }
+
+    @Bean
+    public SlowQueryLog slowQueryLog(@Value("${app.diagnostics.slow-query.threshold:100ms}") Duration threshold,
+                                     @Value("${app.diagnostics.slow-query.capacity:100}") int capacity) {
+        return new SlowQueryLog(threshold, capacity);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoDriverMetricsCustomizer(MongoDriverMetrics metrics, SlowQueryLog slowQueryLog) {
+        return settings -> settings
+                .addCommandListener(metrics)
+                .addCommandListener(slowQueryLog)
+                .applyToConnectionPoolSettings(pool -> pool.addConnectionPoolListener(metrics));
+    }
+
+    // cache.gets{result=hit|miss}, cache.evictions, cache.size for the GET /api/users/{id} cache (bound by Boot as a MeterBinder)
+    @Bean
+    public CaffeineCacheMetrics<String, User, Cache<String, User>> userCacheMetrics(UserCache userCache) {
+        return new CaffeineCacheMetrics<>(userCache.nativeCache(), "users", Tags.empty());
+    }
+
+    // cache.coalesced: misses that shared a load already running for the same id (the rest is in SingleFlight)
+    @Bean
+    public MeterBinder userCacheCoalescedMetrics(UserCache userCache) {
+        return registry -> FunctionCounter.builder("cache.coalesced", userCache, UserCache::coalescedLoads)
+                .description("Gets that waited for a load of the same key started by another request")
+                .tag("cache", "users")
+                .register(registry);
+    }
+}
@@ -0,0 +1,60 @@
+package com.springboot.mongodb.springmongo.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Typed settings for the MongoClient, applied on top of spring.data.mongodb.uri by MongoConfig.
+Anything left empty keeps the driver default (or what the URI says).
+
+    app.mongodb.pool.max-size=200
+    app.mongodb.socket-timeout=10s
+    app.mongodb.compressors=zstd,snappy
+    app.mongodb.read-preference=secondaryPreferred
+    app.mongodb.collections.users.read-concern=majority
+ */
+@Data
+@ConfigurationProperties(prefix = "app.mongodb")
+public class MongoClientProperties {
+
+    private Pool pool = new Pool();
+
+    private Duration serverSelectionTimeout;
+    private Duration connectTimeout;
+    private Duration socketTimeout;
+
+    // zstd, snappy, zlib, in order of preference, the server picks the first one it supports
+    private List<String> compressors = new ArrayList<>();
+
+    // client wide defaults
+    private String readPreference;
+    private String readConcern;
+    private String writeConcern;
+
+    // per collection overrides, key = collection name ("users" is what UserRepository / UpdateRepository use)
+    private Map<String, CollectionSettings> collections = new HashMap<>();
+
+    @Data
+    public static class Pool {
+        private Integer minSize;
+        private Integer maxSize;
+        // connections being opened at the same time, new connections beyond this wait
+        private Integer maxConnecting;
+        private Duration maxIdleTime;
+        // how long a request waits for a free connection before it fails (MongoTimeoutException)
+        private Duration maxWaitTime;
+    }
+
+    @Data
+    public static class CollectionSettings {
+        private String readPreference;
+        private String readConcern;
+        private String writeConcern;
+    }
+}
@@ -1,35 +1,169 @@
+package com.springboot.mongodb.springmongo.config;
 
-
-//This class is used for removing _class field from MongoDB documents,  commented now
-
-/*package com.springboot.mongodb.springmongo.config;
-
+import com.mongodb.MongoCompressor;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadConcernLevel;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
 import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
 import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
-import org.springframework.data.mongodb.MongoDatabaseFactory;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+MongoClient settings from typed properties (app.mongodb.*, see MongoClientProperties).
 
+Spring Boot still builds the client from spring.data.mongodb.uri, the customizer below runs after that and
+overrides pool / timeouts / compression / read and write defaults with what is configured.
 
+    Pool:  size it to the request threads (server.tomcat.threads.max), otherwise requests queue on
+           connection checkout (watch mongodb.driver.pool.checkout.wait), max-wait-time bounds that queue.
+    Compression: zstd / snappy need zstd-jni / snappy-java on the classpath (in the pom), zlib is built in.
+
+Per collection read preference / read concern / write concern (app.mongodb.collections.<name>.*) is applied by
+the MongoTemplate below. The repositories (UserRepository, UpdateRepository) run through this template too,
+so a setting on "users" applies to them as well.
+ */
 @Configuration
+@EnableConfigurationProperties(MongoClientProperties.class)
 public class MongoConfig {
 
     @Bean
-    public MappingMongoConverter mappingMongoConverter(
-            MongoDatabaseFactory mongoDatabaseFactory,
-            MongoMappingContext mongoMappingContext,
-            MongoCustomConversions mongoCustomConversions) {
+    public MongoClientSettingsBuilderCustomizer mongoClientPropertiesCustomizer(MongoClientProperties properties) {
+        return settings -> {
+            MongoClientProperties.Pool pool = properties.getPool();
+            settings.applyToConnectionPoolSettings(builder -> {
+                ifSet(pool.getMinSize(), builder::minSize);
+                ifSet(pool.getMaxSize(), builder::maxSize);
+                ifSet(pool.getMaxConnecting(), builder::maxConnecting);
+                ifSet(pool.getMaxIdleTime(), d -> builder.maxConnectionIdleTime(d.toMillis(), TimeUnit.MILLISECONDS));
+                ifSet(pool.getMaxWaitTime(), d -> builder.maxWaitTime(d.toMillis(), TimeUnit.MILLISECONDS));
+            });
+            settings.applyToClusterSettings(builder ->
+                    ifSet(properties.getServerSelectionTimeout(), d -> builder.serverSelectionTimeout(d.toMillis(), TimeUnit.MILLISECONDS)));
+            settings.applyToSocketSettings(builder -> {
+                ifSet(properties.getConnectTimeout(), d -> builder.connectTimeout(millis(d), TimeUnit.MILLISECONDS));
+                ifSet(properties.getSocketTimeout(), d -> builder.readTimeout(millis(d), TimeUnit.MILLISECONDS));
+            });
+            if (!properties.getCompressors().isEmpty()) {
+                settings.compressorList(compressors(properties.getCompressors()));
+            }
+            ifSet(properties.getReadPreference(), value -> settings.readPreference(readPreference(value)));
+            ifSet(properties.getReadConcern(), value -> settings.readConcern(readConcern(value)));
+            ifSet(properties.getWriteConcern(), value -> settings.writeConcern(writeConcern(value)));
+        };
+    }
 
-        MappingMongoConverter converter = new MappingMongoConverter(mongoDatabaseFactory, mongoMappingContext);
+    /*
+    Converter without the _class type key.
+    By default every document gets _class: "com.springboot.mongodb.springmongo.model.User", so the converter could
+    read subclasses back. Our collections hold one type each, so it is just bytes on disk, in the cache and on the
+    wire for every document. Documents that still have _class are read fine, StorageCompactionService removes it.
+    (Replaces Boot's converter, same setup otherwise.)
+     */
+    @Bean
+    public MappingMongoConverter mappingMongoConverter(MongoDatabaseFactory mongoDatabaseFactory,
+                                                       MongoMappingContext mongoMappingContext,
+                                                       MongoCustomConversions mongoCustomConversions) {
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(mongoDatabaseFactory), mongoMappingContext);
         converter.setCustomConversions(mongoCustomConversions);
         // This will remove the _class field from MongoDB documents
         converter.setTypeMapper(new DefaultMongoTypeMapper(null));
         return converter;
     }
-}
 
-*/
+    // replaces Boot's default MongoTemplate (it backs off when one is defined)
+    @Bean
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter,
+                                       MongoClientProperties properties) {
+        return new CollectionSettingsMongoTemplate(mongoDatabaseFactory, mongoConverter, properties.getCollections());
+    }
+
+    /*
+    MongoTemplate that applies the per collection settings on every collection it hands to an operation.
+    prepareCollection is the hook MongoTemplate itself uses to apply its read preference.
+     */
+    static class CollectionSettingsMongoTemplate extends MongoTemplate {
+
+        private final Map<String, MongoClientProperties.CollectionSettings> collections;
+
+        CollectionSettingsMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter,
+                                        Map<String, MongoClientProperties.CollectionSettings> collections) {
+            super(mongoDatabaseFactory, mongoConverter);
+            this.collections = Map.copyOf(collections);
+        }
 
+        @Override
+        protected MongoCollection<Document> prepareCollection(MongoCollection<Document> collection) {
+            MongoCollection<Document> prepared = super.prepareCollection(collection);
+            MongoClientProperties.CollectionSettings settings = collections.get(collection.getNamespace().getCollectionName());
+            if (settings == null) {
+                return prepared;
+            }
+            if (settings.getReadPreference() != null) {
+                prepared = prepared.withReadPreference(readPreference(settings.getReadPreference()));
+            }
+            if (settings.getReadConcern() != null) {
+                prepared = prepared.withReadConcern(readConcern(settings.getReadConcern()));
+            }
+            if (settings.getWriteConcern() != null) {
+                prepared = prepared.withWriteConcern(writeConcern(settings.getWriteConcern()));
+            }
+            return prepared;
+        }
+    }
+
+    static List<MongoCompressor> compressors(List<String> names) {
+        return names.stream().map(name -> switch (name.trim().toLowerCase()) {
+            case "zstd" -> MongoCompressor.createZstdCompressor();
+            case "snappy" -> MongoCompressor.createSnappyCompressor();
+            case "zlib" -> MongoCompressor.createZlibCompressor();
+            default -> throw new IllegalArgumentException("Unknown compressor '" + name + "', use zstd, snappy or zlib");
+        }).toList();
+    }
+
+    // primary, primaryPreferred, secondary, secondaryPreferred, nearest
+    static ReadPreference readPreference(String value) {
+        return ReadPreference.valueOf(value);
+    }
+
+    // local, available, majority, linearizable, snapshot
+    static ReadConcern readConcern(String value) {
+        return new ReadConcern(ReadConcernLevel.fromString(value));
+    }
+
+    // w1, w2, w3, majority, journaled, acknowledged, unacknowledged
+    static WriteConcern writeConcern(String value) {
+        WriteConcern writeConcern = WriteConcern.valueOf(value);
+        if (writeConcern == null) {
+            throw new IllegalArgumentException("Unknown write concern '" + value + "'");
+        }
+        return writeConcern;
+    }
+
+    private static int millis(Duration duration) {
+        return Math.toIntExact(duration.toMillis());
+    }
+
+    private static <T> void ifSet(T value, Consumer<T> setter) {
+        if (value != null) {
+            setter.accept(value);
+        }
+    }
+}
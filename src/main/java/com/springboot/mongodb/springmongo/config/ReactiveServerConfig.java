@@ -0,0 +1,18 @@
+package com.springboot.mongodb.springmongo.config;
+
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+// Tomcat is on the classpath for the servlet stack and Boot would prefer it for WebFlux too (as a non-blocking
+// servlet container). With the "reactive" profile we want the Netty event loop, so the server factory is chosen here.
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,27 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Common error mapping for all the controllers.
+// Services throw BadRequestException for bad input (unknown field, bad page token ...), that is a 400 not a 500.
+// Only that one: an IllegalArgumentException from Spring, the driver or our own code is a bug, it stays a 500 and its
+// message (which may show internals) is not sent to the client.
+// UserNotFoundException comes from writes that found out in the same round-trip that the id doesn't exist -> 404.
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<String> badRequest(BadRequestException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(UserNotFoundException.class)
+    public ResponseEntity<String> notFound(UserNotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    }
+}
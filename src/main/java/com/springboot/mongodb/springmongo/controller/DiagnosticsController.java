@@ -0,0 +1,53 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.springboot.mongodb.springmongo.response.QueryPlanSummary;
+import com.springboot.mongodb.springmongo.response.SlowQuery;
+import com.springboot.mongodb.springmongo.service.QueryDiagnosticsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Set;
+
+// Query plans and slow queries, see QueryDiagnosticsService and SlowQueryLog.
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/diagnostics")
+public class DiagnosticsController {
+
+    @Autowired
+    private QueryDiagnosticsService queryDiagnosticsService;
+
+    //http://localhost:8081/api/diagnostics/explain
+    @GetMapping("/explain")
+    public Set<String> explainableQueries() {
+        return QueryDiagnosticsService.QUERIES;
+    }
+
+    // explain("executionStats") of one of the service queries: COLLSCAN vs IXSCAN, index used, keys / docs examined.
+    //http://localhost:8081/api/diagnostics/explain/findByQueryAndEntityClass?name=Ranjith
+    //http://localhost:8081/api/diagnostics/explain/count?age=39
+    //http://localhost:8081/api/diagnostics/explain/findPage?sort=age
+    //http://localhost:8081/api/diagnostics/explain/countUsersByStatusOver25?raw=true      -> with the full explain output
+    @GetMapping("/explain/{query}")
+    public QueryPlanSummary explain(@PathVariable String query,
+                                    @RequestParam(defaultValue = "Ranjith") String name,
+                                    @RequestParam(defaultValue = "39") int age,
+                                    @RequestParam(defaultValue = "id") String sort,
+                                    @RequestParam(defaultValue = "false") boolean raw) {
+        return queryDiagnosticsService.explain(query, name, age, sort, raw);
+    }
+
+    // Last queries over app.diagnostics.slow-query.threshold, newest first, with their plan.
+    //http://localhost:8081/api/diagnostics/slow-queries
+    @GetMapping("/slow-queries")
+    public List<SlowQuery> slowQueries() {
+        return queryDiagnosticsService.slowQueries();
+    }
+
+    @DeleteMapping("/slow-queries")
+    public void clearSlowQueries() {
+        queryDiagnosticsService.clearSlowQueries();
+    }
+}
@@ -1,8 +1,11 @@
 package com.springboot.mongodb.springmongo.controller;
 
+import com.springboot.mongodb.springmongo.response.IndexReport;
 import com.springboot.mongodb.springmongo.service.IndexDemoService;
 import com.springboot.mongodb.springmongo.service.IndexOpsService;
+import com.springboot.mongodb.springmongo.service.UserIndexReconciler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.web.bind.annotation.*;
 
@@ -10,6 +13,7 @@ import java.util.List;
 
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/index")
 public class IndexController {
 
@@ -19,6 +23,9 @@ public class IndexController {
     @Autowired
     IndexOpsService indexOpsService;
 
+    @Autowired
+    UserIndexReconciler userIndexReconciler;
+
     //http://localhost:8081/api/index/create
     // use the index.json as the request body from resources for saving
     //save API not here. either create or directly import this
@@ -49,4 +56,19 @@ public class IndexController {
 
     }
 
+    // Indexes of the users collection against the ones the services need (UserIndexReconciler), nothing is changed.
+    //http://localhost:8081/api/index/users/drift
+    @GetMapping("/users/drift")
+    public IndexReport usersIndexDrift() {
+        return userIndexReconciler.drift();
+    }
+
+    // Same, but creates the missing ones (what happens at startup with app.user-indexes.mode=create).
+    // Conflicting and extra indexes are left alone.
+    //http://localhost:8081/api/index/users/reconcile
+    @PostMapping("/users/reconcile")
+    public IndexReport reconcileUsersIndexes() {
+        return userIndexReconciler.reconcile(true);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,71 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+Helper for writing a Mongo cursor straight to the HTTP response.
+
+The stream is opened only when Spring starts writing the body (on the MVC async executor), every element is
+serialized into the same JsonGenerator and nothing is collected into a list, so memory stays bounded by the
+cursor batch size.
+
+If the client goes away the next write throws an IOException, we drop out of the loop and the try-with-resources
+closes the Stream, which kills the server side cursor. So we stop reading from Mongo as soon as nobody is listening.
+ */
+final class JsonStreams {
+
+    // flush every N documents, so the client gets data early without a tiny chunk per document
+    private static final int FLUSH_EVERY = 100;
+
+    private JsonStreams() {
+    }
+
+    // format=ndjson -> one JSON document per line (application/x-ndjson)
+    // format=array  -> a normal JSON array written element by element (chunked application/json)
+    static <T> ResponseEntity<StreamingResponseBody> response(ObjectMapper objectMapper, String format, Supplier<Stream<T>> source) {
+        boolean array = "array".equalsIgnoreCase(format);
+        MediaType contentType = array ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON;
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(body(objectMapper, array, source));
+    }
+
+    static <T> StreamingResponseBody body(ObjectMapper objectMapper, boolean array, Supplier<Stream<T>> source) {
+        // FLUSH_AFTER_WRITE_VALUE would flush after every document, we flush in batches instead
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            try (Stream<T> stream = source.get();
+                 JsonGenerator generator = writer.createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                if (array) {
+                    generator.writeStartArray();
+                }
+                Iterator<T> iterator = stream.iterator();
+                int written = 0;
+                while (iterator.hasNext()) {
+                    writer.writeValue(generator, iterator.next());
+                    if (!array) {
+                        generator.writeRaw('\n');
+                    }
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+                if (array) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+    }
+}
@@ -1,22 +1,73 @@
 package com.springboot.mongodb.springmongo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest;
+import com.springboot.mongodb.springmongo.request.CountRequest;
+import com.springboot.mongodb.springmongo.request.MultiUpdateRequest;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult;
+import com.springboot.mongodb.springmongo.response.CountResult;
+import com.springboot.mongodb.springmongo.response.MultiUpdateResult;
+import com.springboot.mongodb.springmongo.response.StorageCompactionResult;
+import com.springboot.mongodb.springmongo.service.AggregationService;
+import com.springboot.mongodb.springmongo.service.BulkIngestService;
+import com.springboot.mongodb.springmongo.service.CountService;
 import com.springboot.mongodb.springmongo.service.MongoTemplateService;
+import com.springboot.mongodb.springmongo.service.MultiUpdateService;
+import com.springboot.mongodb.springmongo.service.RawUserReads;
+import com.springboot.mongodb.springmongo.service.StorageCompactionService;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Set;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/users/mongotemplate")
 public class MongoTemplateController {
 
     @Autowired
     private MongoTemplateService mongoTemplateService;    // For using mongo template , no repository required.
 
+    @Autowired
+    private BulkIngestService bulkIngestService;
+
+    @Autowired
+    private StorageCompactionService storageCompactionService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private AggregationService aggregationService;
+
+    @Autowired
+    private CountService countService;
+
+    @Autowired
+    private RawUserReads rawUserReads;
+
+    @Autowired
+    private MultiUpdateService multiUpdateService;
+
+    /*
+    The read endpoints below take an optional ?fields=name,age (top-level User fields, json or property names).
+    Only those fields are loaded from Mongo (see MongoTemplateService.project) and only those (+ id) are sent back.
+    Without it the full document is returned as before.
+
+    With app.raw-reads.enabled=true the finders (findById..., findByQuery..., findAll..., findOne) return RawUsers
+    instead: the documents are copied from Mongo to the response as raw BSON -> JSON, no User objects (RawUserReads).
+     */
+
     //http://localhost:8081/api/users/mongotemplate/saveWithObject
     // This will save the user to db, no repository required.
     @PostMapping("/saveWithObject")
@@ -34,49 +85,70 @@ public class MongoTemplateController {
     }
 
     //http://localhost:8081/api/users/mongotemplate/findByIdWithObjectAndEntityClass/100
+    //http://localhost:8081/api/users/mongotemplate/findByIdWithObjectAndEntityClass/100?fields=name,age
     //Note: here passing the id only , but we gave entity class name.see service method.
     @GetMapping("/findByIdWithObjectAndEntityClass/{id}")
-    public User findByIdWithObjectAndEntityClass( @PathVariable String id){
-        return mongoTemplateService.findByIdWithObjectAndEntityClass(id);
+    public Object findByIdWithObjectAndEntityClass( @PathVariable String id, @RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findById(id, null, fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findByIdWithObjectAndEntityClass(id, fields), fields);
     }
 
     //http://localhost:8081/api/users/mongotemplate/findByIdWithObjectAndEntityClassAndCollectionName/105
     //Note: here we are adding collection name also, it will pick up from employee collection, Since USer class pointed to
     //@Document(collection = "users") but it will take it from employee collection.
     @GetMapping("/findByIdWithObjectAndEntityClassAndCollectionName/{id}")
-    public User findByIdWithObjectAndEntityClassAndCollectionName( @PathVariable String id){
-        return mongoTemplateService.findByIdWithObjectAndEntityClassAndCollectionName(id,"employee");
+    public Object findByIdWithObjectAndEntityClassAndCollectionName( @PathVariable String id, @RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findById(id, "employee", fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findByIdWithObjectAndEntityClassAndCollectionName(id,"employee", fields), fields);
     }
 
     //http://localhost:8081/api/users/mongotemplate/findByQueryAndEntityClass/Ranjith
+    //http://localhost:8081/api/users/mongotemplate/findByQueryAndEntityClass/Ranjith?fields=name,age
     //Note: using query and collection name for search a name, Anything can do on this query.
     @GetMapping("/findByQueryAndEntityClass/{name}")
-    public List<User> findByQueryAndEntityClass(@PathVariable String name){
-        return mongoTemplateService.findByQueryAndEntityClass(name);
+    public Object findByQueryAndEntityClass(@PathVariable String name, @RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findByFirstname(name, null, fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findByQueryAndEntityClass(name, fields), fields);
     }
 
 
     //http://localhost:8081/api/users/mongotemplate/findByQueryAndEntityClassAndCollection/Soumya1
     //Note: here passing collection name also, it will search in that collection
     @GetMapping("/findByQueryAndEntityClassAndCollection/{name}")
-    public List<User> findByQueryAndEntityClassAndCollection(@PathVariable String name){
-        return mongoTemplateService.findByQueryAndEntityClassAndCollection(name, "employee");
+    public Object findByQueryAndEntityClassAndCollection(@PathVariable String name, @RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findByFirstname(name, "employee", fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findByQueryAndEntityClassAndCollection(name, "employee", fields), fields);
     }
 
 
     //http://localhost:8081/api/users/mongotemplate/findAllFromEntityClass
+    //http://localhost:8081/api/users/mongotemplate/findAllFromEntityClass?fields=name
     //Note: It will take all records from a default collection ie from user
     @GetMapping("/findAllFromEntityClass")
-    public List<User> findAllFromEntityClass(){
-        return mongoTemplateService.findAllFromEntityClass();
+    public Object findAllFromEntityClass(@RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findAll(null, fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findAllFromEntityClass(fields), fields);
     }
 
 
     //http://localhost:8081/api/users/mongotemplate/findAllFromEntityClassAndCollection
     //Note: It will take all records from employee collection, not from users
     @GetMapping("/findAllFromEntityClassAndCollection")
-    public List<User> findAllFromEntityClassAndCollection(){
-        return mongoTemplateService.findAllFromEntityClassAndCollection("employee");
+    public Object findAllFromEntityClassAndCollection(@RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findAll("employee", fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findAllFromEntityClassAndCollection("employee", fields), fields);
     }
 
     //http://localhost:8081/api/users/mongotemplate/findAllAndRemove
@@ -93,16 +165,28 @@ public class MongoTemplateController {
     }
 
     //http://localhost:8081/api/users/mongotemplate/findAndModify/Ranjith?age=60
+    //http://localhost:8081/api/users/mongotemplate/findAndModify/Ranjith?age=60&fields=age
     @PatchMapping ("/findAndModify/{name}")
-    public User findAndModify(@PathVariable String name, @RequestParam String age){
-        return mongoTemplateService.findAndModify(name, age);
+    public Object findAndModify(@PathVariable String name, @RequestParam int age, @RequestParam(required = false) Set<String> fields){
+        return UserProjections.trim(objectMapper, mongoTemplateService.findAndModify(name, age, fields), fields);
+    }
+
+    // findAndModify changes one user, updateMulti (service) one hard-coded field. updateWhere takes any filter and
+    // $set / $inc / $push / $pull / $unset checked against the User fields, see MultiUpdateService.
+    //http://localhost:8081/api/users/mongotemplate/updateWhere
+    /*
+    { "filter": [ { "field": "age", "op": "lt", "value": 18 } ], "set": { "favoriteFruit": "Apple" }, "inc": { "age": 1 } }
+     */
+    @PostMapping ("/updateWhere")
+    public MultiUpdateResult updateWhere(@RequestBody MultiUpdateRequest request){
+        return multiUpdateService.update(request);
     }
 
     //http://localhost:8081/api/users/mongotemplate/findAndModify/Ranjith
     //Note: The document will be removed if the name matches with Ranjith, since it is removal, haven't tested.
     @PatchMapping ("/findAndRemove/{name}")
-    public User findAndRemove(@PathVariable String name){
-        return mongoTemplateService.findAndRemove(name);
+    public Object findAndRemove(@PathVariable String name, @RequestParam(required = false) Set<String> fields){
+        return UserProjections.trim(objectMapper, mongoTemplateService.findAndRemove(name, fields), fields);
     }
 
     //Find a document, replace it entirely with a new one, and return either the old or new document, depending on your options.
@@ -119,10 +203,14 @@ public class MongoTemplateController {
 
 
     //http://localhost:8081/api/users/mongotemplate/findOne/Ranjith
+    //http://localhost:8081/api/users/mongotemplate/findOne/Ranjith?fields=name,age
     //It finds and returns the first matching document based on the provided query.
     @GetMapping ("/findOne/{name}")
-    public User findOne(@PathVariable String name){
-        return mongoTemplateService.findOne(name);
+    public Object findOne(@PathVariable String name, @RequestParam(required = false) Set<String> fields){
+        if (rawUserReads.enabled()) {
+            return rawUserReads.findOneByFirstname(name, fields);
+        }
+        return UserProjections.trim(objectMapper, mongoTemplateService.findOne(name, fields), fields);
     }
 
 
@@ -169,6 +257,17 @@ public class MongoTemplateController {
         return mongoTemplateService.estimatedCount();
     }
 
+    // The count endpoints above and below each hard-code one way of counting. countWhere takes any filter and a
+    // freshness budget and picks the cheapest way that meets it (rollup, estimate, cache, hinted query), see CountService.
+    //http://localhost:8081/api/users/mongotemplate/countWhere
+    /*
+    { "filter": [ { "field": "age", "op": "gt", "value": 25 } ], "maxStaleness": "PT30S" }
+     */
+    @PostMapping ("/countWhere")
+    public CountResult countWhere(@RequestBody CountRequest request){
+        return countService.count(request);
+    }
+
     //This method is used when you want to accurately count documents that match a query
     //http://localhost:8081/api/users/mongotemplate/exactCount
     @GetMapping ("/exactCount")
@@ -208,5 +307,50 @@ public class MongoTemplateController {
         return mongoTemplateService.bulkOps();
     }
 
+    //http://localhost:8081/api/users/mongotemplate/bulkIngest?batchSize=1000&maxInFlight=4
+    // Real bulk load, body is a JSON array of users or NDJSON (one user per line), read as a stream.
+    // Users are written in BulkOperations batches (UNORDERED unless ordered=true), several batches at the same time.
+    // Response has per batch inserted count + the positions of the documents that failed (duplicate id ...).
+    //  curl -X POST -H "Content-Type: application/x-ndjson" --data-binary @users.ndjson http://localhost:8081/api/users/mongotemplate/bulkIngest
+    @PostMapping(value = "/bulkIngest", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BulkIngestResult> bulkIngest(InputStream body,
+                                                       @RequestParam(required = false) Integer batchSize,
+                                                       @RequestParam(required = false) Integer maxInFlight,
+                                                       @RequestParam(defaultValue = "false") boolean ordered) {
+        BulkIngestResult result = bulkIngestService.ingest(body, batchSize, maxInFlight, ordered);
+        return result.getError() == null ? ResponseEntity.ok(result) : ResponseEntity.badRequest().body(result);
+    }
+
+    // Rewrites the stored users to the short field names (CompactFieldNamingStrategy) and removes _class,
+    // reports the measured size before / after. dryRun=true only measures. direction=expand goes back.
+    //http://localhost:8081/api/users/mongotemplate/compactStorage?dryRun=true
+    //http://localhost:8081/api/users/mongotemplate/compactStorage?direction=compact&dryRun=false&batchSize=500
+    @PostMapping("/compactStorage")
+    public StorageCompactionResult compactStorage(@RequestParam(defaultValue = "compact") String direction,
+                                                  @RequestParam(defaultValue = "true") boolean dryRun,
+                                                  @RequestParam(defaultValue = "500") int batchSize) {
+        return storageCompactionService.migrate(direction, dryRun, batchSize);
+    }
 
+    //========================================================================================================================
+    //  3. aggregate
+    // Any pipeline of match / group / project / sort / limit / facet over users, streamed (see AggregationService
+    // and AggregationRequest for the body). The spec is validated here, so a bad pipeline is a 400; the cursor is opened
+    // only when Spring starts writing the body (JsonStreams), so nothing leaks when the body never runs.
+    //http://localhost:8081/api/users/mongotemplate/aggregate                  -> NDJSON, one result per line
+    //http://localhost:8081/api/users/mongotemplate/aggregate?format=array     -> chunked JSON array
+    /*
+    {
+      "pipeline": [
+        { "match": [ { "field": "age", "op": "gt", "value": 25 } ] },
+        { "group": { "by": ["gender"], "accumulators": [ { "name": "count", "op": "count" } ] } }
+      ],
+      "allowDiskUse": true
+    }
+     */
+    @PostMapping("/aggregate")
+    public ResponseEntity<StreamingResponseBody> aggregate(@RequestBody AggregationRequest request,
+                                                           @RequestParam(defaultValue = "ndjson") String format) {
+        return JsonStreams.response(objectMapper, format, aggregationService.prepare(request));
+    }
 }
@@ -0,0 +1,84 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.response.RawUsers;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/*
+Writes RawUsers (returned by the endpoints when app.raw-reads.enabled=true) to the response body.
+
+Boot puts HttpMessageConverter beans in front of its own, so this one is picked before Jackson for RawUsers. The
+cursor is read while the body is written, each document is transcoded by RawUserJson into a JsonGenerator on the
+servlet output stream. The generator takes its char / byte buffers from Jackson's buffer recycler (pooled per
+thread), the only per document allocation is the byte[] the driver copies the document into.
+ */
+@Component
+@Profile("!reactive")
+public class RawUsersMessageConverter extends AbstractHttpMessageConverter<RawUsers> {
+
+    // flush every N documents, like JsonStreams
+    private static final int FLUSH_EVERY = 100;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public RawUsersMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return RawUsers.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected RawUsers readInternal(Class<? extends RawUsers> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("RawUsers is a response type only", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(RawUsers users, HttpOutputMessage outputMessage) throws IOException {
+        Iterator<RawBsonDocument> cursor = users.cursor().get();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputMessage.getBody())) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (users.single()) {
+                // nothing found -> empty body, same as a null User
+                if (cursor.hasNext()) {
+                    users.json().write(cursor.next(), generator, users.properties());
+                }
+                return;
+            }
+            generator.writeStartArray();
+            int written = 0;
+            while (cursor.hasNext()) {
+                users.json().write(cursor.next(), generator, users.properties());
+                if (++written % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        } finally {
+            if (cursor instanceof Closeable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult;
+import com.springboot.mongodb.springmongo.service.ReactiveMongoTemplateService;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Reactive twin of MongoTemplateController (profile "reactive"), same paths and request examples, see there.
+@RestController
+@RequestMapping("/api/users/mongotemplate")
+@Profile("reactive")
+public class ReactiveMongoTemplateController {
+
+    @Autowired
+    private ReactiveMongoTemplateService reactiveMongoTemplateService;
+
+    //http://localhost:8081/api/users/mongotemplate/saveWithObject
+    @PostMapping("/saveWithObject")
+    public Mono<User> saveWithObject(@RequestBody User user) {
+        return reactiveMongoTemplateService.saveWithObject(user);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findByIdWithObjectAndEntityClass/100
+    @GetMapping("/findByIdWithObjectAndEntityClass/{id}")
+    public Mono<User> findByIdWithObjectAndEntityClass(@PathVariable String id) {
+        return reactiveMongoTemplateService.findByIdWithObjectAndEntityClass(id);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findByQueryAndEntityClass/Ranjith
+    @GetMapping("/findByQueryAndEntityClass/{name}")
+    public Flux<User> findByQueryAndEntityClass(@PathVariable String name) {
+        return reactiveMongoTemplateService.findByQueryAndEntityClass(name);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findAllFromEntityClass
+    @GetMapping("/findAllFromEntityClass")
+    public Flux<User> findAllFromEntityClass() {
+        return reactiveMongoTemplateService.findAllFromEntityClass();
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findAllAndRemove
+    @GetMapping("/findAllAndRemove")
+    public Flux<User> findAllAndRemove() {
+        return reactiveMongoTemplateService.findAllAndRemove();
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findDistinctNames
+    @GetMapping("/findDistinctNames")
+    public Flux<String> findDistinctNames() {
+        return reactiveMongoTemplateService.findDistinctNames();
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findAndModify/Ranjith?age=60
+    @PatchMapping("/findAndModify/{name}")
+    public Mono<User> findAndModify(@PathVariable String name, @RequestParam int age) {
+        return reactiveMongoTemplateService.findAndModify(name, age);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findAndRemove/Ranjith
+    @PatchMapping("/findAndRemove/{name}")
+    public Mono<User> findAndRemove(@PathVariable String name) {
+        return reactiveMongoTemplateService.findAndRemove(name);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findAndReplace/Ranjith
+    @PostMapping("/findAndReplace/{name}")
+    public Mono<User> findAndReplace(@PathVariable String name, @RequestBody User user) {
+        return reactiveMongoTemplateService.findAndReplace(name, user);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/findOne/Ranjith
+    @GetMapping("/findOne/{name}")
+    public Mono<User> findOne(@PathVariable String name) {
+        return reactiveMongoTemplateService.findOne(name);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/insert
+    @PostMapping("/insert")
+    public Mono<User> insert(@RequestBody User user) {
+        return reactiveMongoTemplateService.insert(user);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/exists/Soumya1
+    @GetMapping("/exists/{name}")
+    public Mono<Boolean> exists(@PathVariable String name) {
+        return reactiveMongoTemplateService.exists(name);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/count/39
+    @GetMapping("/count/{age}")
+    public Mono<Long> count(@PathVariable Integer age) {
+        return reactiveMongoTemplateService.count(age);
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/estimatedCount
+    @GetMapping("/estimatedCount")
+    public Mono<Long> estimatedCount() {
+        return reactiveMongoTemplateService.estimatedCount();
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/exactCount
+    @GetMapping("/exactCount")
+    public Mono<Long> exactCount() {
+        return reactiveMongoTemplateService.exactCount();
+    }
+
+    //http://localhost:8081/api/users/mongotemplate/countUsersByStatusOver25
+    @GetMapping("/countUsersByStatusOver25")
+    public Flux<Document> countUsersByStatusOver25() {
+        return reactiveMongoTemplateService.countUsersByStatusOver25();
+    }
+
+    // Body decoded one user at a time (NDJSON or JSON array), written in batches with at most maxInFlight inserts running
+    //http://localhost:8081/api/users/mongotemplate/bulkIngest?batchSize=1000&maxInFlight=4
+    @PostMapping(value = "/bulkIngest", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<BulkIngestResult> bulkIngest(@RequestBody Flux<User> users,
+                                             @RequestParam(required = false) Integer batchSize,
+                                             @RequestParam(required = false) Integer maxInFlight,
+                                             @RequestParam(defaultValue = "false") boolean ordered) {
+        return reactiveMongoTemplateService.bulkIngest(users, batchSize, maxInFlight, ordered);
+    }
+}
@@ -0,0 +1,96 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.github.fge.jsonpatch.JsonPatch;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.service.ReactiveUserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/*
+Same /api/users endpoints as UserController, on WebFlux (start with --spring.profiles.active=reactive).
+
+The list endpoints return a Flux, WebFlux writes the users as they come from the cursor and only requests more
+from Mongo when the connection can take them. A few event-loop threads serve all the requests, a request waiting
+for Mongo doesn't hold a thread.
+ */
+@RestController
+@RequestMapping("/api/users")
+@Profile("reactive")
+public class ReactiveUserController {
+
+    @Autowired
+    private ReactiveUserService reactiveUserService;
+
+    @GetMapping("healthcheck")
+    public String healthCheck() {
+        return "Service is up and running (reactive)";
+    }
+
+    //http://localhost:8081/api/users   and request body should be person1.json, person2.json, person3.json  in the resources folder
+    @PostMapping
+    public Mono<User> createUser(@RequestBody User user) {
+        return reactiveUserService.save(user);
+    }
+
+    // Streamed JSON array
+    //http://localhost:8081/api/users
+    @GetMapping
+    public Flux<User> getUsers() {
+        return reactiveUserService.findAll();
+    }
+
+    // NDJSON, one user per line, flushed as they are read
+    //http://localhost:8081/api/users/stream
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> streamUsers() {
+        return reactiveUserService.findAll();
+    }
+
+    //http://localhost:8081/api/users/102
+    @GetMapping("/{id}")
+    public Mono<User> getUser(@PathVariable String id) {
+        return reactiveUserService.findById(id);
+    }
+
+    //http://localhost:8081/api/users/102
+    @DeleteMapping("/{id}")
+    public Mono<Void> deleteUser(@PathVariable String id) {
+        return reactiveUserService.delete(id);
+    }
+
+    // PUT – Replace the entire user, 404 from the matched count of the replace
+    //http://localhost:8081/api/users/102
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<User>> updateUser(@PathVariable String id, @RequestBody User updatedUser) {
+        return reactiveUserService.replace(id, updatedUser)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // PATCH – Partial update of top-level fields, same body as UserController.patchUser
+    //http://localhost:8081/api/users/102
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<User>> patchUser(@PathVariable String id, @RequestBody Map<String, Object> updates) {
+        return reactiveUserService.patch(id, updates)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    // JSON patch, same body as UserController, header Content-Type: application/json-patch+json
+    // Unknown id -> UserNotFoundException -> 404 (ApiExceptionHandler works for WebFlux too)
+    // http://localhost:8081/api/users/jsonpatch/102
+    @PatchMapping(path = "/jsonpatch/{id}", consumes = "application/json-patch+json")
+    public Mono<ResponseEntity<?>> patchUser(@PathVariable String id, @RequestBody JsonPatch patch) {
+        return reactiveUserService.jsonPatch(id, patch)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Patch failed: "));
+    }
+}
@@ -0,0 +1,33 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.springboot.mongodb.springmongo.response.UserRollupView;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/rollups")
+public class RollupController {
+
+    @Autowired
+    private UserRollups userRollups;
+
+    // counts by gender / technology / active / age bucket, straight from memory (see UserRollups)
+    //http://localhost:8081/api/rollups/users
+    @GetMapping("/users")
+    public UserRollupView users() {
+        return userRollups.view();
+    }
+
+    // recount from the users collection, e.g. after writes that bypassed the services
+    //http://localhost:8081/api/rollups/users/rebuild
+    @PostMapping("/users/rebuild")
+    public UserRollupView rebuild() {
+        return userRollups.rebuild();
+    }
+}
@@ -1,14 +1,17 @@
 package com.springboot.mongodb.springmongo.controller;
 
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.MatchedNestedUpdateRequest;
 import com.springboot.mongodb.springmongo.request.NestedUpdateRequest;
 import com.springboot.mongodb.springmongo.service.UpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/users/update")
 public class UpdateController {
 
@@ -94,6 +97,10 @@ and the request body should be below.
             @RequestBody NestedUpdateRequest request) {
 
         boolean updated = updateService.updateNestedAddressField(id, request);
+        if (updated && updateService.writesBehind()) {
+            // buffered (app.write-behind.enabled), written within the flush interval, lost if the node dies before
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body("Update accepted");
+        }
         if (updated) {
             return ResponseEntity.ok("Updated successfully");
         } else {
@@ -116,6 +123,29 @@ and the request body should be below.
     }
 
 
+ //===========================  TYPE 4  match by content, $[identifier] arrayFilters
+
+    /*
+    TYPE 2 and 3 need the indexes, so the client has to GET the user first to find them (and a concurrent change can
+    move the element). Here the company / address is picked by what it holds, every matching element is updated in
+    one write. Request body see MatchedNestedUpdateRequest:
 
+{
+  "company": { "title": "Software Engineer" },
+  "address": { "address2": "Kerala" },
+  "set":     { "address1": "Updated by arrayFilters" }
+}
 
+    //http://localhost:8081/api/users/update/102/matched
+     */
+    @PutMapping("/{id}/matched")
+    public ResponseEntity<String> updateMatchedNested(
+            @PathVariable String id,
+            @RequestBody MatchedNestedUpdateRequest request) {
+
+        if (updateService.updateMatchedNested(id, request)) {
+            return ResponseEntity.ok("Updated successfully");
+        }
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User or matching company / address not found");
+    }
 }
@@ -1,23 +1,37 @@
 package com.springboot.mongodb.springmongo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.UserCacheStats;
+import com.springboot.mongodb.springmongo.response.UserPage;
+import com.springboot.mongodb.springmongo.service.RawUserReads;
 import com.springboot.mongodb.springmongo.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/users")
 public class UserController {
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RawUserReads rawUserReads;
+
     @GetMapping("healthcheck")
     public String healthCheck() {
         return "Service is up and running";
@@ -27,7 +41,6 @@ public class UserController {
     //http://localhost:8081/api/users   and request body should be person1.json, person2.json, person3.json  in the resources folder
     @PostMapping
     public User createUser(@RequestBody User user) {
-        System.out.println("Received from Postman: LML 333  " + user);
         return userService.saveUser(user);
     }
 
@@ -37,9 +50,44 @@ public class UserController {
         return userService.getAllUsers();
     }
 
+    // Streaming version of the above, for big collections. Nothing is collected into a list, users are written
+    // to the response while the cursor is read, and the cursor is closed if the client disconnects.
+    //http://localhost:8081/api/users/stream                  -> NDJSON, one user per line
+    //http://localhost:8081/api/users/stream?format=array     -> chunked JSON array
+    @GetMapping("/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers(@RequestParam(defaultValue = "ndjson") String format) {
+        return JsonStreams.response(objectMapper, format, userService::streamAllUsers);
+    }
+
+    // Keyset pagination, no skip/limit so every page costs the same.
+    //http://localhost:8081/api/users/page?size=50
+    //http://localhost:8081/api/users/page?size=50&sort=age&fields=name,age&token=<nextToken from previous page>
+    @GetMapping("/page")
+    public UserPage<?> getUsersPage(@RequestParam(defaultValue = "50") int size,
+                                 @RequestParam(defaultValue = "id") String sort,
+                                 @RequestParam(required = false) String token,
+                                 @RequestParam(required = false) Set<String> fields) {
+        UserPage<User> page = userService.findPage(size, sort, token, fields);
+        return new UserPage<>(UserProjections.trim(objectMapper, page.getContent(), fields), page.getSize(), page.getNextToken());
+    }
+
+    // Hits / misses / evictions of the GET /api/users/{id} cache since startup.
+    //http://localhost:8081/api/users/cache/stats
+    @GetMapping("/cache/stats")
+    public UserCacheStats getCacheStats() {
+        return userService.getCacheStats();
+    }
+
     //http://localhost:8081/api/users/102
+    // With app.raw-reads.enabled=true a cache miss is read as raw BSON and written straight to the response (RawUserReads),
+    // it is not put into the cache (that would need the User object we are avoiding), a cached user is still served.
+    // Concurrent misses for the same id share one read (SingleFlight in RawUserReads), like UserCache does for its loads.
     @GetMapping("/{id}")
-    public User getUser(@PathVariable String id) {
+    public Object getUser(@PathVariable String id) {
+        if (rawUserReads.enabled()) {
+            User cached = userService.getCachedUser(id);
+            return cached != null ? cached : rawUserReads.findById(id, null, null);
+        }
         return userService.getUserById(id).orElse(null);
     }
 
@@ -51,15 +99,15 @@ public class UserController {
 
 
     // PUT – Replace the entire user,  change any value in request body (use person3.json), the entire document will be replaced for that particular id.
+    // One replace with an _id filter, the 404 comes from the matched count (no separate exists check before the write).
     //http://localhost:8081/api/users/102
     @PutMapping("/{id}")
     public ResponseEntity<User> updateUser(@PathVariable String id, @RequestBody User updatedUser) {
-        if (!userService.isExistsById(id)) {
+        User replaced = userService.replaceUser(id, updatedUser);  // keeps the original ID
+        if (replaced == null) {
             return ResponseEntity.notFound().build();
         }
-        updatedUser.setId(id); // Keep the original ID
-
-        return ResponseEntity.ok(userService.saveUser(updatedUser));  // save user is just replacing.., This will work in post also, we are calling the save method rt
+        return ResponseEntity.ok(replaced);
     }
 
 
@@ -68,7 +116,8 @@ public class UserController {
 
 
     // PATCH – Partial update
-    //The PATCH endpoint uses Java Reflection for dynamic updates. It works for top-level fields only (like active, age, etc).
+    //The PATCH endpoint is translated into one $set/$unset update (findAndModify), no reflection and no read-modify-write.
+    //It works for top-level fields only (like active, age, etc), a null value removes the field.
     //http://localhost:8081/api/users/102
     /*
 
@@ -82,10 +131,11 @@ public class UserController {
      */
     @PatchMapping("/{id}")
     public ResponseEntity<User> patchUser(@PathVariable String id, @RequestBody Map<String, Object> updates) {
-        if (!userService.isExistsById(id)) {
+        User patched = userService.patchUser(id, updates);   // null -> findAndModify matched nothing
+        if (patched == null) {
             return ResponseEntity.notFound().build();
         }
-        return ResponseEntity.ok(userService.patchUser(id, updates));
+        return ResponseEntity.ok(patched);
     }
 
 
@@ -109,12 +159,10 @@ public class UserController {
      */
 
     // Note: header should have   Content-Type:     application/json-patch+json
+    // Unknown id -> UserNotFoundException from the service -> 404 (see ApiExceptionHandler)
 
     @PatchMapping(path = "/jsonpatch/{id}", consumes = "application/json-patch+json")
     public ResponseEntity<?> patchUser(@PathVariable String id, @RequestBody JsonPatch patch) {
-        if (!userService.isExistsById(id)) {
-            return ResponseEntity.notFound().build();
-        }
         User user = userService.jsonPatchUpdate( id, patch);
         if(null == user){
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Patch failed: ");
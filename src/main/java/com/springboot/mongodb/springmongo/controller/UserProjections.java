@@ -0,0 +1,57 @@
+package com.springboot.mongodb.springmongo.controller;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.springboot.mongodb.springmongo.model.User;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/*
+When a client asks for ?fields=..., the query only loads those fields from Mongo, but the User object still has
+all the other fields with default values (age 0, active false ...). Sending that back would look like real data,
+so here we cut the JSON down to the requested fields (+ id).
+ */
+final class UserProjections {
+
+    private UserProjections() {
+    }
+
+    static List<?> trim(ObjectMapper objectMapper, List<User> users, Set<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return users;
+        }
+        Set<String> jsonNames = jsonNames(objectMapper, fields);
+        return users.stream()
+                .map(user -> {
+                    ObjectNode node = objectMapper.valueToTree(user);
+                    node.retain(jsonNames);
+                    return node;
+                })
+                .toList();
+    }
+
+    static Object trim(ObjectMapper objectMapper, User user, Set<String> fields) {
+        if (user == null || fields == null || fields.isEmpty()) {
+            return user;
+        }
+        return trim(objectMapper, List.of(user), fields).get(0);
+    }
+
+    // property name (rollNumber) -> json name (rollnumber), the fields parameter accepts both
+    private static Set<String> jsonNames(ObjectMapper objectMapper, Set<String> fields) {
+        JavaType type = objectMapper.constructType(User.class);
+        List<BeanPropertyDefinition> properties = objectMapper.getSerializationConfig().introspect(type).findProperties();
+        Set<String> names = new HashSet<>();
+        names.add("id");
+        for (BeanPropertyDefinition property : properties) {
+            if (fields.contains(property.getName()) || fields.contains(property.getInternalName())) {
+                names.add(property.getName());
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,11 @@
+package com.springboot.mongodb.springmongo.exception;
+
+// Invalid client input (unknown field, bad page token, batchSize out of range ...), mapped to 400 by ApiExceptionHandler
+// with its message. Only for checks on what the client sent: any other IllegalArgumentException is a bug -> 500.
+// Extends IllegalArgumentException so code catching that (JsonPatchCompiler's fallback) still sees it.
+public class BadRequestException extends IllegalArgumentException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
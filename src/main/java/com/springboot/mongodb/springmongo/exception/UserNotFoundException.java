@@ -0,0 +1,9 @@
+package com.springboot.mongodb.springmongo.exception;
+
+// No user with this id, mapped to 404 by ApiExceptionHandler.
+public class UserNotFoundException extends RuntimeException {
+
+    public UserNotFoundException(String id) {
+        super("User not found: " + id);
+    }
+}
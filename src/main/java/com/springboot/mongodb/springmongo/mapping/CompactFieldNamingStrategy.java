@@ -0,0 +1,66 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.springboot.mongodb.springmongo.model.Address;
+import com.springboot.mongodb.springmongo.model.Company;
+import com.springboot.mongodb.springmongo.model.Location;
+import com.springboot.mongodb.springmongo.model.Name;
+import com.springboot.mongodb.springmongo.model.User;
+import org.springframework.data.mapping.PersistentProperty;
+import org.springframework.data.mapping.model.FieldNamingStrategy;
+import org.springframework.data.mapping.model.PropertyNameFieldNamingStrategy;
+
+import java.util.Map;
+
+/*
+Short on-disk field names for the User document. Field names are stored in every document (and every array element),
+so "company.location.address.address1" repeated 3 x 3 times per user is a good part of the document size.
+
+    rollNumber -> rn    company  -> co     location -> loc    address1 -> a1
+    ...
+
+Only the java -> mongo name changes, the java model and the JSON of the REST API stay the same. Everything that goes
+through MongoTemplate / repositories (Criteria, Update, Sort, indexOps(User.class)) is mapped automatically.
+age, gender, active and name are kept as they are, they are short already and raw driver queries use them.
+Other entities (IndexStudy ...) keep their names.
+
+Opt-in, because existing documents have to be migrated at the same time (StorageCompactionService):
+    spring.data.mongodb.field-naming-strategy=com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy
+ */
+public class CompactFieldNamingStrategy implements FieldNamingStrategy {
+
+    static final Map<Class<?>, Map<String, String>> ALIASES = Map.of(
+            User.class, Map.of(
+                    "rollNumber", "rn",
+                    "dateOfJoining", "doj",
+                    "technology", "tech",
+                    "favoriteFruit", "fruit",
+                    "company", "co",
+                    "skillSet", "sk",
+                    "extras", "ext"),
+            Name.class, Map.of(
+                    "firstname", "fn",
+                    "lastname", "ln"),
+            Company.class, Map.of(
+                    "title", "t",
+                    "email", "em",
+                    "phone", "ph",
+                    "location", "loc"),
+            Location.class, Map.of(
+                    "country", "cty",
+                    "address", "adr"),
+            Address.class, Map.of(
+                    "address1", "a1",
+                    "address2", "a2"));
+
+    @Override
+    public String getFieldName(PersistentProperty<?> property) {
+        return compactName(property);
+    }
+
+    // the short name of a property, or its normal name when it has no alias
+    public static String compactName(PersistentProperty<?> property) {
+        Map<String, String> aliases = ALIASES.get(property.getOwner().getType());
+        String alias = aliases != null ? aliases.get(property.getName()) : null;
+        return alias != null ? alias : PropertyNameFieldNamingStrategy.INSTANCE.getFieldName(property);
+    }
+}
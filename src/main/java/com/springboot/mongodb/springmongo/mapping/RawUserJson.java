@@ -0,0 +1,173 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.model.User;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
+import org.bson.io.ByteBufferBsonInput;
+import org.bson.types.Decimal128;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+Writes a users document as it came from the server (RawBsonDocument, one byte[] per document) straight into a
+JsonGenerator, without building the User / Company / Location / Address objects and without a Document / JsonNode
+in between:
+
+    BSON bytes --BsonBinaryReader (one field at a time)--> JsonGenerator --> response stream
+
+The JSON is the one Jackson writes for the User entity, so clients can't tell the two read paths apart:
+- stored names -> API names, both taken from the mapping: _id -> id, rollNumber -> rollnumber, dateOfJoining ->
+  dateofjoining, skillSet -> skillset, and the short names of CompactFieldNamingStrategy (rn, co, loc, a1 ...)
+  when it is switched on
+- ObjectId -> hex string (like the String id of the entity), dates -> ISO-8601
+- fields of the model missing in the document are written with the value of a new entity (age 0, active false,
+  extras {}, title null ...), stored fields that are not in the model (_class ...) are left out, the converter
+  ignores them as well. extras is written as stored.
+Field order is the stored order, not the declaration order.
+
+The mapping is walked once (the first document) and kept.
+ */
+@Component
+public class RawUserJson {
+
+    // one embedded level (User, Name, Company, Location, Address): stored name -> how it is written
+    private record Level(Map<String, Field> fields) {
+    }
+
+    // nested == null -> written as stored (strings, numbers, extras ...)
+    private record Field(String jsonName, String propertyName, boolean id, Level nested, JsonNode missing) {
+    }
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private volatile Level user;
+
+    // properties: top level User properties asked for (?fields=...), the others were not loaded, null = all
+    public void write(RawBsonDocument document, JsonGenerator generator, Set<String> properties) throws IOException {
+        try (BsonBinaryReader reader = new BsonBinaryReader(new ByteBufferBsonInput(document.getByteBuffer()))) {
+            writeDocument(reader, generator, userLevel(), properties);
+        }
+    }
+
+    private void writeDocument(BsonBinaryReader reader, JsonGenerator generator, Level level, Set<String> properties) throws IOException {
+        reader.readStartDocument();
+        generator.writeStartObject();
+        Set<String> written = level == null ? null : new HashSet<>();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            if (level == null) {
+                generator.writeFieldName(name);
+                writeValue(reader, generator, null);
+                continue;
+            }
+            Field field = level.fields().get(name);
+            if (field == null) {
+                reader.skipValue();
+                continue;
+            }
+            written.add(name);
+            generator.writeFieldName(field.jsonName());
+            writeValue(reader, generator, field.nested());
+        }
+        reader.readEndDocument();
+        if (level != null) {
+            for (Map.Entry<String, Field> entry : level.fields().entrySet()) {
+                Field field = entry.getValue();
+                if (!written.contains(entry.getKey()) && (properties == null || field.id() || properties.contains(field.propertyName()))) {
+                    generator.writeFieldName(field.jsonName());
+                    generator.writeTree(field.missing());
+                }
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeValue(BsonBinaryReader reader, JsonGenerator generator, Level nested) throws IOException {
+        switch (reader.getCurrentBsonType()) {
+            case DOCUMENT -> writeDocument(reader, generator, nested, null);
+            case ARRAY -> {
+                reader.readStartArray();
+                generator.writeStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    writeValue(reader, generator, nested);
+                }
+                reader.readEndArray();
+                generator.writeEndArray();
+            }
+            case STRING -> generator.writeString(reader.readString());
+            case INT32 -> generator.writeNumber(reader.readInt32());
+            case INT64 -> generator.writeNumber(reader.readInt64());
+            case DOUBLE -> generator.writeNumber(reader.readDouble());
+            case DECIMAL128 -> {
+                Decimal128 value = reader.readDecimal128();
+                if (value.isNaN() || value.isInfinite()) {
+                    generator.writeString(value.toString());
+                } else {
+                    generator.writeNumber(value.bigDecimalValue());
+                }
+            }
+            case BOOLEAN -> generator.writeBoolean(reader.readBoolean());
+            case OBJECT_ID -> generator.writeString(reader.readObjectId().toHexString());
+            case DATE_TIME -> generator.writeString(Instant.ofEpochMilli(reader.readDateTime()).toString());
+            case BINARY -> generator.writeBinary(reader.readBinaryData().getData());
+            case NULL -> {
+                reader.readNull();
+                generator.writeNull();
+            }
+            default -> {
+                // regex, timestamp, min/max key ... not something a User holds
+                reader.skipValue();
+                generator.writeNull();
+            }
+        }
+    }
+
+    private Level userLevel() {
+        Level level = user;
+        if (level == null) {
+            level = level(mappingContext.getRequiredPersistentEntity(User.class));
+            user = level;
+        }
+        return level;
+    }
+
+    private Level level(MongoPersistentEntity<?> entity) {
+        JsonNode defaults = objectMapper.valueToTree(BeanUtils.instantiateClass(entity.getType()));
+        Map<String, Field> fields = new LinkedHashMap<>();
+        for (MongoPersistentProperty property : entity) {
+            String jsonName = jsonName(property);
+            Level nested = null;
+            if (property.isEntity() && !property.isMap()) {
+                nested = level(mappingContext.getRequiredPersistentEntity(property.getActualType()));
+            }
+            JsonNode missing = defaults.has(jsonName) ? defaults.get(jsonName) : objectMapper.nullNode();
+            fields.put(property.getFieldName(), new Field(jsonName, property.getName(), property.isIdProperty(), nested, missing));
+        }
+        return new Level(fields);
+    }
+
+    private static String jsonName(MongoPersistentProperty property) {
+        JsonProperty json = property.findAnnotation(JsonProperty.class);
+        return json != null && !json.value().isEmpty() ? json.value() : property.getName();
+    }
+}
@@ -0,0 +1,26 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.fasterxml.jackson.databind.JavaType;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+
+/**
+ * A top level field of {@link com.springboot.mongodb.springmongo.model.User}, resolved once from the mapping context.
+ *
+ * @param property the Spring Data property (java name, mongo field name, type)
+ * @param jsonName the name used in the REST API (rollnumber, dateofjoining, skillset ...)
+ * @param javaType the full generic type, used to convert incoming JSON values (List&lt;Company&gt; etc.)
+ */
+public record UserField(MongoPersistentProperty property, String jsonName, JavaType javaType) {
+
+    public String name() {
+        return property.getName();
+    }
+
+    public String fieldName() {
+        return property.getFieldName();
+    }
+
+    public boolean isId() {
+        return property.isIdProperty();
+    }
+}
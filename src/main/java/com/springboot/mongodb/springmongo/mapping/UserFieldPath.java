@@ -0,0 +1,25 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * A nested path inside the User document, e.g. the JSON pointer {@code /company/0/location/address/1/address1}.
+ *
+ * @param propertyPath dot path with java property names and array indexes ({@code company.0.location.address.1.address1}),
+ *                     this is what MongoTemplate Query/Update expect, Spring maps it to the stored field names
+ * @param valueType    declared type of the value at this path (String here, Address for {@code .../address/1})
+ * @param arrayElement true if the last segment is an array index (or {@code -} for "end of array")
+ * @param modelled     false when the path goes into the free form {@code extras} map (fields unknown to the model)
+ */
+public record UserFieldPath(String propertyPath, JavaType valueType, boolean arrayElement, boolean modelled) {
+
+    public String parentPath() {
+        int dot = propertyPath.lastIndexOf('.');
+        return dot < 0 ? null : propertyPath.substring(0, dot);
+    }
+
+    public String lastSegment() {
+        int dot = propertyPath.lastIndexOf('.');
+        return dot < 0 ? propertyPath : propertyPath.substring(dot + 1);
+    }
+}
@@ -0,0 +1,171 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Field metadata of the User document, taken from the MongoMappingContext (the same metadata MongoTemplate uses)
+and cached, so request handling never does a reflective field lookup.
+
+A field can be asked by its java name (rollNumber) or by its JSON name (rollnumber), both give the same UserField.
+Unknown names throw BadRequestException (-> 400 in ApiExceptionHandler).
+
+Nested paths (JSON pointer tokens like company / 0 / location / address / 1 / address1) are resolved with path(),
+walking the embedded types (Company, Location, Address) the same way. A top level name that is not in the model
+goes into the extras map, same as @JsonAnySetter does when Jackson reads a User.
+ */
+@Component
+public class UserFieldRegistry {
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, UserField> fields = new ConcurrentHashMap<>();
+
+    // per embedded class: json/java name -> (java name, generic type)
+    private final Map<Class<?>, Map<String, NestedProperty>> nestedProperties = new ConcurrentHashMap<>();
+
+    private record NestedProperty(String name, JavaType type) {
+    }
+
+    public UserField field(String name) {
+        UserField field = fields.computeIfAbsent(name, this::lookup);   // unknown names are not cached (lookup returns null)
+        if (field == null) {
+            throw new BadRequestException("Unknown user field: " + name);
+        }
+        return field;
+    }
+
+    /*
+    Resolves JSON pointer tokens to a property path + the type of the value at the end of it.
+    "-" (end of array) is accepted as last token only. Throws BadRequestException if the path doesn't fit the model
+    (index into an object, name into an array, "-" in the middle ...).
+     */
+    public UserFieldPath path(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            throw new BadRequestException("Empty path");
+        }
+        StringBuilder path = new StringBuilder();
+        JavaType type;
+        boolean modelled = true;
+        UserField root = fields.computeIfAbsent(tokens.get(0), this::lookup);
+        if (root != null) {
+            path.append(root.name());
+            type = root.javaType();
+        } else {
+            // not a User field -> extras.<name>, like @JsonAnySetter
+            UserField extras = field("extras");
+            path.append(extras.name()).append('.').append(tokens.get(0));
+            type = extras.javaType().getContentType();
+            modelled = false;
+        }
+        boolean arrayElement = false;
+        for (int i = 1; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            arrayElement = false;
+            if (type.isCollectionLikeType() || type.isArrayType()) {
+                boolean index = !token.isEmpty() && token.chars().allMatch(Character::isDigit);
+                boolean append = token.equals("-") && i == tokens.size() - 1;
+                if (!index && !append) {
+                    throw new BadRequestException("Expected an array index at '" + token + "'");
+                }
+                type = type.getContentType();
+                arrayElement = true;
+            } else if (type.isMapLikeType() || type.hasRawClass(Object.class)) {
+                type = type.isMapLikeType() ? type.getContentType() : type;
+                modelled = false;
+            } else {
+                NestedProperty property = nestedProperties(type.getRawClass()).get(token);
+                if (property == null) {
+                    throw new BadRequestException("Unknown field '" + token + "' in " + type.getRawClass().getSimpleName());
+                }
+                token = property.name();
+                type = property.type();
+            }
+            path.append('.').append(token);
+        }
+        return new UserFieldPath(path.toString(), type, arrayElement, modelled);
+    }
+
+    // Converts a JSON value (JsonNode, Map ...) into the given type
+    public Object convert(Object value, JavaType type) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.convertValue(value, type);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid value for " + type.getRawClass().getSimpleName() + ": " + value);
+        }
+    }
+
+    // Converts a JSON value (Map, List, Integer ...) into the declared type of the field, e.g. a list of maps into List<Company>
+    public Object convert(UserField field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.convertValue(value, field.javaType());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid value for '" + field.jsonName() + "': " + value);
+        }
+    }
+
+    public MongoPersistentEntity<?> userEntity() {
+        return mappingContext.getRequiredPersistentEntity(User.class);
+    }
+
+    private UserField lookup(String name) {
+        MongoPersistentEntity<?> entity = userEntity();
+        MongoPersistentProperty property = entity.getPersistentProperty(name);
+        if (property == null) {
+            for (MongoPersistentProperty candidate : entity) {
+                if (name.equals(jsonName(candidate))) {
+                    property = candidate;
+                    break;
+                }
+            }
+        }
+        if (property == null) {
+            return null;
+        }
+        return new UserField(property, jsonName(property), objectMapper.constructType(property.getField().getGenericType()));
+    }
+
+    private Map<String, NestedProperty> nestedProperties(Class<?> type) {
+        return nestedProperties.computeIfAbsent(type, key -> {
+            MongoPersistentEntity<?> entity = mappingContext.getPersistentEntity(key);
+            if (entity == null) {
+                throw new BadRequestException("Cannot navigate into " + key.getSimpleName());
+            }
+            Map<String, NestedProperty> properties = new HashMap<>();
+            for (MongoPersistentProperty property : entity) {
+                NestedProperty nested = new NestedProperty(property.getName(), objectMapper.constructType(property.getField().getGenericType()));
+                properties.put(property.getName(), nested);
+                properties.put(jsonName(property), nested);
+            }
+            return properties;
+        });
+    }
+
+    private static String jsonName(MongoPersistentProperty property) {
+        JsonProperty json = property.findAnnotation(JsonProperty.class);
+        return json != null && !json.value().isEmpty() ? json.value() : property.getName();
+    }
+}
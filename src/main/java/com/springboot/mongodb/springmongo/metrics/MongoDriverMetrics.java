@@ -0,0 +1,85 @@
+package com.springboot.mongodb.springmongo.metrics;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+Driver metrics that Spring Boot doesn't record on its own.
+
+Boot already registers (MongoMetricsAutoConfiguration):
+    mongodb.driver.commands          timer per command / collection / status  -> per command latency
+    mongodb.driver.pool.*            pool size, checked out, wait queue size
+
+This adds:
+    mongodb.driver.commands.documents   documents per cursor batch (find / aggregate / getMore), tagged with
+                                        command and collection. A find returning 10k documents shows up here
+                                        even when its latency still looks fine.
+    mongodb.driver.pool.checkout.wait   time spent waiting for a pooled connection, tagged with outcome.
+                                        Grows when the pool is smaller than the number of request threads.
+ */
+public class MongoDriverMetrics implements CommandListener, ConnectionPoolListener {
+
+    private final MeterRegistry registry;
+
+    public MongoDriverMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument cursor = event.getResponse().getDocument("cursor", null);
+        if (cursor == null) {
+            return;
+        }
+        BsonValue batch = cursor.containsKey("firstBatch") ? cursor.get("firstBatch") : cursor.get("nextBatch");
+        if (batch == null || !batch.isArray()) {
+            return;
+        }
+        DistributionSummary.builder("mongodb.driver.commands.documents")
+                .description("Documents returned per cursor batch")
+                .baseUnit("documents")
+                .tag("command", event.getCommandName())
+                .tag("collection", collection(cursor))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(batch.asArray().size());
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkoutTimer("success").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkoutTimer(event.getReason().name().toLowerCase()).record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer checkoutTimer(String outcome) {
+        return Timer.builder("mongodb.driver.pool.checkout.wait")
+                .description("Time waited for a connection from the pool")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    // cursor.ns is "database.collection"
+    private static String collection(BsonDocument cursor) {
+        BsonValue ns = cursor.get("ns");
+        if (ns == null || !ns.isString()) {
+            return "unknown";
+        }
+        String namespace = ns.asString().getValue();
+        return namespace.substring(namespace.indexOf('.') + 1);
+    }
+}
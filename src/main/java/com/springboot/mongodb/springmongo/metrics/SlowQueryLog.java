@@ -0,0 +1,152 @@
+package com.springboot.mongodb.springmongo.metrics;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.springboot.mongodb.springmongo.response.QueryPlanSummary;
+import com.springboot.mongodb.springmongo.response.SlowQuery;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/*
+Ring buffer of the last N query commands (find, aggregate, count, distinct, findAndModify) slower than the threshold.
+
+    commandStarted   -> keep a copy of the command (the event's document is only valid inside the callback)
+    commandSucceeded / commandFailed -> elapsed >= threshold ? add to the buffer (oldest one drops out)
+
+For every slow query the planner (QueryDiagnosticsService) runs explain("executionStats") on one background thread,
+so the entry also shows COLLSCAN vs IXSCAN and keys / docs examined. explain executes the query again, so the queue
+in front of it is small and full = the plan is skipped, a burst of slow queries can't double the load.
+Explain commands themselves are not tracked (they are not in TRACKED).
+ */
+@Slf4j
+public class SlowQueryLog implements CommandListener, AutoCloseable {
+
+    private static final Set<String> TRACKED = Set.of("find", "aggregate", "count", "distinct", "findAndModify");
+
+    private final long thresholdNanos;
+    private final int capacity;
+    private final Map<Integer, BsonDocument> started = new ConcurrentHashMap<>();
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final ThreadPoolExecutor planExecutor;
+
+    // (database, command) -> plan, set by QueryDiagnosticsService, null = no plans
+    private volatile BiFunction<String, BsonDocument, QueryPlanSummary> planner;
+
+    public SlowQueryLog(Duration threshold, int capacity) {
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.planExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "slow-query-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    public void setPlanner(BiFunction<String, BsonDocument, QueryPlanSummary> planner) {
+        this.planner = planner;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (capacity > 0 && TRACKED.contains(event.getCommandName())) {
+            started.put(event.getRequestId(), event.getCommand().clone());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        finished(event.getRequestId(), event.getDatabaseName(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        finished(event.getRequestId(), event.getDatabaseName(), event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void finished(int requestId, String database, String commandName, long elapsedNanos) {
+        BsonDocument command = started.remove(requestId);
+        if (command == null || elapsedNanos < thresholdNanos) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery();
+        slowQuery.setTime(Instant.now());
+        slowQuery.setDatabase(database);
+        slowQuery.setCollection(collection(command, commandName));
+        slowQuery.setCommandName(commandName);
+        slowQuery.setCommand(command.toJson());
+        slowQuery.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        synchronized (slowQueries) {
+            if (slowQueries.size() == capacity) {
+                slowQueries.removeFirst();
+            }
+            slowQueries.addLast(slowQuery);
+        }
+        log.debug("Slow {} on {} ({} ms): {}", commandName, slowQuery.getCollection(), slowQuery.getElapsedMillis(), slowQuery.getCommand());
+
+        BiFunction<String, BsonDocument, QueryPlanSummary> currentPlanner = planner;
+        if (currentPlanner != null) {
+            planExecutor.execute(() -> explain(currentPlanner, slowQuery, database, command));
+        }
+    }
+
+    private void explain(BiFunction<String, BsonDocument, QueryPlanSummary> currentPlanner, SlowQuery slowQuery,
+                         String database, BsonDocument command) {
+        QueryPlanSummary plan = null;
+        String error = null;
+        try {
+            plan = currentPlanner.apply(database, command);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        }
+        synchronized (slowQueries) {
+            slowQuery.setPlan(plan);
+            slowQuery.setPlanError(error);
+        }
+    }
+
+    // newest first
+    public List<SlowQuery> slowQueries() {
+        synchronized (slowQueries) {
+            List<SlowQuery> copy = new ArrayList<>(slowQueries);
+            Collections.reverse(copy);
+            return copy;
+        }
+    }
+
+    public void clear() {
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        planExecutor.shutdownNow();
+    }
+
+    // the command name's value is the collection, {find: "users", ...}
+    private static String collection(BsonDocument command, String commandName) {
+        BsonValue value = command.get(commandName);
+        return value != null && value.isString() ? value.asString().getValue() : "unknown";
+    }
+}
@@ -0,0 +1,9 @@
+package com.springboot.mongodb.springmongo.repository;
+
+import com.springboot.mongodb.springmongo.model.User;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+// Reactive twin of UserRepository, used by the "reactive" profile only (ReactiveUserService).
+public interface ReactiveUserRepository extends ReactiveMongoRepository<User, String> {
+
+}
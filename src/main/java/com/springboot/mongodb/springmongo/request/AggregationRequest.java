@@ -0,0 +1,68 @@
+package com.springboot.mongodb.springmongo.request;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+Pipeline spec for POST /api/users/mongotemplate/aggregate (AggregationService).
+Every stage has exactly one of match / group / project / sort / limit / facet:
+
+{
+  "pipeline": [
+    { "match":   [ { "field": "age", "op": "gt", "value": 25 } ] },
+    { "group":   { "by": ["gender"], "accumulators": [ { "name": "count", "op": "count" },
+                                                       { "name": "avgAge", "op": "avg", "field": "age" } ] } },
+    { "sort":    [ { "field": "count", "direction": "desc" } ] },
+    { "limit":   10 }
+  ],
+  "allowDiskUse": true,
+  "batchSize": 500
+}
+ */
+@Data
+public class AggregationRequest {
+
+    private List<Stage> pipeline;
+    private boolean allowDiskUse;
+    private Integer batchSize;
+
+    @Data
+    public static class Stage {
+        private List<Condition> match;
+        private Group group;
+        private List<String> project;
+        private List<SortField> sort;
+        private Integer limit;
+        private Map<String, List<Stage>> facet;
+    }
+
+    // op: eq, ne, gt, gte, lt, lte, in, nin, exists
+    @Data
+    public static class Condition {
+        private String field;
+        private String op = "eq";
+        private Object value;
+    }
+
+    @Data
+    public static class Group {
+        private List<String> by;
+        private List<Accumulator> accumulators;
+    }
+
+    // op: count (no field), sum, avg, min, max, first, last, push, addToSet
+    @Data
+    public static class Accumulator {
+        private String name;
+        private String op;
+        private String field;
+    }
+
+    @Data
+    public static class SortField {
+        private String field;
+        private String direction = "asc";
+    }
+}
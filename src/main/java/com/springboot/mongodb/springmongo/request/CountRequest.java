@@ -0,0 +1,27 @@
+package com.springboot.mongodb.springmongo.request;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.List;
+
+/*
+Body of POST /api/users/mongotemplate/countWhere (CountService).
+
+{
+  "filter": [ { "field": "age", "op": "gt", "value": 25 }, { "field": "technology", "value": "java" } ],
+  "maxStaleness": "PT30S",
+  "approximate": false
+}
+
+filter       -> conditions on User fields, and-ed, same ops as a match stage (AggregationRequest.Condition). Empty = all users
+maxStaleness -> how old a cached count may be (ISO-8601 duration or seconds), default 0 = not from the cache
+approximate  -> with an empty filter the collection metadata count (estimatedDocumentCount) is good enough
+ */
+@Data
+public class CountRequest {
+
+    private List<AggregationRequest.Condition> filter;
+    private Duration maxStaleness;
+    private boolean approximate;
+}
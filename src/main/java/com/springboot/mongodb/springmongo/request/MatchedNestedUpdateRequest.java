@@ -0,0 +1,32 @@
+package com.springboot.mongodb.springmongo.request;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/*
+Body of PUT /api/users/update/{id}/matched (UpdateService.updateMatchedNested). Same goal as nested-address, but the
+company / address is picked by its content, not by its position, so the client doesn't have to GET the user first to
+find the indexes:
+
+{
+  "company": { "title": "Software Engineer" },
+  "address": { "address2": "Kerala" },
+  "set":     { "address1": "Updated Trivandrum" }
+}
+
+company -> which elements of company are updated, field -> value, all must match (title, email, location.country ...)
+address -> which elements of location.address inside those companies, optional. Without it set changes the companies
+           themselves, without company every company is searched for the address
+set     -> fields of the matched element (Address when address is given, else Company) -> new value
+
+Every matching element is updated, not only the first one: two companies titled "Software Engineer" -> both change,
+in one atomic write.
+ */
+@Data
+public class MatchedNestedUpdateRequest {
+
+    private Map<String, Object> company;
+    private Map<String, Object> address;
+    private Map<String, Object> set;
+}
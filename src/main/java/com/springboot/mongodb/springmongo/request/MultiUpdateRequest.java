@@ -0,0 +1,40 @@
+package com.springboot.mongodb.springmongo.request;
+
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+Body of POST /api/users/mongotemplate/updateWhere (MultiUpdateService).
+
+{
+  "filter": [ { "field": "age", "op": "lt", "value": 18 } ],
+  "set":    { "favoriteFruit": "Apple", "company.0.location.country": "India" },
+  "inc":    { "age": 1 },
+  "push":   { "skillset": ["java", "mongo"] },
+  "pull":   { "skillset": "cobol" },
+  "unset":  ["extras.nickname"],
+  "mode":   "bulk",
+  "batchSize": 500
+}
+
+filter    -> conditions on User fields, and-ed, same ops as countWhere / a match stage. Required, an update of every
+             user has to say so (e.g. { "field": "id", "op": "exists", "value": true })
+set / inc / push / pull / unset -> field paths with dots (json or java names, array indexes), values are converted to
+             the type of the field. push / pull with a list push / pull every element ($each / $pullAll)
+mode      -> multi (default): one updateMulti. bulk: the matching ids are read in batches of batchSize and each batch is
+             one bulk write, for updates touching so many users that one statement would hold the collection too long
+ */
+@Data
+public class MultiUpdateRequest {
+
+    private List<AggregationRequest.Condition> filter;
+    private Map<String, Object> set;
+    private Map<String, Object> inc;
+    private Map<String, Object> push;
+    private Map<String, Object> pull;
+    private List<String> unset;
+    private String mode = "multi";
+    private Integer batchSize;
+}
@@ -0,0 +1,37 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Result of POST /api/users/mongotemplate/bulkIngest, totals + one entry per BulkOperations batch.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkIngestResult {
+    private long received;
+    private long inserted;
+    private long failed;
+    private long elapsedMillis;
+    // set when the body could not be read to the end, the batches before that point are still written
+    private String error;
+    private List<BatchResult> batches = new ArrayList<>();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchResult {
+        private int batch;
+        // position of the first document of this batch in the request body
+        private long offset;
+        private int size;
+        private int inserted;
+        // positions in the request body (not in the batch) of the documents that were not written
+        private List<Long> failedIndices = new ArrayList<>();
+        private List<String> errors = new ArrayList<>();
+        private long elapsedMillis;
+    }
+}
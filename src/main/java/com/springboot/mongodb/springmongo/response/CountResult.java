@@ -0,0 +1,20 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A count and where it came from, see CountService.
+// source: rollup | estimate | cache | query, ageMillis = how old the value is (0 for rollup / query),
+// coalesced = the query was shared with a concurrent identical request, hint = index the count was run with
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CountResult {
+
+    private long count;
+    private String source;
+    private long ageMillis;
+    private boolean coalesced;
+    private String hint;
+}
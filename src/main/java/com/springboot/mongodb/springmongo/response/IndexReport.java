@@ -0,0 +1,25 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Desired vs existing indexes of one collection, see UserIndexReconciler.
+// Entries are "<name> <keys>" (+ the reason for conflicting ones), extra indexes are only reported, never dropped.
+@Data
+public class IndexReport {
+
+    private String collection;
+    private List<String> present = new ArrayList<>();
+    private List<String> created = new ArrayList<>();
+    private List<String> missing = new ArrayList<>();
+    private List<String> conflicting = new ArrayList<>();
+    private List<String> extra = new ArrayList<>();
+    private List<String> errors = new ArrayList<>();
+
+    // every query shape has its index (created ones count, extra ones don't matter)
+    public boolean isInSync() {
+        return missing.isEmpty() && conflicting.isEmpty() && errors.isEmpty();
+    }
+}
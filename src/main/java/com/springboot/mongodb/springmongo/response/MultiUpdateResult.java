@@ -0,0 +1,19 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of POST /api/users/mongotemplate/updateWhere (MultiUpdateService).
+// batchMillis = time of every write (one entry in multi mode), elapsedMillis = everything, including reading the ids in bulk mode
+@Data
+public class MultiUpdateResult {
+
+    private String mode;
+    private long matched;
+    private long modified;
+    private int batches;
+    private List<Long> batchMillis = new ArrayList<>();
+    private long elapsedMillis;
+}
@@ -0,0 +1,29 @@
+package com.springboot.mongodb.springmongo.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What explain("executionStats") says about one query, see QueryDiagnosticsService.
+// collectionScan = the winning plan reads the whole collection (COLLSCAN), keysExamined / docsExamined vs returned
+// shows how selective the plan is (docsExamined >> returned = missing or bad index).
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class QueryPlanSummary {
+
+    private String query;
+    private String command;
+    private List<String> stages = new ArrayList<>();
+    private List<String> indexes = new ArrayList<>();
+    private boolean collectionScan;
+    private long keysExamined;
+    private long docsExamined;
+    private long returned;
+    private long executionMillis;
+
+    // the full explain output, only with ?raw=true
+    private Document explain;
+}
@@ -0,0 +1,15 @@
+package com.springboot.mongodb.springmongo.response;
+
+import com.springboot.mongodb.springmongo.mapping.RawUserJson;
+import org.bson.RawBsonDocument;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Users read as raw BSON (RawUserReads), written to the response by RawUsersMessageConverter without becoming User objects.
+// cursor is opened when the body is written (a MongoCursor, closed afterwards, or the document of a coalesced single
+// read), single = one object (empty body when nothing matched) instead of an array,
+// properties = top level User properties that were loaded (?fields=...), null = all, json = how a document is written.
+public record RawUsers(Supplier<? extends Iterator<RawBsonDocument>> cursor, boolean single, Set<String> properties, RawUserJson json) {
+}
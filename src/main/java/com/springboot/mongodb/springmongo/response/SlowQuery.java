@@ -0,0 +1,22 @@
+package com.springboot.mongodb.springmongo.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+
+import java.time.Instant;
+
+// One Mongo command that took longer than app.diagnostics.slow-query.threshold, see SlowQueryLog.
+// plan is filled in a moment later by a background explain (null while pending, when disabled or dropped).
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SlowQuery {
+
+    private Instant time;
+    private String database;
+    private String collection;
+    private String commandName;
+    private String command;
+    private long elapsedMillis;
+    private QueryPlanSummary plan;
+    private String planError;
+}
@@ -0,0 +1,32 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.Data;
+
+// Outcome of POST /api/users/mongotemplate/compactStorage, see StorageCompactionService.
+@Data
+public class StorageCompactionResult {
+
+    private String direction;
+    private boolean dryRun;
+
+    private long scanned;
+    // documents rewritten (or that would be, in a dry run)
+    private long migrated;
+    // already in the target format
+    private long unchanged;
+    // changed by someone else between our read and our write, run again to pick them up
+    private long skipped;
+
+    // BSON size of the scanned documents, measured before and after the rewrite
+    private long bytesBefore;
+    private long bytesAfter;
+    private double savedPercent;
+
+    // collStats size / storageSize (compressed, on disk) before and after, null in a dry run or when not available
+    private Long collectionSizeBefore;
+    private Long collectionSizeAfter;
+    private Long storageSizeBefore;
+    private Long storageSizeAfter;
+
+    private long elapsedMillis;
+}
@@ -0,0 +1,20 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Counters of the GET /api/users/{id} cache since startup, see UserCache.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserCacheStats {
+
+    private long size;
+    private long hits;
+    private long misses;
+    private double hitRate;
+    private long evictions;
+    private double averageLoadMillis;
+    private long coalesced;
+}
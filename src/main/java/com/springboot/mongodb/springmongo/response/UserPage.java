@@ -0,0 +1,18 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// One page of the keyset (seek) pagination on /api/users/page.
+// nextToken is opaque for the client, just send it back as ?token=... to get the next page. null means last page.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPage<T> {
+    private List<T> content;
+    private int size;
+    private String nextToken;
+}
@@ -0,0 +1,21 @@
+package com.springboot.mongodb.springmongo.response;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.Map;
+
+// User counts from the in-memory rollup, see UserRollups. current=false -> stale or not built yet,
+// the count endpoints query Mongo until the next rebuild.
+@Data
+public class UserRollupView {
+
+    private String mode;
+    private boolean current;
+    private Instant builtAt;
+    private long total;
+    private Map<String, Long> byGender;
+    private Map<String, Long> byTechnology;
+    private Map<String, Long> byActive;
+    private Map<String, Long> byAgeBucket;
+}
@@ -0,0 +1,96 @@
+package com.springboot.mongodb.springmongo.rollup;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.springboot.mongodb.springmongo.changes.UserChangeSink;
+import com.springboot.mongodb.springmongo.model.User;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/*
+Keeps UserRollups up to date from the users change stream (app.user-rollups.mode=change-stream, needs a replica set).
+
+To move a user from one cell to another we need the document before and after the change:
+    insert           fullDocument                               -> +1 after
+    update / replace fullDocumentBeforeChange + fullDocument    -> -1 before, +1 after
+    delete           fullDocumentBeforeChange                   -> -1 before
+Both images come from the pre- and post-images of the collection (MongoDB 6.0+), UserChangeStream switches them on
+because needsImages() is true. When an image is missing (older server, images expired, no collMod rights) the change
+can't be applied and the rollup is rebuilt instead, same on a gap or when the collection is dropped / renamed.
+
+A replayed event (after a restart the stream resumes from the last saved token) would count twice, so the first
+batch after startup is not applied but triggers a rebuild, which sees those writes already.
+ */
+@Component
+@ConditionalOnProperty(name = "app.user-rollups.mode", havingValue = "change-stream")
+public class UserRollupWatcher implements UserChangeSink {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserRollups userRollups;
+
+    @Override
+    public boolean needsImages() {
+        return true;
+    }
+
+    // false until the first batch, that one may hold events already counted before the restart
+    private volatile boolean caughtUp;
+
+    @Override
+    public void onChanges(List<ChangeStreamDocument<Document>> changes) {
+        if (!caughtUp) {
+            caughtUp = true;
+            userRollups.scheduleRebuild();
+            return;
+        }
+        changes.forEach(this::onChange);
+    }
+
+    @Override
+    public void onGap() {
+        userRollups.scheduleRebuild();
+    }
+
+    void onChange(ChangeStreamDocument<Document> change) {
+        OperationType type = change.getOperationType();
+        Document before = change.getFullDocumentBeforeChange();
+        Document after = change.getFullDocument();
+        switch (type) {
+            case INSERT -> {
+                if (after == null) {
+                    userRollups.scheduleRebuild();
+                } else {
+                    userRollups.apply(null, cell(after));
+                }
+            }
+            case UPDATE, REPLACE -> {
+                if (before == null || after == null) {
+                    userRollups.scheduleRebuild();
+                } else {
+                    userRollups.apply(cell(before), cell(after));
+                }
+            }
+            case DELETE -> {
+                if (before == null) {
+                    userRollups.scheduleRebuild();
+                } else {
+                    userRollups.apply(cell(before), null);
+                }
+            }
+            default -> userRollups.scheduleRebuild();   // drop, rename, invalidate ...
+        }
+    }
+
+    // read through the converter, so the stored field names (CompactFieldNamingStrategy) don't matter here
+    private UserRollups.Cell cell(Document document) {
+        return UserRollups.Cell.of(mongoTemplate.getConverter().read(User.class, document));
+    }
+}
@@ -0,0 +1,509 @@
+package com.springboot.mongodb.springmongo.rollup;
+
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.UserRollupView;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+Pre-aggregated user counts, so the dashboard counts (count(age), exactCount, countUsersByStatusOver25) are answered
+from memory instead of a count / aggregation over the whole users collection on every call.
+
+The rollup is a set of cells, one per (gender, technology, active, age) combination with the number of users in it.
+A few thousand cells at most, whatever the size of the collection, so every view (by gender, technology, active,
+age bucket, age > n) is a sum over the cells and doesn't touch Mongo:
+
+    users --rebuild (one $group over the 4 fields)--> cells in memory --flush--> user_rollups {_id: {gender, technology, active, age}, count}
+          --change-> apply(before cell -1, after cell +1) -----^
+
+Where the changes come from (app.user-rollups.mode):
+    writes         the service write paths report them (default, works on a standalone server). A write that touches
+                   none of gender, technology, active, age can't change a count and is ignored. Inserts, removes and
+                   the single user writes that get the document as it was before (PUT, PATCH, JSON patch, delete by
+                   id) move the user between cells incrementally. Any other write on the counted fields (update by
+                   filter, save ...) doesn't tell us the old values, it marks the rollup stale and a rebuild runs
+                   rebuild-delay later (many writes in a row -> one rebuild).
+                   Only sees the writes of this node, so the rollup is only trusted for max-age after a rebuild: an
+                   older one is rebuilt when the counts are asked for next (queried until then). Writes of other
+                   nodes, the reactive profile or the shell show up at most max-age late. refresh-interval > 0 also
+                   rebuilds it in the background, opt-in since that is a $group over users on every node.
+    change-stream  UserRollupWatcher (a UserChangeStream sink) applies every insert / update / delete on users,
+                   whoever made it (needs a replica set). The service hooks do nothing then, otherwise every write would be counted twice.
+    off            no rollup, the services always query.
+
+Stale or not built yet -> current() is false and the services fall back to the real query, so a count is never wrong
+for longer than it takes to rebuild.
+
+user_rollups is written with the absolute counts of the changed cells (not $inc), so several nodes writing the same
+cells converge on the same values. All Mongo work (rebuild, flush) runs on one background thread, apply() only
+touches memory and is cheap enough for the request thread.
+ */
+@Component
+@Slf4j
+public class UserRollups {
+
+    static final String COLLECTION = "user_rollups";
+
+    // what a cell is made of, a write that doesn't touch these can't change a count
+    public static final Set<String> COUNTED_FIELDS = Set.of("gender", "technology", "active", "age");
+
+    public record Cell(String gender, String technology, boolean active, int age) {
+
+        static Cell of(User user) {
+            return user == null ? null : new Cell(user.getGender(), user.getTechnology(), user.isActive(), user.getAge());
+        }
+
+        // 20 -> "20-29"
+        String ageBucket() {
+            int from = Math.floorDiv(age, 10) * 10;
+            return from + "-" + (from + 9);
+        }
+
+        Document id() {
+            return new Document("gender", gender).append("technology", technology).append("active", active).append("age", age);
+        }
+
+        // this cell with the update applied to it, null when it changes a counted field in a way that can't be
+        // followed here (a path below it, $push, $min ...)
+        Cell after(UpdateDefinition update) {
+            String gender = this.gender;
+            String technology = this.technology;
+            boolean active = this.active;
+            int age = this.age;
+            for (Map.Entry<String, Object> operator : update.getUpdateObject().entrySet()) {
+                if (!(operator.getValue() instanceof Document fields)) {
+                    continue;
+                }
+                for (Map.Entry<String, Object> field : fields.entrySet()) {
+                    String path = field.getKey();
+                    if (!counts(List.of(path))) {
+                        continue;
+                    }
+                    if (!COUNTED_FIELDS.contains(path)) {
+                        return null;
+                    }
+                    // $unset reads back like a missing field: null / false / 0
+                    Object value = switch (operator.getKey()) {
+                        case "$set" -> field.getValue();
+                        case "$unset" -> null;
+                        case "$inc" -> path.equals("age") && field.getValue() instanceof Number n ? age + n.intValue() : UNKNOWN;
+                        default -> UNKNOWN;
+                    };
+                    if (value == UNKNOWN) {
+                        return null;
+                    }
+                    switch (path) {
+                        case "gender" -> gender = text(value);
+                        case "technology" -> technology = text(value);
+                        case "active" -> active = Boolean.TRUE.equals(value);
+                        default -> age = UserRollups.age(value);
+                    }
+                }
+            }
+            return new Cell(gender, technology, active, age);
+        }
+    }
+
+    private static final Object UNKNOWN = new Object();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // writes | change-stream | off
+    private final String mode;
+    private final Duration rebuildDelay;
+    private final Duration flushDelay;
+    // writes mode only, 0 = no limit
+    private final Duration maxAge;
+    // writes mode only, 0 = no background rebuild
+    private final Duration refreshInterval;
+    private final ScheduledExecutorService executor;
+
+    private volatile Map<Cell, Long> cells = new ConcurrentHashMap<>();
+    private final Set<Cell> unflushed = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private volatile boolean built;
+    private volatile boolean stale;
+    // true from the start of a rebuild until its cells are published, guarded by rebuildLock
+    private boolean rebuilding;
+    private final Object rebuildLock = new Object();
+    private volatile Instant builtAt;
+    private volatile long builtAtNanos;
+
+    public UserRollups(@Value("${app.user-rollups.mode:writes}") String mode,
+                       @Value("${app.user-rollups.rebuild-delay:5s}") Duration rebuildDelay,
+                       @Value("${app.user-rollups.flush-delay:1s}") Duration flushDelay,
+                       @Value("${app.user-rollups.max-age:1m}") Duration maxAge,
+                       @Value("${app.user-rollups.refresh-interval:0s}") Duration refreshInterval) {
+        this.mode = mode.toLowerCase();
+        this.rebuildDelay = rebuildDelay;
+        this.flushDelay = flushDelay;
+        this.maxAge = maxAge;
+        this.refreshInterval = refreshInterval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-rollups");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!"off".equals(mode)) {
+            executor.execute(this::rebuildQuietly);
+        }
+        if ("writes".equals(mode) && !refreshInterval.isZero()) {
+            long every = refreshInterval.toMillis();
+            executor.scheduleWithFixedDelay(this::rebuildQuietly, every, every, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // ---- service write hooks (mode=writes only) ----
+
+    // true when the service writes are counted in, only then is a pre-image worth fetching for recordUpdate
+    public boolean tracksWrites() {
+        return "writes".equals(mode);
+    }
+
+    // true when one of the paths (property names, "age", "company.0.email" ...) is a counted field or below one
+    public static boolean counts(Collection<String> paths) {
+        return paths.stream().anyMatch(path -> COUNTED_FIELDS.contains(path.split("\\.")[0]));
+    }
+
+    public static boolean counts(UpdateDefinition update) {
+        return update.getUpdateObject().values().stream()
+                .anyMatch(fields -> fields instanceof Document document && counts(document.keySet()));
+    }
+
+    public void recordInsert(User user) {
+        if ("writes".equals(mode)) {
+            apply(null, Cell.of(user));
+        }
+    }
+
+    public void recordRemove(User user) {
+        if ("writes".equals(mode)) {
+            apply(Cell.of(user), null);
+        }
+    }
+
+    // one user replaced, before = the document it replaced, after = the new one
+    public void recordUpdate(User before, User after) {
+        if ("writes".equals(mode)) {
+            apply(Cell.of(before), Cell.of(after));
+        }
+    }
+
+    // one user updated, before = the document before the update (findAndModify returnNew(false))
+    public void recordUpdate(User before, UpdateDefinition update) {
+        if ("writes".equals(mode) && counts(update)) {
+            Cell cell = Cell.of(before);
+            Cell after = cell.after(update);
+            if (after == null) {
+                scheduleRebuild();
+            } else {
+                apply(cell, after);
+            }
+        }
+    }
+
+    // an update whose old values we don't know (by filter, several users ...), only matters if it sets a counted field
+    public void recordChange(UpdateDefinition update) {
+        if (counts(update)) {
+            recordChange();
+        }
+    }
+
+    // a write whose old values we don't know
+    public void recordChange() {
+        if ("writes".equals(mode)) {
+            scheduleRebuild();
+        }
+    }
+
+    // ---- reads, empty when the rollup can't be trusted (the caller runs the real query) ----
+
+    public boolean current() {
+        if (built && tooOld()) {
+            // no refresh in the background: rebuilt now that the counts are wanted, queried until it is done
+            scheduleRebuild(0);
+            return false;
+        }
+        return built && !stale;
+    }
+
+    // writes mode misses the writes of others, a rollup older than max-age may be off by them
+    private boolean tooOld() {
+        return "writes".equals(mode) && !maxAge.isZero() && System.nanoTime() - builtAtNanos > maxAge.toNanos();
+    }
+
+    // users with age > the given age
+    public OptionalLong countOlderThan(int age) {
+        return count(cell -> cell.age() > age);
+    }
+
+    // any filter on the counted fields (CountService)
+    public OptionalLong count(Predicate<Cell> filter) {
+        return current() ? OptionalLong.of(sum(filter)) : OptionalLong.empty();
+    }
+
+    // same shape as the aggregation result: [{_id: gender, count: n}, ...]
+    public Optional<List<Document>> countByGenderOlderThan(int age) {
+        if (!current()) {
+            return Optional.empty();
+        }
+        List<Document> result = new ArrayList<>();
+        group(Cell::gender, cell -> cell.age() > age)
+                .forEach((gender, count) -> result.add(new Document("_id", gender).append("count", count)));
+        return Optional.of(result);
+    }
+
+    public UserRollupView view() {
+        UserRollupView view = new UserRollupView();
+        view.setMode(mode);
+        view.setCurrent(current());
+        view.setBuiltAt(builtAt);
+        view.setTotal(sum(cell -> true));
+        // users without a gender / technology are counted under "none" (JSON has no null keys)
+        view.setByGender(group(cell -> Objects.toString(cell.gender(), "none"), cell -> true));
+        view.setByTechnology(group(cell -> Objects.toString(cell.technology(), "none"), cell -> true));
+        view.setByActive(group(cell -> String.valueOf(cell.active()), cell -> true));
+        view.setByAgeBucket(group(Cell::ageBucket, cell -> true));
+        return view;
+    }
+
+    // rebuild now and wait for it (POST /api/rollups/users/rebuild)
+    public UserRollupView rebuild() {
+        try {
+            executor.submit(this::rebuildCells).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding the user rollups", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+        }
+        return view();
+    }
+
+    // ---- incremental updates ----
+
+    // before / after = the cell of the user before and after the change, null for an insert / delete
+    void apply(Cell before, Cell after) {
+        if (before != null && before.equals(after)) {
+            return;
+        }
+        synchronized (rebuildLock) {
+            if (rebuilding) {
+                // the aggregation may or may not have seen this change and its cells replace the ones below
+                scheduleRebuild();
+            }
+            Map<Cell, Long> current = cells;
+            if (before != null) {
+                boolean[] found = new boolean[1];
+                current.computeIfPresent(before, (cell, count) -> {
+                    found[0] = true;
+                    return count > 1 ? count - 1 : null;
+                });
+                if (!found[0]) {
+                    // removed a user the rollup never counted, it is out of sync
+                    scheduleRebuild();
+                }
+                unflushed.add(before);
+            }
+            if (after != null) {
+                current.merge(after, 1L, Long::sum);
+                unflushed.add(after);
+            }
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flush, flushDelay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // missed or unknown changes, the counts are not trusted until the next rebuild
+    void scheduleRebuild() {
+        scheduleRebuild(rebuildDelay.toMillis());
+    }
+
+    private void scheduleRebuild(long delayMillis) {
+        stale = true;
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::rebuildQuietly, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuildCells();
+        } catch (RuntimeException e) {
+            log.warn("User rollup rebuild failed, counts are served by queries: {}", e.getMessage());
+        }
+    }
+
+    private void rebuildCells() {
+        // cleared first: a change during the aggregation (recordChange or apply) marks it stale again and schedules
+        // the next rebuild, the published cells are then not served
+        synchronized (rebuildLock) {
+            rebuilding = true;
+            rebuildScheduled.set(false);
+            stale = false;
+        }
+        long start = System.nanoTime();
+
+        TypedAggregation<User> aggregation = Aggregation.newAggregation(User.class,
+                Aggregation.group("gender", "technology", "active", "age").count().as("count"));
+        Map<Cell, Long> rebuilt = new ConcurrentHashMap<>();
+        try {
+            for (Document group : mongoTemplate.aggregate(aggregation, Document.class)) {
+                Document id = group.get("_id", Document.class);
+                Cell cell = new Cell(text(id.get("gender")), text(id.get("technology")),
+                        Boolean.TRUE.equals(id.get("active")), age(id.get("age")));
+                rebuilt.merge(cell, ((Number) group.get("count")).longValue(), Long::sum);
+            }
+        } catch (RuntimeException e) {
+            // the old cells may be missing changes, don't serve them until a rebuild works
+            synchronized (rebuildLock) {
+                rebuilding = false;
+                stale = true;
+            }
+            throw e;
+        }
+        synchronized (rebuildLock) {
+            cells = rebuilt;
+            unflushed.clear();
+            rebuilding = false;
+        }
+        builtAtNanos = System.nanoTime();
+        built = true;
+        builtAt = Instant.now();
+        writeAll(rebuilt);
+        log.info("User rollups rebuilt: {} cells, {} users in {} ms", rebuilt.size(),
+                sum(cell -> true), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // the grouped values are whatever is stored, not what User declares: old documents have age as a String ("60",
+    // MongoTemplateService.findAndModify used to write it that way). Read like the mapping would, anything else is 0,
+    // one odd document must not fail every rebuild
+    static int age(Object value) {
+        if (value instanceof Number number) {
+            return number.intValue();
+        }
+        if (value instanceof String string) {
+            try {
+                return (int) Double.parseDouble(string.trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    // gender / technology that are not a String (number, array ...) are counted as none
+    static String text(Object value) {
+        return value instanceof String string ? string : null;
+    }
+
+    // the summary collection is a copy for other readers, a failed write doesn't make the memory view wrong
+    private void writeAll(Map<Cell, Long> snapshot) {
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, COLLECTION);
+            List<Document> ids = new ArrayList<>();
+            snapshot.forEach((cell, count) -> {
+                ops.upsert(Query.query(Criteria.where("_id").is(cell.id())), Update.update("count", count));
+                ids.add(cell.id());
+            });
+            ops.remove(Query.query(Criteria.where("_id").nin(ids)));
+            ops.execute();
+        } catch (DataAccessException e) {
+            log.warn("Could not write {}: {}", COLLECTION, e.getMessage());
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        Set<Cell> changed = new HashSet<>(unflushed);
+        unflushed.removeAll(changed);
+        if (changed.isEmpty()) {
+            return;
+        }
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+            for (Cell cell : changed) {
+                // the value at flush time, not the delta, so a late flush never writes an old count
+                Long count = cells.get(cell);
+                Query query = Query.query(Criteria.where("_id").is(cell.id()));
+                if (count == null) {
+                    ops.remove(query);
+                } else {
+                    ops.upsert(query, Update.update("count", count));
+                }
+            }
+            ops.execute();
+        } catch (DataAccessException e) {
+            log.warn("Could not flush {} rollup cells to {}: {}", changed.size(), COLLECTION, e.getMessage());
+        }
+    }
+
+    private long sum(Predicate<Cell> filter) {
+        long total = 0;
+        for (Map.Entry<Cell, Long> entry : cells.entrySet()) {
+            if (filter.test(entry.getKey())) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    private Map<String, Long> group(Function<Cell, String> key, Predicate<Cell> filter) {
+        Map<String, Long> groups = new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder()));
+        cells.forEach((cell, count) -> {
+            if (filter.test(cell)) {
+                groups.merge(key.apply(cell), count, Long::sum);
+            }
+        });
+        return groups;
+    }
+}
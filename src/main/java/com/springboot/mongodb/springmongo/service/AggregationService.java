@@ -0,0 +1,278 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldPath;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Accumulator;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Condition;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.SortField;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Stage;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.FacetOperation;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+Runs a pipeline described by an AggregationRequest over users and streams the result.
+
+    spec --(validate + Spring Aggregation builders)--> TypedAggregation<User> --aggregateStream--> cursor --> response
+
+Nothing is collected: aggregateStream reads the cursor batch by batch (batchSize) and JsonStreams writes every
+document as it comes, so a group-by with 100k groups costs one batch of memory, not 100k documents.
+allowDiskUse lets $group / $sort spill to disk on the server instead of failing at the 100 MB stage limit.
+
+Validation, all BadRequestException (-> 400) before anything is sent to Mongo:
+    - exactly one operation per stage, at most MAX_STAGES stages, no facet inside a facet
+    - until the first group / project the fields are User fields (json or java names, nested with dots), resolved
+      through UserFieldRegistry, so typos don't silently match nothing. Values in match are converted to the field type.
+    - after a group / project the fields are the output fields of that stage, Spring checks those references when
+      the pipeline is rendered, build() renders it once up front so that is a 400 too, not a broken stream
+ */
+@Service
+public class AggregationService {
+
+    public static final int MAX_STAGES = 20;
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    private static final Set<String> MATCH_OPS = Set.of("eq", "ne", "gt", "gte", "lt", "lte", "in", "nin", "exists");
+    private static final Set<String> ACCUMULATOR_OPS = Set.of("count", "sum", "avg", "min", "max", "first", "last", "push", "addToSet");
+
+    // ObjectId as plain hex string (like User.id), dates as ISO strings
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder()
+            .outputMode(JsonMode.RELAXED)
+            .objectIdConverter((value, writer) -> writer.writeString(value.toHexString()))
+            .build();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    // validated now (BadRequestException for a bad spec), the cursor is opened by the supplier, e.g. when
+    // JsonStreams starts writing the body
+    public Supplier<Stream<RawValue>> prepare(AggregationRequest request) {
+        TypedAggregation<User> aggregation = build(request);
+        return () -> stream(aggregation);
+    }
+
+    // the cursor is open when this returns, the caller has to close the stream (JsonStreams does)
+    public Stream<RawValue> aggregate(AggregationRequest request) {
+        return stream(build(request));
+    }
+
+    private Stream<RawValue> stream(TypedAggregation<User> aggregation) {
+        return mongoTemplate.aggregateStream(aggregation, Document.class)
+                .map(document -> new RawValue(document.toJson(JSON)));
+    }
+
+    TypedAggregation<User> build(AggregationRequest request) {
+        if (request.getBatchSize() != null && (request.getBatchSize() < 1 || request.getBatchSize() > MAX_BATCH_SIZE)) {
+            throw new BadRequestException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        AggregationOptions.Builder options = AggregationOptions.builder().allowDiskUse(request.isAllowDiskUse());
+        if (request.getBatchSize() != null) {
+            options.cursorBatchSize(request.getBatchSize());
+        }
+        TypedAggregation<User> aggregation = Aggregation.newAggregation(User.class, operations(request.getPipeline(), true, false))
+                .withOptions(options.build());
+        try {
+            // e.g. "Invalid reference 'technology'" for a sort on a field the group before dropped
+            aggregation.toPipeline(Aggregation.DEFAULT_CONTEXT);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+        return aggregation;
+    }
+
+    private List<AggregationOperation> operations(List<Stage> pipeline, boolean userFields, boolean inFacet) {
+        if (pipeline == null || pipeline.isEmpty() || pipeline.size() > MAX_STAGES) {
+            throw new BadRequestException("A pipeline needs 1 to " + MAX_STAGES + " stages");
+        }
+        List<AggregationOperation> operations = new ArrayList<>();
+        for (Stage stage : pipeline) {
+            int defined = (stage.getMatch() != null ? 1 : 0) + (stage.getGroup() != null ? 1 : 0) + (stage.getProject() != null ? 1 : 0)
+                    + (stage.getSort() != null ? 1 : 0) + (stage.getLimit() != null ? 1 : 0) + (stage.getFacet() != null ? 1 : 0);
+            if (defined != 1) {
+                throw new BadRequestException("Each stage needs exactly one of match, group, project, sort, limit, facet");
+            }
+            if (stage.getMatch() != null) {
+                operations.add(Aggregation.match(match(stage.getMatch(), userFields)));
+            } else if (stage.getGroup() != null) {
+                operations.add(group(stage.getGroup(), userFields));
+                userFields = false;
+            } else if (stage.getProject() != null) {
+                operations.add(Aggregation.project(fields(stage.getProject(), userFields)));
+                userFields = false;
+            } else if (stage.getSort() != null) {
+                operations.add(Aggregation.sort(sort(stage.getSort(), userFields)));
+            } else if (stage.getLimit() != null) {
+                if (stage.getLimit() < 1) {
+                    throw new BadRequestException("limit must be at least 1");
+                }
+                operations.add(Aggregation.limit(stage.getLimit()));
+            } else {
+                if (inFacet) {
+                    throw new BadRequestException("facet can't be used inside a facet");
+                }
+                operations.add(facet(stage.getFacet(), userFields));
+            }
+        }
+        return operations;
+    }
+
+    private String[] fields(List<String> fields, boolean userFields) {
+        if (fields.isEmpty()) {
+            throw new BadRequestException("project needs at least one field");
+        }
+        return fields.stream().map(field -> field(field, userFields)).toArray(String[]::new);
+    }
+
+    // a filter on User fields, same rules as a match stage (CountService)
+    Criteria criteria(List<Condition> conditions) {
+        return match(conditions == null ? List.of() : conditions, true);
+    }
+
+    private Criteria match(List<Condition> conditions, boolean userFields) {
+        if (conditions.isEmpty()) {
+            return new Criteria();
+        }
+        List<Criteria> criteria = new ArrayList<>();
+        for (Condition condition : conditions) {
+            String op = condition.getOp() == null ? "eq" : condition.getOp();
+            if (!MATCH_OPS.contains(op)) {
+                throw new BadRequestException("Unknown match op '" + op + "', allowed: " + MATCH_OPS);
+            }
+            String field = field(condition.getField(), userFields);
+            JavaType type = userFields ? elementType(userFieldRegistry.path(tokens(condition.getField())).valueType()) : null;
+            Criteria where = Criteria.where(field);
+            criteria.add(switch (op) {
+                case "eq" -> where.is(value(condition.getValue(), type));
+                case "ne" -> where.ne(value(condition.getValue(), type));
+                case "gt" -> where.gt(value(condition.getValue(), type));
+                case "gte" -> where.gte(value(condition.getValue(), type));
+                case "lt" -> where.lt(value(condition.getValue(), type));
+                case "lte" -> where.lte(value(condition.getValue(), type));
+                case "in" -> where.in(values(condition.getValue(), type));
+                case "nin" -> where.nin(values(condition.getValue(), type));
+                default -> where.exists(!Boolean.FALSE.equals(condition.getValue()));
+            });
+        }
+        return criteria.size() == 1 ? criteria.get(0) : new Criteria().andOperator(criteria);
+    }
+
+    private GroupOperation group(AggregationRequest.Group spec, boolean userFields) {
+        String[] by = spec.getBy() == null ? new String[0] : spec.getBy().stream().map(field -> field(field, userFields)).toArray(String[]::new);
+        GroupOperation group = Aggregation.group(by);
+        Set<String> names = new HashSet<>();
+        for (Accumulator accumulator : spec.getAccumulators() == null ? List.<Accumulator>of() : spec.getAccumulators()) {
+            String name = accumulator.getName();
+            if (name == null || name.isBlank() || name.contains(".") || name.startsWith("$") || !names.add(name)) {
+                throw new BadRequestException("Accumulator names must be unique plain field names, got '" + name + "'");
+            }
+            String op = accumulator.getOp();
+            if (!ACCUMULATOR_OPS.contains(op)) {
+                throw new BadRequestException("Unknown accumulator op '" + op + "', allowed: " + ACCUMULATOR_OPS);
+            }
+            if (op.equals("count")) {
+                group = group.count().as(name);
+                continue;
+            }
+            String field = field(accumulator.getField(), userFields);
+            group = switch (op) {
+                case "sum" -> group.sum(field).as(name);
+                case "avg" -> group.avg(field).as(name);
+                case "min" -> group.min(field).as(name);
+                case "max" -> group.max(field).as(name);
+                case "first" -> group.first(field).as(name);
+                case "last" -> group.last(field).as(name);
+                case "push" -> group.push(field).as(name);
+                default -> group.addToSet(field).as(name);
+            };
+        }
+        return group;
+    }
+
+    private Sort sort(List<SortField> fields, boolean userFields) {
+        if (fields.isEmpty()) {
+            throw new BadRequestException("sort needs at least one field");
+        }
+        Sort sort = Sort.unsorted();
+        for (SortField field : fields) {
+            Sort.Direction direction = Sort.Direction.fromOptionalString(field.getDirection())
+                    .orElseThrow(() -> new BadRequestException("Sort direction must be asc or desc, got '" + field.getDirection() + "'"));
+            sort = sort.and(Sort.by(direction, field(field.getField(), userFields)));
+        }
+        return sort;
+    }
+
+    private FacetOperation facet(Map<String, List<Stage>> facets, boolean userFields) {
+        if (facets.isEmpty()) {
+            throw new BadRequestException("facet needs at least one output");
+        }
+        FacetOperation facet = Aggregation.facet();
+        for (Map.Entry<String, List<Stage>> output : facets.entrySet()) {
+            facet = facet.and(operations(output.getValue(), userFields, true).toArray(AggregationOperation[]::new)).as(output.getKey());
+        }
+        return facet;
+    }
+
+    // User field -> property path (rollnumber -> rollNumber, extras.x as is), output field -> as is
+    private String field(String field, boolean userFields) {
+        if (field == null || field.isBlank() || field.startsWith("$")) {
+            throw new BadRequestException("Invalid field '" + field + "'");
+        }
+        if (!userFields) {
+            return field;
+        }
+        UserFieldPath path = userFieldRegistry.path(tokens(field));
+        if (!path.modelled() && !field.startsWith("extras.")) {
+            // the registry would map it to extras.<field>, which is almost always a typo that matches nothing
+            throw new BadRequestException("Unknown field '" + field + "', fields outside the model are addressed as extras." + field);
+        }
+        return path.propertyPath();
+    }
+
+    private static List<String> tokens(String field) {
+        return Arrays.asList(field.split("\\.", -1));
+    }
+
+    // a match on an array field (skillset: "java") compares with the elements
+    private static JavaType elementType(JavaType type) {
+        return type.isCollectionLikeType() ? type.getContentType() : type;
+    }
+
+    private Object value(Object value, JavaType type) {
+        return type == null || value == null ? value : userFieldRegistry.convert(value, type);
+    }
+
+    private List<Object> values(Object value, JavaType type) {
+        if (!(value instanceof List<?> list)) {
+            throw new BadRequestException("in / nin need a list value");
+        }
+        return list.stream().map(element -> value(element, type)).toList();
+    }
+}
@@ -0,0 +1,180 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult.BatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.stream.LongStream;
+
+/*
+Bulk load of users from a streamed request body (NDJSON or a JSON array).
+
+    body --(Jackson MappingIterator, one user at a time)--> batch of N users --> bulkOps(UNORDERED).insert(batch).execute()
+
+- The body is never read fully into memory, only the batches in flight are.
+- Up to maxInFlight batches are written concurrently (on the ingestExecutor), when all permits are taken the reader
+  waits, so a fast client can't pile up batches in memory (backpressure goes back to the TCP connection).
+- UNORDERED by default: the server keeps going after a failing document (duplicate _id ...), the failed positions
+  are reported per batch. ORDERED stops the batch at the first error.
+ */
+@Service
+@Slf4j
+public class BulkIngestService {
+
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    // don't send back thousands of identical error messages
+    static final int MAX_ERRORS_PER_BATCH = 10;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRollups userRollups;
+
+    @Autowired
+    @Qualifier("ingestExecutor")
+    private Executor ingestExecutor;
+
+    @Value("${app.ingest.batch-size:1000}")
+    private int defaultBatchSize;
+
+    @Value("${app.ingest.max-in-flight:4}")
+    private int defaultMaxInFlight;
+
+    public BulkIngestResult ingest(InputStream body, Integer batchSize, Integer maxInFlight, boolean ordered) {
+        int size = batchSize != null ? batchSize : defaultBatchSize;
+        int inFlight = maxInFlight != null ? maxInFlight : defaultMaxInFlight;
+        if (size < 1 || size > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        if (inFlight < 1) {
+            throw new BadRequestException("maxInFlight must be at least 1");
+        }
+
+        long start = System.nanoTime();
+        Semaphore permits = new Semaphore(inFlight);
+        List<CompletableFuture<BatchResult>> pending = new ArrayList<>();
+        BulkIngestResult result = new BulkIngestResult();
+        long received = 0;
+
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(body)) {
+            List<User> batch = new ArrayList<>(size);
+            while (users.hasNextValue()) {
+                batch.add(users.nextValue());
+                received++;
+                if (batch.size() == size) {
+                    pending.add(submit(pending.size(), received - batch.size(), batch, ordered, permits));
+                    batch = new ArrayList<>(size);
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(pending.size(), received - batch.size(), batch, ordered, permits));
+            }
+        } catch (IOException | RuntimeException e) {
+            // bad JSON in the middle of the body, what was read before is still written
+            log.warn("Bulk ingest stopped reading after {} documents: {}", received, e.getMessage());
+            result.setError("Stopped reading the body after " + received + " documents: " + e.getMessage());
+        }
+
+        for (CompletableFuture<BatchResult> future : pending) {
+            BatchResult batchResult = future.join();
+            result.getBatches().add(batchResult);
+            result.setInserted(result.getInserted() + batchResult.getInserted());
+            result.setFailed(result.getFailed() + batchResult.getFailedIndices().size());
+        }
+        result.setReceived(received);
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("Bulk ingest: received={} inserted={} failed={} batches={} in {} ms",
+                received, result.getInserted(), result.getFailed(), pending.size(), result.getElapsedMillis());
+        return result;
+    }
+
+    private CompletableFuture<BatchResult> submit(int number, long offset, List<User> batch, boolean ordered, Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free batch slot", e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writeBatch(number, offset, batch, ordered);
+                } finally {
+                    permits.release();
+                }
+            }, ingestExecutor);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    BatchResult writeBatch(int number, long offset, List<User> batch, boolean ordered) {
+        long start = System.nanoTime();
+        BatchResult result = new BatchResult();
+        result.setBatch(number);
+        result.setOffset(offset);
+        result.setSize(batch.size());
+
+        try {
+            BulkOperations ops = mongoTemplate.bulkOps(ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED, User.class);
+            ops.insert(batch);
+            BulkWriteResult writeResult = ops.execute();
+            result.setInserted(writeResult.getInsertedCount());
+            batch.forEach(userRollups::recordInsert);
+        } catch (BulkOperationException e) {
+            result.setInserted(e.getResult().getInsertedCount());
+            userRollups.recordChange();     // which ones made it is not worth tracking here, recount
+            for (BulkWriteError error : e.getErrors()) {
+                result.getFailedIndices().add(offset + error.getIndex());
+                if (result.getErrors().size() < MAX_ERRORS_PER_BATCH) {
+                    result.getErrors().add(error.getMessage());
+                }
+            }
+            if (ordered) {
+                // ORDERED stops at the first error, everything after it was not written either
+                long firstFailed = e.getErrors().get(0).getIndex();
+                LongStream.range(firstFailed + 1, batch.size()).forEach(i -> result.getFailedIndices().add(offset + i));
+            }
+        } catch (RuntimeException e) {
+            // the whole batch failed (timeout, connection lost ... or a user that can't be mapped, a driver error Spring
+            // doesn't translate). Reported as a failed batch, thrown out of here it would fail the join in ingest() and
+            // the report of every other batch with it
+            if (!(e instanceof DataAccessException)) {
+                log.warn("Bulk ingest batch {} failed", number, e);
+            }
+            LongStream.range(0, batch.size()).forEach(i -> result.getFailedIndices().add(offset + i));
+            userRollups.recordChange();     // a timeout may still have written part of it
+            result.getErrors().add(e.getMessage());
+        }
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+}
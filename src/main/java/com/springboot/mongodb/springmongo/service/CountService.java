@@ -0,0 +1,220 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldPath;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Condition;
+import com.springboot.mongodb.springmongo.request.CountRequest;
+import com.springboot.mongodb.springmongo.response.CountResult;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.rollup.UserRollups.Cell;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/*
+One count API for users instead of picking between estimatedCount / exactCount / count(age) / customCount /
+countWithLambda. The caller says what it needs (a filter, how stale the answer may be, whether an estimate is fine)
+and the cheapest source that satisfies it answers:
+
+    1. rollup    the filter only uses gender / technology / active / age and UserRollups is current
+                 -> sum over the rollup cells in memory, exact, no Mongo call
+    2. estimate  empty filter + approximate=true -> estimatedDocumentCount (collection metadata, no scan)
+    3. cache     a count for the same filter, not older than maxStaleness
+    4. query     countDocuments, hinted to an index that holds every filter field so the server counts index
+                 keys without fetching documents (covered). Concurrent requests for the same filter share one
+                 query (SingleFlight, coalesced=true), the result goes into the cache.
+
+Every answer says which source it came from (CountResult.source), so callers can see what they pay for.
+ */
+@Service
+public class CountService {
+
+    // fields UserRollups counts by, with how to read them from a cell
+    private static final Map<String, Function<Cell, Object>> ROLLUP_FIELDS = Map.of(
+            "gender", Cell::gender,
+            "technology", Cell::technology,
+            "active", Cell::active,
+            "age", Cell::age);
+
+    private static final long INDEX_REFRESH_NANOS = Duration.ofMinutes(1).toNanos();
+
+    record CachedCount(long count, long atNanos) {
+    }
+
+    record IndexSnapshot(List<IndexInfo> indexes, long atNanos) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AggregationService aggregationService;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private UserRollups userRollups;
+
+    @Autowired
+    private SingleFlight singleFlight;
+
+    // counts are kept at most max-staleness, a request allowing more gets at most that old a value
+    private final Cache<String, CachedCount> cache;
+    private volatile IndexSnapshot indexSnapshot;
+
+    public CountService(@Value("${app.count.cache.maximum-size:1000}") long maximumSize,
+                        @Value("${app.count.cache.max-staleness:10m}") Duration maxCacheAge) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(maxCacheAge)
+                .build();
+    }
+
+    public CountResult count(CountRequest request) {
+        List<Condition> filter = request.getFilter() == null ? List.of() : request.getFilter();
+        Duration maxStaleness = request.getMaxStaleness() == null ? Duration.ZERO : request.getMaxStaleness();
+        if (maxStaleness.isNegative()) {
+            throw new BadRequestException("maxStaleness can't be negative");
+        }
+        // validates the fields and converts the values, before any shortcut is taken
+        Criteria criteria = aggregationService.criteria(filter);
+
+        Predicate<Cell> rollupFilter = rollupFilter(filter);
+        if (rollupFilter != null) {
+            OptionalLong rolledUp = userRollups.count(rollupFilter);
+            if (rolledUp.isPresent()) {
+                return new CountResult(rolledUp.getAsLong(), "rollup", 0, false, null);
+            }
+        }
+        if (filter.isEmpty() && request.isApproximate()) {
+            return new CountResult(mongoTemplate.estimatedCount(User.class), "estimate", 0, false, null);
+        }
+
+        MongoPersistentEntity<?> entity = userFieldRegistry.userEntity();
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        String key = queryMapper.getMappedObject(criteria.getCriteriaObject(), entity).toJson();
+        CachedCount cached = cache.getIfPresent(key);
+        if (cached != null) {
+            long ageNanos = System.nanoTime() - cached.atNanos();
+            if (ageNanos <= maxStaleness.toNanos()) {
+                return new CountResult(cached.count(), "cache", ageNanos / 1_000_000, false, null);
+            }
+        }
+
+        String hint = hint(filter, queryMapper, entity);
+        // an identical count already on its way is shared, its answer is at least as fresh as ours would be
+        SingleFlight.Outcome<Long> counted = singleFlight.call("countWhere", key, () -> {
+            Query query = new Query(criteria);
+            if (hint != null) {
+                query.withHint(hint);
+            }
+            long count = mongoTemplate.count(query, User.class);
+            cache.put(key, new CachedCount(count, System.nanoTime()));
+            return count;
+        });
+        return new CountResult(counted.value(), "query", 0, counted.coalesced(), hint);
+    }
+
+    // null when a condition is on a field (or uses an op) the rollup can't answer
+    Predicate<Cell> rollupFilter(List<Condition> filter) {
+        Predicate<Cell> predicate = cell -> true;
+        for (Condition condition : filter) {
+            UserFieldPath path = userFieldRegistry.path(Arrays.asList(condition.getField().split("\\.", -1)));
+            Function<Cell, Object> getter = ROLLUP_FIELDS.get(path.propertyPath());
+            String op = condition.getOp() == null ? "eq" : condition.getOp();
+            if (getter == null || op.equals("exists")) {
+                return null;
+            }
+            Predicate<Cell> test;
+            if (op.equals("in") || op.equals("nin")) {
+                if (!(condition.getValue() instanceof List<?> list)) {
+                    return null;
+                }
+                Set<Object> values = new HashSet<>();
+                list.forEach(value -> values.add(convert(value, path)));
+                test = op.equals("in") ? cell -> values.contains(getter.apply(cell)) : cell -> !values.contains(getter.apply(cell));
+            } else {
+                Object value = convert(condition.getValue(), path);
+                if (op.equals("eq") || op.equals("ne")) {
+                    test = op.equals("eq") ? cell -> Objects.equals(getter.apply(cell), value) : cell -> !Objects.equals(getter.apply(cell), value);
+                } else if (value instanceof Integer bound && path.propertyPath().equals("age")) {
+                    test = switch (op) {
+                        case "gt" -> cell -> cell.age() > bound;
+                        case "gte" -> cell -> cell.age() >= bound;
+                        case "lt" -> cell -> cell.age() < bound;
+                        default -> cell -> cell.age() <= bound;
+                    };
+                } else {
+                    return null;    // range on a string / boolean, let Mongo compare
+                }
+            }
+            predicate = predicate.and(test);
+        }
+        return predicate;
+    }
+
+    private Object convert(Object value, UserFieldPath path) {
+        return value == null ? null : userFieldRegistry.convert(value, path.valueType());
+    }
+
+    /*
+    The smallest usable index whose keys contain every filter field and start with one of them, then the count
+    is an index scan only. Sparse and partial indexes are skipped, they don't hold every document, a hinted count
+    on them would miss the users without the field. No such index -> no hint, the planner decides.
+     */
+    private String hint(List<Condition> filter, QueryMapper queryMapper, MongoPersistentEntity<?> entity) {
+        if (filter.isEmpty()) {
+            return null;
+        }
+        Set<String> fields = new HashSet<>();
+        for (Condition condition : filter) {
+            String property = userFieldRegistry.path(Arrays.asList(condition.getField().split("\\.", -1))).propertyPath();
+            fields.addAll(queryMapper.getMappedSort(new Document(property, 1), entity).keySet());
+        }
+        return indexes().stream()
+                .filter(index -> !index.isSparse() && index.getPartialFilterExpression() == null)
+                .filter(index -> {
+                    List<String> keys = index.getIndexFields().stream().map(IndexField::getKey).toList();
+                    return fields.contains(keys.get(0)) && keys.containsAll(fields);
+                })
+                .min(Comparator.comparingInt(index -> index.getIndexFields().size()))
+                .map(IndexInfo::getName)
+                .orElse(null);
+    }
+
+    // index list of users, re-read at most once a minute (indexes are created / dropped rarely)
+    private List<IndexInfo> indexes() {
+        IndexSnapshot snapshot = indexSnapshot;
+        if (snapshot == null || System.nanoTime() - snapshot.atNanos() > INDEX_REFRESH_NANOS) {
+            snapshot = new IndexSnapshot(mongoTemplate.indexOps(User.class).getIndexInfo(), System.nanoTime());
+            indexSnapshot = snapshot;
+        }
+        return snapshot.indexes();
+    }
+}
@@ -3,6 +3,7 @@ package com.springboot.mongodb.springmongo.service;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
+import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Service;
 import java.util.concurrent.TimeUnit;
 
 @Service
+@Slf4j
 public class IndexDemoService {
 
     @Autowired
@@ -56,13 +58,13 @@ public class IndexDemoService {
                 new IndexOptions().name("location_geo_index")
         );
 
-        System.out.println(" All indexes created using MongoDB driver.");
+        log.info("All indexes created using MongoDB driver.");
     }
 
     //  Optionally: List all indexes
     public void listIndexes() {
         MongoCollection<Document> collection = mongoTemplate.getCollection("index");
-        System.out.println(" Current Indexes:");
-        collection.listIndexes().forEach(doc -> System.out.println(doc.toJson()));
+        log.info("Current Indexes:");
+        collection.listIndexes().forEach(doc -> log.info(doc.toJson()));
     }
 }
\ No newline at end of file
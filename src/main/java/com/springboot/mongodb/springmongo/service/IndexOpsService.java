@@ -1,6 +1,7 @@
 package com.springboot.mongodb.springmongo.service;
 
 import com.springboot.mongodb.springmongo.model.IndexStudy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -43,6 +44,7 @@ Geospatial index	                            Location-based geo queries
 
 
 @Service
+@Slf4j
 public class IndexOpsService {
 
     @Autowired
@@ -74,14 +76,14 @@ public class IndexOpsService {
         //  5. Geospatial Index on "location"
 
 
-        System.out.println(" All indexes created!");
+        log.info("All indexes created!");
     }
 
     // 🧾 Optionally: List all indexes
     public List<IndexInfo> listIndexes() {
         List<IndexInfo> indexList = mongoTemplate.indexOps(IndexStudy.class).getIndexInfo();
         for (IndexInfo index : indexList) {
-            System.out.println("Index: " + index.getName() + ", Fields: " + index.getIndexFields());
+            log.info("Index: {}, Fields: {}", index.getName(), index.getIndexFields());
         }
 
         return indexList;
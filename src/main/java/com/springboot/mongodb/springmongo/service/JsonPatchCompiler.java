@@ -0,0 +1,173 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldPath;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Compiles an RFC 6902 JSON Patch into native Mongo update operators, so the patch runs as one atomic findAndModify
+instead of load -> convert to JsonNode -> apply -> convert back -> save the full document.
+
+    add      /skillset/-                      -> $push  {skillSet: value}
+    add      /company/0/location/address/1    -> $push  {company.0.location.address: {$each: [value], $position: 1}}
+    add      /company/0/email                 -> $set   (add on an object member is a set)
+    replace  /company/0/location/address/1/address1 -> $set  + guard "path exists" (replace needs an existing value)
+    remove   /company/1/email                 -> $unset + guard "path exists"
+    test     /age 39                          -> query guard {age: 39}, no match = patch failed
+
+Guards go into the query, so if a test fails or a replaced path is missing nothing is written and findAndModify returns null.
+
+compile() returns null when the patch can't be expressed as one update, the caller then falls back to the in-memory path:
+    - move / copy
+    - remove of an array element (there is no "remove index n" operator)
+    - two operations touching the same or overlapping paths (Mongo rejects conflicting operators in one update,
+      and a later index would have to see the effect of the earlier operation)
+    - test with an object/array/null value, or a test on a path changed earlier in the same patch
+ */
+@Component
+@Slf4j
+public class JsonPatchCompiler {
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public record CompiledPatch(Update update, List<Criteria> guards) {
+    }
+
+    public CompiledPatch compile(JsonPatch patch) {
+        JsonNode operations = objectMapper.valueToTree(patch);
+        Update update = new Update();
+        List<Criteria> guards = new ArrayList<>();
+        List<String> writtenPaths = new ArrayList<>();
+        try {
+            for (JsonNode operation : operations) {
+                if (!compile(operation, update, guards, writtenPaths)) {
+                    return null;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // path not in the model, value of the wrong type ... the in-memory path reports the real error
+            log.debug("JSON patch not compilable, falling back: {}", e.getMessage());
+            return null;
+        }
+        return new CompiledPatch(update, guards);
+    }
+
+    private boolean compile(JsonNode operation, Update update, List<Criteria> guards, List<String> writtenPaths) {
+        String op = operation.path("op").asText();
+        UserFieldPath path = userFieldRegistry.path(pointerTokens(operation.path("path").asText()));
+        if (path.propertyPath().equals("id")) {
+            return false;
+        }
+        JsonNode value = operation.get("value");
+
+        switch (op) {
+            case "test" -> {
+                if (value == null || !value.isValueNode() || value.isNull() || overlaps(path.propertyPath(), writtenPaths)) {
+                    return false;
+                }
+                guards.add(Criteria.where(path.propertyPath()).is(userFieldRegistry.convert(value, path.valueType())));
+            }
+            case "replace" -> {
+                if (path.lastSegment().equals("-") || !write(path.propertyPath(), writtenPaths)) {
+                    return false;
+                }
+                update.set(path.propertyPath(), userFieldRegistry.convert(value, path.valueType()));
+                guards.add(Criteria.where(path.propertyPath()).exists(true));
+            }
+            case "add" -> {
+                if (!path.arrayElement()) {
+                    if (!write(path.propertyPath(), writtenPaths)) {
+                        return false;
+                    }
+                    update.set(path.propertyPath(), userFieldRegistry.convert(value, path.valueType()));
+                    requireParent(path, guards);
+                } else {
+                    String array = path.parentPath();
+                    if (!write(array, writtenPaths)) {
+                        return false;
+                    }
+                    Object element = userFieldRegistry.convert(value, path.valueType());
+                    if (path.lastSegment().equals("-")) {
+                        update.push(array, element);
+                    } else {
+                        int position = Integer.parseInt(path.lastSegment());
+                        update.push(array).atPosition(position).value(element);
+                        if (position > 0) {
+                            // RFC: the index may be at most the array size
+                            guards.add(Criteria.where(array + "." + (position - 1)).exists(true));
+                        }
+                    }
+                    guards.add(Criteria.where(array).exists(true));
+                }
+            }
+            case "remove" -> {
+                if (path.arrayElement() || !write(path.propertyPath(), writtenPaths)) {
+                    return false;
+                }
+                update.unset(path.propertyPath());
+                guards.add(Criteria.where(path.propertyPath()).exists(true));
+            }
+            default -> {
+                // move, copy
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // add on an object member needs the parent object, otherwise $set would silently create it
+    private static void requireParent(UserFieldPath path, List<Criteria> guards) {
+        String parent = path.parentPath();
+        if (parent != null && path.modelled()) {
+            guards.add(Criteria.where(parent).exists(true));
+        }
+    }
+
+    private static boolean write(String path, List<String> writtenPaths) {
+        if (overlaps(path, writtenPaths)) {
+            return false;
+        }
+        writtenPaths.add(path);
+        return true;
+    }
+
+    private static boolean overlaps(String path, List<String> otherPaths) {
+        for (String other : otherPaths) {
+            if (other.equals(path) || other.startsWith(path + ".") || path.startsWith(other + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // "/company/0/a~1b" -> [company, 0, a/b]   (RFC 6901 escaping)
+    static List<String> pointerTokens(String pointer) {
+        if (pointer.isEmpty() || pointer.charAt(0) != '/') {
+            throw new BadRequestException("Unsupported JSON pointer: '" + pointer + "'");
+        }
+        List<String> tokens = new ArrayList<>();
+        for (String token : pointer.substring(1).split("/", -1)) {
+            token = token.replace("~1", "/").replace("~0", "~");
+            if (token.contains(".") || token.startsWith("$")) {
+                throw new BadRequestException("Path segment not usable as a Mongo field: '" + token + "'");
+            }
+            tokens.add(token);
+        }
+        return tokens;
+    }
+}
@@ -1,26 +1,35 @@
 package com.springboot.mongodb.springmongo.service;
 
 import com.mongodb.bulk.BulkWriteResult;
-import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.mongodb.lang.NonNullApi;
 import com.mongodb.lang.Nullable;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.writebehind.UserWriteBehind;
 import lombok.NonNull;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.*;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.core.query.UpdateDefinition;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 
 @Service
 public class MongoTemplateService {
@@ -28,46 +37,132 @@ public class MongoTemplateService {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    /*
+    GET /api/users/{id} is cached (UserCache), so every method below that changes or deletes users invalidates it:
+    by id when we know which users were touched, the whole cache for updates by query (updateFirst / updateMulti ...)
+    where the driver doesn't tell us the ids. Inserts don't need it, missing users are never cached.
+     */
+    @Autowired
+    private UserCache userCache;
+
+    /*
+    Same for the user counts (UserRollups): inserts and removes of known users are counted in, any other write that
+    can change gender / technology / active / age marks the rollup for a rebuild (favoriteFruit updates don't).
+    count(age), exactCount and countUsersByStatusOver25 read the rollup while it is current.
+     */
+    @Autowired
+    private UserRollups userRollups;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    // findOne / findDistinctNames get hit by bursts of the same request, identical reads in flight share one call
+    @Autowired
+    private SingleFlight singleFlight;
+
+    // update / updateFirst are buffered and merged when app.write-behind.enabled=true (cache and rollup are told on flush)
+    @Autowired
+    private UserWriteBehind userWriteBehind;
+
+    /*
+    fields -> projection for the read methods below (?fields=name,age on MongoTemplateController), Mongo sends only
+    these top-level fields (+ _id) and only those are decoded into the User, so the cost goes down with the number
+    of fields asked for, not with the size of the stored document (companies, addresses, extras ...).
+    Names are checked against the User mapping, an unknown field is a BadRequestException (400).
+    null / empty -> the full document, like before.
+     */
+    private Query project(Query query, Collection<String> fields) {
+        if (fields != null && !fields.isEmpty()) {
+            fields.forEach(field -> query.fields().include(userFieldRegistry.field(field).name()));
+        }
+        return query;
+    }
+
 
     public User saveWithObject(User user) {
-        return mongoTemplate.save(user);
+        boolean inserted = user.getId() == null;
+        User saved = mongoTemplate.save(user);
+        userCache.invalidate(saved.getId());
+        if (inserted) {
+            userRollups.recordInsert(saved);
+        } else {
+            userRollups.recordChange();
+        }
+        return saved;
     }
 
     public User saveWithObjectAndCollectionName(User user, String collectionName) {
-        return mongoTemplate.save(user,collectionName);
+        User saved = mongoTemplate.save(user,collectionName);
+        userCache.invalidate(saved.getId());
+        if (collectionName.equals(mongoTemplate.getCollectionName(User.class))) {
+            userRollups.recordChange();
+        }
+        return saved;
     }
 
 
     public User findByIdWithObjectAndEntityClass(String id) {
-        return mongoTemplate.findById( id,  User.class);
+        return findByIdWithObjectAndEntityClass(id, null);
+    }
+
+    // findById has no projection, so with fields it is the same _id lookup as a findOne
+    public User findByIdWithObjectAndEntityClass(String id, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return mongoTemplate.findById( id,  User.class);
+        }
+        return mongoTemplate.findOne(project(new Query(Criteria.where("id").is(id)), fields), User.class);
     }
 
     public User findByIdWithObjectAndEntityClassAndCollectionName(String id, String collectionName) {
-        return mongoTemplate.findById( id,  User.class, collectionName);
+        return findByIdWithObjectAndEntityClassAndCollectionName(id, collectionName, null);
+    }
+
+    public User findByIdWithObjectAndEntityClassAndCollectionName(String id, String collectionName, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return mongoTemplate.findById( id,  User.class, collectionName);
+        }
+        return mongoTemplate.findOne(project(new Query(Criteria.where("id").is(id)), fields), User.class, collectionName);
     }
 
 
     public List<User> findByQueryAndEntityClass(String name) {
+        return findByQueryAndEntityClass(name, null);
+    }
+
+    public List<User> findByQueryAndEntityClass(String name, Collection<String> fields) {
         Query query = new Query();
         query.addCriteria(Criteria.where("name.firstname").is(name));
-        return mongoTemplate.find(query,User.class);
+        return mongoTemplate.find(project(query, fields),User.class);
     }
 
     public List<User> findByQueryAndEntityClassAndCollection(String name, String collectionName) {
+        return findByQueryAndEntityClassAndCollection(name, collectionName, null);
+    }
+
+    public List<User> findByQueryAndEntityClassAndCollection(String name, String collectionName, Collection<String> fields) {
         Query query = new Query();
         query.addCriteria(Criteria.where("name.firstname").is(name));
-        return mongoTemplate.find(query,User.class,collectionName);
+        return mongoTemplate.find(project(query, fields),User.class,collectionName);
     }
 
 
     public List<User> findAllFromEntityClass() {
-        return mongoTemplate.findAll(User.class);
+        return findAllFromEntityClass(null);
+    }
+
+    // findAll(User.class) is find(new Query()), with fields it needs the query for the projection
+    public List<User> findAllFromEntityClass(Collection<String> fields) {
+        return mongoTemplate.find(project(new Query(), fields), User.class);
     }
 
 
 
     public List<User> findAllFromEntityClassAndCollection(String collectionName) {
-        return mongoTemplate.findAll(User.class, collectionName);
+        return findAllFromEntityClassAndCollection(collectionName, null);
+    }
+
+    public List<User> findAllFromEntityClassAndCollection(String collectionName, Collection<String> fields) {
+        return mongoTemplate.find(project(new Query(), fields), User.class, collectionName);
     }
 
 
@@ -75,6 +170,10 @@ public class MongoTemplateService {
         Query query = new Query();
         query.addCriteria(Criteria.where("age").gt(39));
         List<User> removedUsers = mongoTemplate.findAllAndRemove(query, User.class);
+        removedUsers.forEach(user -> {
+            userCache.invalidate(user.getId());
+            userRollups.recordRemove(user);
+        });
 
         //Also we have
        // mongoTemplate.findAllAndRemove(query, collection);
@@ -87,7 +186,8 @@ public class MongoTemplateService {
     public List<String> findDistinctNames() {
         Query query = new Query();
         query.addCriteria(Criteria.where("age").gt(35));
-        List<String> distinctNames = mongoTemplate.findDistinct(query, "name.firstname", User.class, String.class );
+        List<String> distinctNames = singleFlight.execute("findDistinctNames", List.of(),
+                () -> mongoTemplate.findDistinct(query, "name.firstname", User.class, String.class ));
 
         //Also we have
         //mongoTemplate.findDistinct(query, filed, collectionName, Entity class, result class );
@@ -96,13 +196,34 @@ public class MongoTemplateService {
         return  distinctNames;
     }
 
-    public User findAndModify(String name,String newAge) {
-        Query query = new Query(Criteria.where("name.firstname").is(name));
+    public User findAndModify(String name, int newAge) {
+        return findAndModify(name, newAge, null);
+    }
+
+    // the projection also applies to the returned (new) document
+    // age is an int in User, it used to be written as a String here ("60"), which the rollups / range queries on age don't match
+    public User findAndModify(String name, int newAge, Collection<String> fields) {
         UpdateDefinition update = new Update().set("age", newAge);
+        if (userRollups.tracksWrites()) {
+            // the rollup needs the age before the update: take the pre-image, then read the user the caller asked for
+            User before = mongoTemplate.findAndModify(new Query(Criteria.where("name.firstname").is(name)), update,
+                    FindAndModifyOptions.options().returnNew(false), User.class);
+            if (before == null) {
+                return null;
+            }
+            userCache.invalidate(before.getId());
+            userRollups.recordUpdate(before, update);
+            return mongoTemplate.findOne(project(new Query(Criteria.where("id").is(before.getId())), fields), User.class);
+        }
+        Query query = project(new Query(Criteria.where("name.firstname").is(name)), fields);
         FindAndModifyOptions options = new FindAndModifyOptions()
                 .returnNew(true) // return the updated document
                 .upsert(false);  // do not insert if not found
-        return mongoTemplate.findAndModify(query, update, options, User.class);
+        User modified = mongoTemplate.findAndModify(query, update, options, User.class);
+        if (modified != null) {
+            userCache.invalidate(modified.getId());
+        }
+        return modified;
 
         //Also we have
 
@@ -113,8 +234,21 @@ public class MongoTemplateService {
 
 
     public User findAndRemove(String name) {
-        Query query = new Query(Criteria.where("name").is(name));
-         return mongoTemplate.findAndRemove(query, User.class);
+        return findAndRemove(name, null);
+    }
+
+    public User findAndRemove(String name, Collection<String> fields) {
+        Query query = project(new Query(Criteria.where("name").is(name)), fields);
+        User removed = mongoTemplate.findAndRemove(query, User.class);
+        if (removed != null) {
+            userCache.invalidate(removed.getId());
+            if (fields == null || fields.isEmpty()) {
+                userRollups.recordRemove(removed);
+            } else {
+                userRollups.recordChange();     // projected, the removed user's counted fields may be missing
+            }
+        }
+        return removed;
 
          //Also we have many findAndRemove   with different arguments, please do it once get time.
     }
@@ -126,7 +260,12 @@ public class MongoTemplateService {
 
         FindAndReplaceOptions options = FindAndReplaceOptions.options()
                 .returnNew(); // return the new (replaced) document
-        return mongoTemplate.findAndReplace(query, newUser, options, User.class,User.class);
+        User replaced = mongoTemplate.findAndReplace(query, newUser, options, User.class,User.class);
+        if (replaced != null) {
+            userCache.invalidate(replaced.getId());
+            userRollups.recordChange();
+        }
+        return replaced;
         // Also we have many findAndReplace()  with different arguments.
 
     }
@@ -134,8 +273,13 @@ public class MongoTemplateService {
 
     //It finds and returns the first matching document based on the provided query.
     public User findOne(String name) {
-        Query query = new Query(Criteria.where("name.firstname").is(name));
-        return mongoTemplate.findOne(query, User.class);
+        return findOne(name, null);
+    }
+
+    public User findOne(String name, Collection<String> fields) {
+        Query query = project(new Query(Criteria.where("name.firstname").is(name)), fields);
+        Set<String> projection = fields == null ? Set.of() : new HashSet<>(fields);
+        return singleFlight.execute("findOne", List.of(name, projection), () -> mongoTemplate.findOne(query, User.class));
 
         // Also we have another findOne. with different argument.
     }
@@ -155,7 +299,9 @@ Usage	                            Safe for "upsert" behavior (insert if new, upd
      */
 
     public User insert(User user) {
-        return mongoTemplate.insert( user);
+        User inserted = mongoTemplate.insert( user);
+        userRollups.recordInsert(inserted);
+        return inserted;
         // Also we have one more insert collection  another argument.
 
 
@@ -184,6 +330,10 @@ Usage	                            Safe for "upsert" behavior (insert if new, upd
     //long count(Query query, Class<?> entityClass);
     //long count(Query query, String collectionName);
     public long count(int age) {
+        OptionalLong rolledUp = userRollups.countOlderThan(age);
+        if (rolledUp.isPresent()) {
+            return rolledUp.getAsLong();
+        }
         Query query = new Query(Criteria.where("age").gt(age));
         return mongoTemplate.count(query, User.class);
 
@@ -225,6 +375,8 @@ MongoCollection<Document> createCollection(String collectionName);
          //mongoTemplate.getCollectionNames()
 
 
+    // For new callers: CountService.count(filter, maxStaleness, approximate) chooses between these for you.
+
     //Returns a fast, approximate count of documents in the specified collection — using collection metadata, not a full scan.
     public long estimatedCount() {
         return mongoTemplate.estimatedCount("users");
@@ -232,6 +384,10 @@ MongoCollection<Document> createCollection(String collectionName);
 
     //This method is used when you want to accurately count documents that match a query
     public long exactCount() {
+        OptionalLong rolledUp = userRollups.countOlderThan(25);
+        if (rolledUp.isPresent()) {
+            return rolledUp.getAsLong();
+        }
         Query query = new Query(Criteria.where("age").gt(25));
         return mongoTemplate.exactCount(query, User.class);
 
@@ -244,10 +400,15 @@ MongoCollection<Document> createCollection(String collectionName);
 
     //mongoTemplate.remove() is used to delete documents from a MongoDB collection based on a filter/query.
     // Not tested due to time issue
+    // findAndRemove, so the rollup knows which cell the removed user was counted in
     public boolean remove(String id) {
         Query query = new Query(Criteria.where("_id").is(id));
-        DeleteResult result = mongoTemplate.remove(query, User.class);
-        return result.getDeletedCount() > 0;
+        User removed = mongoTemplate.findAndRemove(query, User.class);
+        userCache.invalidate(id);
+        if (removed != null) {
+            userRollups.recordRemove(removed);
+        }
+        return removed != null;
 
         // also we have many remove with different arguments.
     }
@@ -265,7 +426,10 @@ MongoCollection<Document> createCollection(String collectionName);
         Query query = new Query(Criteria.where("name.firstname").is(oldName));
 
         // Replace it with the new user object
-       return mongoTemplate.replace(query, newUser, ReplaceOptions.replaceOptions());
+        UpdateResult result = mongoTemplate.replace(query, newUser, ReplaceOptions.replaceOptions());
+        userCache.invalidateAll();
+        userRollups.recordChange();
+        return result;
 
         // And also we have many with different arguments.
     }
@@ -282,8 +446,12 @@ MongoCollection<Document> createCollection(String collectionName);
 
     // Not tested due to time issue.
 
+    // -1 = buffered by the write-behind, not written yet, so the modified count is not known
     public long update(String name, int newAge) {
         Query query = new Query(Criteria.where("name.firstname").is(name));
+        if (userWriteBehind.setFirst(query, "age", newAge)) {
+            return -1;
+        }
 
         Update update = new Update().set("age", newAge);
 
@@ -293,6 +461,8 @@ MongoCollection<Document> createCollection(String collectionName);
                 .matching(query)                 // Apply query filter
                 .apply(update)                   // Apply update definition
                 .first();                        // Update only the first match
+        userCache.invalidateAll();
+        userRollups.recordChange();
 
         // Also we have lot of update, need to explore more.
 
@@ -301,11 +471,18 @@ MongoCollection<Document> createCollection(String collectionName);
 
         //mongoTemplate.updateFirst() is used in Spring Data MongoDB to update the first document that matches a given query.
         // Not tested due to time issue.
+        // -1 = buffered by the write-behind, see update above
+        // matches the first user with this first name (it used to ignore name and always match "Alice")
         public long updateFirst(String name) {
-            Query query = new Query(Criteria.where("name.firstname").is("Alice"));
+            Query query = new Query(Criteria.where("name.firstname").is(name));
+            if (userWriteBehind.setFirst(query, "age", 35)) {
+                return -1;
+            }
             Update update = new Update().set("age", 35);
 
             UpdateResult result = mongoTemplate.updateFirst(query, update, User.class);
+            userCache.invalidateAll();
+            userRollups.recordChange();
             return result.getModifiedCount(); // returns how many documents were modified
 
             //Also we have another updateFirst with different arguments.
@@ -320,6 +497,7 @@ MongoCollection<Document> createCollection(String collectionName);
         Update update = new Update().set("favoriteFruit", "Apple");
 
         UpdateResult result = mongoTemplate.updateMulti(query, update, User.class);
+        userCache.invalidateAll();
         // Also we have many other, with different argument type, need to explore more.
         return result.getModifiedCount();
     }
@@ -336,7 +514,9 @@ MongoCollection<Document> createCollection(String collectionName);
         );
 
         // insertAll returns the inserted documents (with _id populated)
-        return (List<User>) mongoTemplate.insertAll(users);
+        List<User> inserted = (List<User>) mongoTemplate.insertAll(users);
+        inserted.forEach(userRollups::recordInsert);
+        return inserted;
     }
 
 
@@ -417,26 +597,19 @@ Working with raw MongoDB driver APIs
  // =======  USAGE 3 ====================================================================================================================
 
 
+    // Used to be an execute() callback with a hand-built $match / $group and every result copied into a list.
+    // Same pipeline as a typed aggregation now (field names mapped like every other query, age > 25 can use the
+    // users_age_id index). The result is one document per gender, for big results use AggregationService (streamed).
+    // While the user rollup is current the counts come from memory (UserRollups) and Mongo is not queried at all.
     public List<Document> countUsersByStatusOver25() {
-        return mongoTemplate.execute(User.class, new CollectionCallback<List<Document>>() {
-            @Override
-            @NonNull
-            public List<Document> doInCollection(@NonNull MongoCollection<Document> collection) {
-                List<Document> pipeline = Arrays.asList(
-                        new Document("$match", new Document("age", new Document("$gt", 25))),
-                        new Document("$group", new Document("_id", "$gender")
-                                .append("count", new Document("$sum", 1)))
-                );
-
-                AggregateIterable<Document> results = collection.aggregate(pipeline);
-
-                List<Document> output = new ArrayList<>();
-                for (Document doc : results) {
-                    output.add(doc);
-                }
-                return output;
-            }
-        });
+        Optional<List<Document>> rolledUp = userRollups.countByGenderOlderThan(25);
+        if (rolledUp.isPresent()) {
+            return rolledUp.get();
+        }
+        TypedAggregation<User> aggregation = Aggregation.newAggregation(User.class,
+                Aggregation.match(Criteria.where("age").gt(25)),
+                Aggregation.group("gender").count().as("count"));
+        return mongoTemplate.aggregate(aggregation, Document.class).getMappedResults();
     }
 
 //===============================================================================================================================
@@ -484,7 +657,10 @@ UNORDERED – Continues despite errors (faster)
             ops.remove(deleteQuery);
 
             //  Execute the batch
-            return ops.execute();
+            BulkWriteResult result = ops.execute();
+            userCache.invalidateAll();
+            userRollups.recordChange();
+            return result;
         }
 
 
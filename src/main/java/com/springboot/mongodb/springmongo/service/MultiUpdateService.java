@@ -0,0 +1,246 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldPath;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.MultiUpdateRequest;
+import com.springboot.mongodb.springmongo.response.MultiUpdateResult;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/*
+Generic "update every user matching X" (POST /api/users/mongotemplate/updateWhere), instead of one hard-coded method per
+case (updateMulti = favoriteFruit Apple for age < 18, findAndModify = age of one user ...).
+
+Every path is resolved against the User mapping (UserFieldRegistry) before anything is sent, so a typo or a wrong type is
+a 400 and not a silently created field / a string in an int field:
+    set    value converted to the type of the field ("31" -> 31 for age, a map -> Company ...)
+    inc    numeric fields only, no fractions for int / long fields
+    push   arrays only, the value is converted to the element type
+    pull   arrays only, removes the elements equal to the value
+    unset  any field except id
+id can't be changed, and two operators on the same or overlapping paths are rejected (Mongo would refuse the update).
+
+multi: one updateMulti, the server does everything in one statement.
+bulk:  the matching _ids are read in _id order, every batchSize ids are one unordered bulk write of
+       {_id in batch, filter} -> update. The filter is checked again, a user changed in between is skipped. _id order and
+       _id never changes, so the cursor can't see a user twice ($inc twice) even when the update moves it in the index
+       the filter uses. Many short writes instead of one long one, other writers get in between, but it's not atomic:
+       when it fails half way the result tells how far it got.
+ */
+@Service
+@Slf4j
+public class MultiUpdateService {
+
+    public static final int MAX_BATCH_SIZE = 10_000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AggregationService aggregationService;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserRollups userRollups;
+
+    @Value("${app.multi-update.batch-size:1000}")
+    private int defaultBatchSize;
+
+    public MultiUpdateResult update(MultiUpdateRequest request) {
+        if (request.getFilter() == null || request.getFilter().isEmpty()) {
+            throw new BadRequestException("filter is required, to update every user use { \"field\": \"id\", \"op\": \"exists\", \"value\": true }");
+        }
+        String mode = request.getMode() == null ? "multi" : request.getMode().toLowerCase();
+        if (!mode.equals("multi") && !mode.equals("bulk")) {
+            throw new BadRequestException("mode must be multi or bulk");
+        }
+        int batchSize = request.getBatchSize() != null ? request.getBatchSize() : defaultBatchSize;
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        }
+        Criteria criteria = aggregationService.criteria(request.getFilter());
+        List<String> paths = new ArrayList<>();
+        Update update = update(request, paths);
+
+        long start = System.nanoTime();
+        MultiUpdateResult result = new MultiUpdateResult();
+        result.setMode(mode);
+        try {
+            if (mode.equals("multi")) {
+                UpdateResult written = mongoTemplate.updateMulti(new Query(criteria), update, User.class);
+                result.setMatched(written.getMatchedCount());
+                result.setModified(written.getModifiedCount());
+                result.setBatches(1);
+                result.getBatchMillis().add((System.nanoTime() - start) / 1_000_000);
+                userCache.invalidateAll();
+            } else {
+                bulk(criteria, update, batchSize, result);
+            }
+        } finally {
+            // also after a failure, part of it may be written
+            if (UserRollups.counts(paths)) {
+                userRollups.recordChange();
+            }
+            result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        }
+        log.info("updateWhere ({}): matched={} modified={} batches={} in {} ms",
+                mode, result.getMatched(), result.getModified(), result.getBatches(), result.getElapsedMillis());
+        return result;
+    }
+
+    private void bulk(Criteria criteria, Update update, int batchSize, MultiUpdateResult result) {
+        Query ids = new Query(criteria).with(Sort.by("id")).cursorBatchSize(batchSize);
+        ids.fields().include("id");
+        try (Stream<User> users = mongoTemplate.stream(ids, User.class)) {
+            Iterator<User> iterator = users.iterator();
+            List<String> batch = new ArrayList<>(batchSize);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next().getId());
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, criteria, update, result);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch, criteria, update, result);
+            }
+        }
+    }
+
+    private void writeBatch(List<String> ids, Criteria criteria, Update update, MultiUpdateResult result) {
+        long start = System.nanoTime();
+        BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        ops.updateMulti(new Query(new Criteria().andOperator(Criteria.where("id").in(ids), criteria)), update);
+        try {
+            BulkWriteResult written = ops.execute();
+            result.setMatched(result.getMatched() + written.getMatchedCount());
+            result.setModified(result.getModified() + written.getModifiedCount());
+        } finally {
+            ids.forEach(userCache::invalidate);
+        }
+        result.setBatches(result.getBatches() + 1);
+        result.getBatchMillis().add((System.nanoTime() - start) / 1_000_000);
+    }
+
+    // the validated update, paths gets every property path written
+    Update update(MultiUpdateRequest request, List<String> paths) {
+        Update update = new Update();
+        for (Map.Entry<String, Object> entry : entries(request.getSet())) {
+            UserFieldPath path = path(entry.getKey(), paths);
+            update.set(path.propertyPath(), userFieldRegistry.convert(entry.getValue(), path.valueType()));
+        }
+        for (Map.Entry<String, Object> entry : entries(request.getInc())) {
+            UserFieldPath path = path(entry.getKey(), paths);
+            update.inc(path.propertyPath(), increment(path, entry.getValue()));
+        }
+        for (Map.Entry<String, Object> entry : entries(request.getPush())) {
+            UserFieldPath path = path(entry.getKey(), paths);
+            JavaType element = elementType(path);
+            if (entry.getValue() instanceof List<?> values && !element.isCollectionLikeType()) {
+                update.push(path.propertyPath()).each(values.stream().map(value -> userFieldRegistry.convert(value, element)).toArray());
+            } else {
+                update.push(path.propertyPath(), userFieldRegistry.convert(entry.getValue(), element));
+            }
+        }
+        for (Map.Entry<String, Object> entry : entries(request.getPull())) {
+            UserFieldPath path = path(entry.getKey(), paths);
+            JavaType element = elementType(path);
+            if (entry.getValue() instanceof List<?> values && !element.isCollectionLikeType()) {
+                update.pullAll(path.propertyPath(), values.stream().map(value -> userFieldRegistry.convert(value, element)).toArray());
+            } else {
+                update.pull(path.propertyPath(), userFieldRegistry.convert(entry.getValue(), element));
+            }
+        }
+        for (String field : request.getUnset() == null ? List.<String>of() : request.getUnset()) {
+            update.unset(path(field, paths).propertyPath());
+        }
+        if (paths.isEmpty()) {
+            throw new BadRequestException("Nothing to update, give at least one of set / inc / push / pull / unset");
+        }
+        return update;
+    }
+
+    private static Iterable<Map.Entry<String, Object>> entries(Map<String, Object> operator) {
+        return operator == null ? List.of() : operator.entrySet();
+    }
+
+    private UserFieldPath path(String field, List<String> paths) {
+        if (field == null || field.isEmpty()) {
+            throw new BadRequestException("Empty field");
+        }
+        UserFieldPath path = userFieldRegistry.path(Arrays.asList(field.split("\\.", -1)));
+        if (!path.modelled() && !field.startsWith("extras.")) {
+            // the registry maps unknown names into extras (like the JSON binding), here that is most likely a typo
+            throw new BadRequestException("Unknown field '" + field + "', fields outside the model are written as extras." + field);
+        }
+        if (path.propertyPath().equals("id") || path.lastSegment().equals("-")) {
+            throw new BadRequestException("'" + field + "' can't be updated");
+        }
+        for (String other : paths) {
+            String mine = path.propertyPath();
+            if (other.equals(mine) || other.startsWith(mine + ".") || mine.startsWith(other + ".")) {
+                throw new BadRequestException("'" + field + "' is updated twice (overlaps " + other + ")");
+            }
+        }
+        paths.add(path.propertyPath());
+        return path;
+    }
+
+    private Number increment(UserFieldPath path, Object value) {
+        if (!(value instanceof Number number)) {
+            throw new BadRequestException("inc on '" + path.propertyPath() + "' needs a number, got: " + value);
+        }
+        Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(path.valueType().getRawClass());
+        if (type == Object.class) {
+            return number;      // extras, no declared type
+        }
+        if (!Number.class.isAssignableFrom(type)) {
+            throw new BadRequestException("inc on '" + path.propertyPath() + "' which is not a number (" + type.getSimpleName() + ")");
+        }
+        boolean integral = type == Integer.class || type == Long.class || type == Short.class || type == Byte.class;
+        if (integral && number.doubleValue() != Math.rint(number.doubleValue())) {
+            throw new BadRequestException("inc on '" + path.propertyPath() + "' needs a whole number, got: " + value);
+        }
+        return (Number) userFieldRegistry.convert(number, path.valueType());
+    }
+
+    // element type of the array at path, extras values have none (anything goes)
+    private static JavaType elementType(UserFieldPath path) {
+        JavaType type = path.valueType();
+        if (type.isCollectionLikeType() || type.isArrayType()) {
+            return type.getContentType();
+        }
+        if (type.hasRawClass(Object.class)) {
+            return type;
+        }
+        throw new BadRequestException("'" + path.propertyPath() + "' is not an array");
+    }
+}
@@ -0,0 +1,58 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+Continuation token for keyset pagination.
+
+It remembers the sort key and the last (sortValue, _id) pair of the previous page. The next page is then
+    sortKey > lastValue  OR  (sortKey == lastValue AND _id > lastId)
+which is an index range scan starting exactly where the previous page stopped, so page 10,000 costs the same as
+page 1 (skip/limit has to walk over every skipped document).
+A null / missing sort value (e.g. no dateOfJoining) sorts first and gt(null) matches nothing, so after a null it is
+    sortKey != null  OR  (sortKey == null AND _id > lastId)
+
+Encoded as extended JSON (keeps int/long/date types) in url safe base64, so it is opaque for the client.
+ */
+record PageToken(String sortProperty, Object lastValue, String lastId) {
+
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+
+    String encode() {
+        Document document = new Document("s", sortProperty).append("v", lastValue).append("id", lastId);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(document.toJson(JSON_SETTINGS).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PageToken decode(String token, String expectedSortProperty) {
+        Document document;
+        try {
+            document = Document.parse(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid page token");
+        }
+        String sortProperty = document.getString("s");
+        String lastId = document.getString("id");
+        if (lastId == null || !expectedSortProperty.equals(sortProperty)) {
+            throw new BadRequestException("Page token does not belong to sort '" + expectedSortProperty + "'");
+        }
+        return new PageToken(sortProperty, document.get("v"), lastId);
+    }
+
+    // Criteria for "everything after this token" in (sortProperty, id) order
+    Criteria after() {
+        if ("id".equals(sortProperty)) {
+            return Criteria.where("id").gt(lastId);
+        }
+        return new Criteria().orOperator(
+                lastValue == null ? Criteria.where(sortProperty).ne(null) : Criteria.where(sortProperty).gt(lastValue),
+                new Criteria().andOperator(Criteria.where(sortProperty).is(lastValue), Criteria.where("id").gt(lastId)));
+    }
+}
@@ -0,0 +1,54 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserField;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Map;
+
+// Patch building blocks shared by the blocking (UserService) and the reactive (ReactiveUserService) user API.
+final class PatchUpdates {
+
+    private PatchUpdates() {
+    }
+
+    // {"age": 40, "favoriteFruit": null} -> {$set: {age: 40}, $unset: {favoriteFruit: ""}}
+    static Update fromMap(UserFieldRegistry userFieldRegistry, Map<String, Object> updates) {
+        Update update = new Update();
+        updates.forEach((key, value) -> {
+            UserField field = userFieldRegistry.field(key);
+            if (field.isId()) {
+                throw new BadRequestException("id cannot be patched");
+            }
+            if (value == null) {
+                update.unset(field.name());
+            } else {
+                update.set(field.name(), userFieldRegistry.convert(field, value));
+            }
+        });
+        return update;
+    }
+
+    // _id + the guards of a compiled JSON patch
+    static Criteria guarded(String id, JsonPatchCompiler.CompiledPatch compiled) {
+        Criteria criteria = Criteria.where("id").is(id);
+        if (!compiled.guards().isEmpty()) {
+            criteria = criteria.andOperator(compiled.guards());
+        }
+        return criteria;
+    }
+
+    // the in-memory way: User -> JsonNode -> apply -> User
+    static User applyInMemory(ObjectMapper objectMapper, User user, JsonPatch patch) throws JsonPatchException, JsonProcessingException {
+        JsonNode patched = patch.apply(objectMapper.convertValue(user, JsonNode.class));
+        return objectMapper.treeToValue(patched, User.class);
+    }
+}
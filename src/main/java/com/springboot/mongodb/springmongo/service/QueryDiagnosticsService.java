@@ -0,0 +1,224 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.metrics.SlowQueryLog;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.QueryPlanSummary;
+import com.springboot.mongodb.springmongo.response.SlowQuery;
+import jakarta.annotation.PostConstruct;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+explain("executionStats") for the queries MongoTemplateService / UserService send, to see if they use an index.
+
+The commands are built here with the same filters as the service methods (mapped through the converter, so the
+field names are the stored ones, also with CompactFieldNamingStrategy) and sent as {explain: <command>}.
+explain runs the query plan for real (that is where keys / docs examined come from) but returns no documents
+and changes nothing, also for findAllAndRemove (explained as the find that selects what would be removed).
+
+    findByQueryAndEntityClass  name=     {name.firstname: name}
+    findOne                    name=     same, limit 1
+    findAllAndRemove                     {age: {$gt: 39}}
+    findDistinctNames                    distinct name.firstname where age > 35
+    count                      age=      {age: {$gt: age}}
+    exactCount                           countDocuments, an aggregate $match {} + $group
+    countUsersByStatusOver25             aggregate $match age > 25, $group by gender
+    findPage                   sort=     keyset page sorted by (sort, _id)
+
+The slow query ring buffer (SlowQueryLog) uses explainCommand() to attach a plan to every slow query.
+ */
+@Service
+public class QueryDiagnosticsService {
+
+    public static final Set<String> QUERIES = new TreeSet<>(List.of("findByQueryAndEntityClass", "findOne", "findAllAndRemove",
+            "findDistinctNames", "count", "exactCount", "countUsersByStatusOver25", "findPage"));
+
+    // added by the driver / session, not allowed (or not wanted) inside an explain
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "readConcern", "writeConcern",
+            "apiVersion", "apiStrict", "apiDeprecationErrors", "autocommit", "startTransaction");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private SlowQueryLog slowQueryLog;
+
+    @Value("${app.diagnostics.slow-query.explain:true}")
+    private boolean explainSlowQueries;
+
+    @PostConstruct
+    void registerPlanner() {
+        if (explainSlowQueries) {
+            slowQueryLog.setPlanner(this::explainCommand);
+        }
+    }
+
+    public QueryPlanSummary explain(String query, String name, int age, String sort, boolean raw) {
+        Document command = command(query, name, age, sort);
+        Document explain = runExplain(mongoTemplate.getDb().getName(), command);
+        QueryPlanSummary summary = summarize(explain);
+        summary.setQuery(query);
+        summary.setCommand(command.toJson());
+        if (raw) {
+            summary.setExplain(explain);
+        }
+        return summary;
+    }
+
+    // for a command captured by SlowQueryLog
+    public QueryPlanSummary explainCommand(String database, BsonDocument captured) {
+        Document command = new Document();
+        captured.forEach((key, value) -> {
+            if (!key.startsWith("$") && !SESSION_FIELDS.contains(key)) {
+                command.append(key, value);
+            }
+        });
+        QueryPlanSummary summary = summarize(runExplain(database, command));
+        summary.setQuery(captured.getFirstKey());
+        return summary;
+    }
+
+    public List<SlowQuery> slowQueries() {
+        return slowQueryLog.slowQueries();
+    }
+
+    public void clearSlowQueries() {
+        slowQueryLog.clear();
+    }
+
+    Document command(String query, String name, int age, String sort) {
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(User.class);
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        String collection = mongoTemplate.getCollectionName(User.class);
+        return switch (query) {
+            case "findByQueryAndEntityClass" -> new Document("find", collection)
+                    .append("filter", queryMapper.getMappedObject(new Document("name.firstname", name), entity));
+            case "findOne" -> new Document("find", collection)
+                    .append("filter", queryMapper.getMappedObject(new Document("name.firstname", name), entity))
+                    .append("limit", 1);
+            case "findAllAndRemove" -> new Document("find", collection)
+                    .append("filter", queryMapper.getMappedObject(new Document("age", new Document("$gt", 39)), entity));
+            case "findDistinctNames" -> new Document("distinct", collection)
+                    .append("key", fieldName(queryMapper, entity, "name.firstname"))
+                    .append("query", queryMapper.getMappedObject(new Document("age", new Document("$gt", 35)), entity));
+            case "count" -> new Document("count", collection)
+                    .append("query", queryMapper.getMappedObject(new Document("age", new Document("$gt", age)), entity));
+            case "exactCount" -> new Document("aggregate", collection)
+                    .append("pipeline", List.of(new Document("$match", new Document()),
+                            new Document("$group", new Document("_id", 1).append("n", new Document("$sum", 1)))))
+                    .append("cursor", new Document());
+            case "countUsersByStatusOver25" -> new Document("aggregate", collection)
+                    .append("pipeline", List.of(
+                            new Document("$match", queryMapper.getMappedObject(new Document("age", new Document("$gt", 25)), entity)),
+                            new Document("$group", new Document("_id", "$" + fieldName(queryMapper, entity, "gender"))
+                                    .append("count", new Document("$sum", 1)))))
+                    .append("cursor", new Document());
+            case "findPage" -> new Document("find", collection)
+                    .append("filter", new Document())
+                    .append("sort", queryMapper.getMappedSort(sort.equals("id")
+                            ? new Document("id", 1) : new Document(sort, 1).append("id", 1), entity))
+                    .append("limit", 51);
+            default -> throw new BadRequestException("Unknown query '" + query + "', available: " + QUERIES);
+        };
+    }
+
+    private Document runExplain(String database, Document command) {
+        return mongoTemplate.getMongoDatabaseFactory().getMongoDatabase(database)
+                .runCommand(new Document("explain", command).append("verbosity", "executionStats"));
+    }
+
+    private static String fieldName(QueryMapper queryMapper, MongoPersistentEntity<?> entity, String property) {
+        return queryMapper.getMappedFields(new Document(property, 1), entity).keySet().iterator().next();
+    }
+
+    /*
+    The explain layout differs per command and server version:
+        find / count / distinct   {queryPlanner: {winningPlan: ...}, executionStats: {...}}
+        aggregate                 the same at the top when the pipeline was pushed down into the query layer,
+                                  otherwise inside stages[0].$cursor
+        SBE (5.0+)                winningPlan: {queryPlan: {...}, slotBasedPlan: ...}
+    so both are looked up wherever they are first found.
+     */
+    static QueryPlanSummary summarize(Document explain) {
+        QueryPlanSummary summary = new QueryPlanSummary();
+        Document queryPlanner = find(explain, "queryPlanner");
+        if (queryPlanner != null) {
+            Document winningPlan = queryPlanner.get("winningPlan", Document.class);
+            if (winningPlan != null && winningPlan.containsKey("queryPlan")) {
+                winningPlan = winningPlan.get("queryPlan", Document.class);
+            }
+            walk(winningPlan, summary);
+        }
+        Document executionStats = find(explain, "executionStats");
+        if (executionStats != null) {
+            summary.setKeysExamined(number(executionStats, "totalKeysExamined"));
+            summary.setDocsExamined(number(executionStats, "totalDocsExamined"));
+            summary.setReturned(number(executionStats, "nReturned"));
+            summary.setExecutionMillis(number(executionStats, "executionTimeMillis"));
+        }
+        return summary;
+    }
+
+    private static void walk(Document stage, QueryPlanSummary summary) {
+        if (stage == null) {
+            return;
+        }
+        String name = stage.getString("stage");
+        if (name != null) {
+            summary.getStages().add(name);
+            if (name.equals("COLLSCAN")) {
+                summary.setCollectionScan(true);
+            }
+        }
+        String indexName = stage.getString("indexName");
+        if (indexName != null && !summary.getIndexes().contains(indexName)) {
+            summary.getIndexes().add(indexName);
+        }
+        walk(stage.get("inputStage", Document.class), summary);
+        List<?> inputStages = stage.get("inputStages", List.class);
+        if (inputStages != null) {
+            for (Object input : inputStages) {
+                walk((Document) input, summary);
+            }
+        }
+    }
+
+    // depth first, first document under that key
+    private static Document find(Object node, String key) {
+        if (node instanceof Document document) {
+            if (document.get(key) instanceof Document found) {
+                return found;
+            }
+            for (Object value : document.values()) {
+                Document found = find(value, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : new ArrayList<>(list)) {
+                Document found = find(value, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long number(Document document, String key) {
+        return document.get(key) instanceof Number number ? number.longValue() : 0;
+    }
+}
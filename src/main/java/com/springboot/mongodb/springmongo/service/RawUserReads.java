@@ -0,0 +1,116 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.mapping.RawUserJson;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.RawUsers;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+Passthrough reads (app.raw-reads.enabled=true) for GET /api/users/{id} and the MongoTemplateController finders.
+
+The normal path decodes every document into User / Company / Location / Address (MappingMongoConverter) and Jackson
+then walks that object graph again to write the JSON. Here the driver hands over each document as RawBsonDocument
+(the bytes of the reply, nothing decoded) and RawUserJson transcodes them into the response stream:
+
+    entity:  BSON --decode--> Document --convert--> User graph --Jackson--> JSON
+    raw:     BSON ------------------------------------RawUserJson------> JSON
+
+The queries are the same: filter and projection go through the QueryMapper with the User mapping, so "id" -> _id
+(ObjectId when it is one), renamed / compact field names and ?fields=... work as on the entity path. The JSON is the
+same too (see RawUserJson), so the switch is invisible to clients.
+
+Single document reads (GET /api/users/{id} on a cache miss, findById, findOne) go through SingleFlight like the
+entity findOne: a burst for the same id / name is one round trip, the callers share the RawBsonDocument (immutable
+bytes, every writer reads them through its own buffer view).
+ */
+@Service
+public class RawUserReads {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private RawUserJson rawUserJson;
+
+    @Autowired
+    private SingleFlight singleFlight;
+
+    @Value("${app.raw-reads.enabled:false}")
+    private boolean enabled;
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // collectionName null = the users collection
+    public RawUsers findById(String id, String collectionName, Collection<String> fields) {
+        return read(new Query(Criteria.where("id").is(id)), collectionName, fields, true);
+    }
+
+    public RawUsers findByFirstname(String name, String collectionName, Collection<String> fields) {
+        return read(new Query(Criteria.where("name.firstname").is(name)), collectionName, fields, false);
+    }
+
+    public RawUsers findOneByFirstname(String name, Collection<String> fields) {
+        return read(new Query(Criteria.where("name.firstname").is(name)), null, fields, true);
+    }
+
+    public RawUsers findAll(String collectionName, Collection<String> fields) {
+        return read(new Query(), collectionName, fields, false);
+    }
+
+    private RawUsers read(Query query, String collectionName, Collection<String> fields, boolean single) {
+        Set<String> properties = null;
+        if (fields != null && !fields.isEmpty()) {
+            // unknown fields fail here (400), before anything is written to the response
+            properties = fields.stream().map(field -> userFieldRegistry.field(field).name()).collect(Collectors.toSet());
+            properties.forEach(property -> query.fields().include(property));
+        }
+        MongoPersistentEntity<?> entity = userFieldRegistry.userEntity();
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Document filter = queryMapper.getMappedObject(query.getQueryObject(), entity);
+        Document projection = queryMapper.getMappedFields(query.getFieldsObject(), entity);
+        String collection = collectionName != null ? collectionName : mongoTemplate.getCollectionName(User.class);
+        FindIterable<RawBsonDocument> find = mongoTemplate.getCollection(collection)
+                .withDocumentClass(RawBsonDocument.class)
+                .find(filter)
+                .projection(projection.isEmpty() ? null : projection);
+        if (!single) {
+            return new RawUsers(find::cursor, false, properties, rawUserJson);
+        }
+        // still read when the body is written, identical reads in flight at that moment share one round trip
+        List<String> key = List.of(collection, filter.toJson(), projection.toJson());
+        return new RawUsers(() -> {
+            RawBsonDocument document = singleFlight.execute("rawFindOne", key, () -> first(find));
+            return document == null ? Collections.emptyIterator() : List.of(document).iterator();
+        }, true, properties, rawUserJson);
+    }
+
+    private static RawBsonDocument first(FindIterable<RawBsonDocument> find) {
+        try (MongoCursor<RawBsonDocument> cursor = find.limit(1).cursor()) {
+            return cursor.hasNext() ? cursor.next() : null;
+        }
+    }
+}
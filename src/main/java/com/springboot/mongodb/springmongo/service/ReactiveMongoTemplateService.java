@@ -0,0 +1,247 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult.BatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+/*
+Reactive version of the MongoTemplateService operations (profile "reactive"), same queries, but every method returns
+a Mono / Flux and nothing waits for Mongo on the calling thread.
+
+Only the operations that make sense per request are here, the admin ones (createCollection, compactStorage,
+the update / index demos) stay on the servlet stack.
+ */
+@Service
+@Slf4j
+@Profile("reactive")
+public class ReactiveMongoTemplateService {
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    // same invalidation rules as MongoTemplateService, see there
+    @Autowired
+    private UserCache userCache;
+
+    @Value("${app.ingest.batch-size:1000}")
+    private int defaultBatchSize;
+
+    @Value("${app.ingest.max-in-flight:4}")
+    private int defaultMaxInFlight;
+
+    public Mono<User> saveWithObject(User user) {
+        return reactiveMongoTemplate.save(user).doOnNext(saved -> userCache.invalidate(saved.getId()));
+    }
+
+    public Mono<User> findByIdWithObjectAndEntityClass(String id) {
+        return reactiveMongoTemplate.findById(id, User.class);
+    }
+
+    public Flux<User> findByQueryAndEntityClass(String name) {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("name.firstname").is(name));
+        return reactiveMongoTemplate.find(query, User.class);
+    }
+
+    public Flux<User> findAllFromEntityClass() {
+        return reactiveMongoTemplate.findAll(User.class);
+    }
+
+    public Flux<User> findAllAndRemove() {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("age").gt(39));
+        return reactiveMongoTemplate.findAllAndRemove(query, User.class)
+                .doOnNext(user -> userCache.invalidate(user.getId()));
+    }
+
+    public Flux<String> findDistinctNames() {
+        Query query = new Query();
+        query.addCriteria(Criteria.where("age").gt(35));
+        return reactiveMongoTemplate.findDistinct(query, "name.firstname", User.class, String.class);
+    }
+
+    // age as an int, same as MongoTemplateService.findAndModify
+    public Mono<User> findAndModify(String name, int newAge) {
+        Query query = new Query(Criteria.where("name.firstname").is(name));
+        Update update = new Update().set("age", newAge);
+        FindAndModifyOptions options = new FindAndModifyOptions()
+                .returnNew(true)
+                .upsert(false);
+        return reactiveMongoTemplate.findAndModify(query, update, options, User.class)
+                .doOnNext(modified -> userCache.invalidate(modified.getId()));
+    }
+
+    public Mono<User> findAndRemove(String name) {
+        Query query = new Query(Criteria.where("name").is(name));
+        return reactiveMongoTemplate.findAndRemove(query, User.class)
+                .doOnNext(removed -> userCache.invalidate(removed.getId()));
+    }
+
+    public Mono<User> findAndReplace(String name, User newUser) {
+        Query query = new Query(Criteria.where("name.firstname").is(name));
+        return reactiveMongoTemplate.findAndReplace(query, newUser, FindAndReplaceOptions.options().returnNew(), User.class, User.class)
+                .doOnNext(replaced -> userCache.invalidate(replaced.getId()));
+    }
+
+    public Mono<User> findOne(String name) {
+        Query query = new Query(Criteria.where("name.firstname").is(name));
+        return reactiveMongoTemplate.findOne(query, User.class);
+    }
+
+    public Mono<User> insert(User user) {
+        return reactiveMongoTemplate.insert(user);
+    }
+
+    public Mono<Boolean> exists(String name) {
+        Query query = new Query(Criteria.where("name.firstname").is(name));
+        return reactiveMongoTemplate.exists(query, User.class);
+    }
+
+    public Mono<Long> count(int age) {
+        Query query = new Query(Criteria.where("age").gt(age));
+        return reactiveMongoTemplate.count(query, User.class);
+    }
+
+    public Mono<Long> estimatedCount() {
+        return reactiveMongoTemplate.estimatedCount(User.class);
+    }
+
+    // same filter as MongoTemplateService.exactCount (age > 25), the endpoint returns the same number in both profiles
+    public Mono<Long> exactCount() {
+        Query query = new Query(Criteria.where("age").gt(25));
+        return reactiveMongoTemplate.exactCount(query, User.class);
+    }
+
+    public Flux<Document> countUsersByStatusOver25() {
+        TypedAggregation<User> aggregation = Aggregation.newAggregation(User.class,
+                Aggregation.match(Criteria.where("age").gt(25)),
+                Aggregation.group("gender").count().as("count"));
+        return reactiveMongoTemplate.aggregate(aggregation, Document.class);
+    }
+
+    /*
+    Same contract as BulkIngestService.ingest, the request body is already a Flux<User> (decoded one document at a
+    time by WebFlux) so batching and backpressure are operators instead of a semaphore:
+
+        users --buffer(batchSize)--> flatMap(bulk insert, maxInFlight)
+
+    flatMap requests new batches only while fewer than maxInFlight inserts are running, so the body is read as fast
+    as Mongo writes and never more.
+     */
+    public Mono<BulkIngestResult> bulkIngest(Flux<User> users, Integer batchSize, Integer maxInFlight, boolean ordered) {
+        int size = batchSize != null ? batchSize : defaultBatchSize;
+        int inFlight = maxInFlight != null ? maxInFlight : defaultMaxInFlight;
+        if (size < 1 || size > BulkIngestService.MAX_BATCH_SIZE) {
+            return Mono.error(new BadRequestException("batchSize must be between 1 and " + BulkIngestService.MAX_BATCH_SIZE));
+        }
+        if (inFlight < 1) {
+            return Mono.error(new BadRequestException("maxInFlight must be at least 1"));
+        }
+
+        long start = System.nanoTime();
+        BulkIngestResult result = new BulkIngestResult();
+        return users
+                .onErrorResume(e -> {
+                    // bad JSON in the middle of the body, what was read before is still written
+                    log.warn("Reactive bulk ingest stopped reading: {}", e.getMessage());
+                    result.setError("Stopped reading the body: " + e.getMessage());
+                    return Flux.empty();
+                })
+                .buffer(size)
+                .index()
+                .flatMapSequential(batch -> writeBatch(batch.getT1().intValue(), batch.getT1() * size, batch.getT2(), ordered), inFlight)
+                .doOnNext(batchResult -> {
+                    result.getBatches().add(batchResult);
+                    result.setReceived(result.getReceived() + batchResult.getSize());
+                    result.setInserted(result.getInserted() + batchResult.getInserted());
+                    result.setFailed(result.getFailed() + batchResult.getFailedIndices().size());
+                })
+                .then(Mono.fromSupplier(() -> {
+                    result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+                    log.info("Reactive bulk ingest: received={} inserted={} failed={} batches={} in {} ms",
+                            result.getReceived(), result.getInserted(), result.getFailed(), result.getBatches().size(), result.getElapsedMillis());
+                    return result;
+                }));
+    }
+
+    Mono<BatchResult> writeBatch(int number, long offset, List<User> batch, boolean ordered) {
+        long start = System.nanoTime();
+        BatchResult result = new BatchResult();
+        result.setBatch(number);
+        result.setOffset(offset);
+        result.setSize(batch.size());
+
+        return reactiveMongoTemplate.bulkOps(ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED, User.class)
+                .insert(batch)
+                .execute()
+                .map(writeResult -> {
+                    result.setInserted(writeResult.getInsertedCount());
+                    return result;
+                })
+                .onErrorResume(e -> {
+                    List<BulkWriteError> errors = bulkErrors(e);
+                    if (errors == null) {
+                        // the whole batch failed (timeout, connection lost ...)
+                        LongStream.range(0, batch.size()).forEach(i -> result.getFailedIndices().add(offset + i));
+                        result.getErrors().add(e.getMessage());
+                        return Mono.just(result);
+                    }
+                    result.setInserted(insertedCount(e));
+                    for (BulkWriteError error : errors) {
+                        result.getFailedIndices().add(offset + error.getIndex());
+                        if (result.getErrors().size() < BulkIngestService.MAX_ERRORS_PER_BATCH) {
+                            result.getErrors().add(error.getMessage());
+                        }
+                    }
+                    if (ordered && !errors.isEmpty()) {
+                        long firstFailed = errors.get(0).getIndex();
+                        LongStream.range(firstFailed + 1, batch.size()).forEach(i -> result.getFailedIndices().add(offset + i));
+                    }
+                    return Mono.just(result);
+                })
+                .doOnNext(done -> done.setElapsedMillis((System.nanoTime() - start) / 1_000_000));
+    }
+
+    // the reactive bulk path surfaces either the translated or the raw driver exception
+    private static List<BulkWriteError> bulkErrors(Throwable e) {
+        if (e instanceof BulkOperationException bulk) {
+            return bulk.getErrors();
+        }
+        if (e instanceof MongoBulkWriteException bulk) {
+            return bulk.getWriteErrors();
+        }
+        return null;
+    }
+
+    private static int insertedCount(Throwable e) {
+        if (e instanceof BulkOperationException bulk) {
+            return bulk.getResult().getInsertedCount();
+        }
+        return ((MongoBulkWriteException) e).getWriteResult().getInsertedCount();
+    }
+}
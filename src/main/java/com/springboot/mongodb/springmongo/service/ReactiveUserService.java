@@ -0,0 +1,132 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.repository.ReactiveUserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/*
+Reactive version of UserService (profile "reactive"), same semantics, nothing blocks:
+
+- findAll is a Flux over the cursor, the driver asks for the next batch only when the subscriber (the HTTP response)
+  has demand, so a slow client slows down the reads instead of filling the memory.
+- PUT / PATCH / JSON patch are the same single conditional writes as in UserService, an empty Mono means
+  "no user with this id".
+
+UserCache is not used for reads here (it is a blocking read-through), writes still invalidate it, so nodes running
+the servlet stack against the same data don't serve stale users.
+ */
+@Service
+@Slf4j
+@Profile("reactive")
+public class ReactiveUserService {
+
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    @Autowired
+    private ReactiveUserRepository reactiveUserRepository;
+
+    @Autowired
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private JsonPatchCompiler jsonPatchCompiler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserCache userCache;
+
+    public Flux<User> findAll() {
+        return reactiveMongoTemplate.find(new Query().cursorBatchSize(STREAM_BATCH_SIZE), User.class);
+    }
+
+    public Mono<User> findById(String id) {
+        return reactiveUserRepository.findById(id);
+    }
+
+    public Mono<User> save(User user) {
+        return reactiveUserRepository.save(user).doOnNext(saved -> userCache.invalidate(saved.getId()));
+    }
+
+    // replaceOne with an _id filter, empty if nothing matched
+    public Mono<User> replace(String id, User user) {
+        user.setId(id);
+        return reactiveMongoTemplate.replace(byId(id), user)
+                .doOnNext(result -> userCache.invalidate(id))
+                .filter(result -> result.getMatchedCount() > 0)
+                .map(result -> user);
+    }
+
+    public Mono<Void> delete(String id) {
+        return reactiveUserRepository.deleteById(id).doOnSuccess(done -> userCache.invalidate(id));
+    }
+
+    public Mono<User> patch(String id, Map<String, Object> updates) {
+        if (updates.isEmpty()) {
+            return reactiveMongoTemplate.findOne(byId(id), User.class);
+        }
+        Update update = PatchUpdates.fromMap(userFieldRegistry, updates);
+        return reactiveMongoTemplate.findAndModify(byId(id), update, FindAndModifyOptions.options().returnNew(true), User.class)
+                .doFinally(signal -> userCache.invalidate(id));
+    }
+
+    /*
+    Compiled patch -> one guarded findAndModify, like UserService.jsonPatchUpdate.
+    Empty Mono when a guard failed, UserNotFoundException when the id doesn't exist.
+     */
+    public Mono<User> jsonPatch(String id, JsonPatch patch) {
+        JsonPatchCompiler.CompiledPatch compiled = jsonPatchCompiler.compile(patch);
+        if (compiled == null) {
+            return jsonPatchInMemory(id, patch);
+        }
+        Query query = new Query(PatchUpdates.guarded(id, compiled));
+        Mono<User> patched = compiled.update().getUpdateObject().isEmpty()
+                ? reactiveMongoTemplate.findOne(query, User.class)
+                : reactiveMongoTemplate.findAndModify(query, compiled.update(), FindAndModifyOptions.options().returnNew(true), User.class)
+                        .doFinally(signal -> userCache.invalidate(id));
+        // the exists check only runs when nothing was patched
+        return patched.switchIfEmpty(Mono.defer(() -> reactiveUserRepository.existsById(id)
+                .flatMap(exists -> exists ? Mono.<User>empty() : Mono.error(new UserNotFoundException(id)))));
+    }
+
+    private Mono<User> jsonPatchInMemory(String id, JsonPatch patch) {
+        return reactiveUserRepository.findById(id)
+                .switchIfEmpty(Mono.error(new UserNotFoundException(id)))
+                .flatMap(user -> {
+                    try {
+                        return reactiveUserRepository.save(PatchUpdates.applyInMemory(objectMapper, user, patch));
+                    } catch (JsonPatchException | JsonProcessingException e) {
+                        log.info("Patch failed: {}", e.getMessage());
+                        return Mono.empty();
+                    }
+                })
+                .doFinally(signal -> userCache.invalidate(id));
+    }
+
+    private static Query byId(String id) {
+        return new Query(Criteria.where("id").is(id));
+    }
+}
@@ -0,0 +1,206 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.StorageCompactionResult;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Migrates the stored users between the normal field names and the short ones of CompactFieldNamingStrategy,
+and removes the _class key (the converter doesn't write it any more, see MongoConfig).
+
+    direction=compact   rollNumber -> rn, company.location.address.address1 -> co.loc.adr.a1 ...
+    direction=expand    back again (rollback)
+
+Works on the raw documents, not through the converter (the converter can only read one of the two formats).
+Each document is rewritten with a replaceOne whose filter is the document as we read it
+({_id, $expr: {$eq: [$$ROOT, <original>]}}), so a document changed in between is skipped instead of overwritten,
+the report tells how many, and a second run picks them up. Already migrated documents are left alone.
+
+The application reads only one format at a time, so:
+    1. dryRun=true to see the savings
+    2. stop writes, run direction=compact
+    3. restart with spring.data.mongodb.field-naming-strategy=...CompactFieldNamingStrategy
+ */
+@Service
+@Slf4j
+public class StorageCompactionService {
+
+    public static final int MAX_BATCH_SIZE = 5_000;
+
+    private static final Codec<Document> DOCUMENT_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoMappingContext mappingContext;
+
+    @Autowired
+    private UserCache userCache;
+
+    // field renames of one level of the document, plus the renames below each (target) field
+    record Renames(Map<String, String> names, Map<String, Renames> nested) {
+    }
+
+    public StorageCompactionResult migrate(String direction, boolean dryRun, int batchSize) {
+        boolean compact = switch (direction) {
+            case "compact" -> true;
+            case "expand" -> false;
+            default -> throw new BadRequestException("direction must be compact or expand");
+        };
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE) {
+            throw new BadRequestException("batchSize must be between 1 and " + MAX_BATCH_SIZE);
+        }
+
+        long start = System.nanoTime();
+        Renames renames = renames(mappingContext.getRequiredPersistentEntity(User.class), compact);
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class));
+
+        StorageCompactionResult result = new StorageCompactionResult();
+        result.setDirection(direction);
+        result.setDryRun(dryRun);
+        Document statsBefore = dryRun ? null : collStats(collection.getNamespace().getCollectionName());
+
+        List<WriteModel<Document>> batch = new ArrayList<>(batchSize);
+        try (MongoCursor<Document> cursor = collection.find().batchSize(batchSize).iterator()) {
+            while (cursor.hasNext()) {
+                Document original = cursor.next();
+                Document migrated = rename(original, renames);
+                migrated.remove("_class");
+                result.setScanned(result.getScanned() + 1);
+                result.setBytesBefore(result.getBytesBefore() + bsonSize(original));
+                result.setBytesAfter(result.getBytesAfter() + bsonSize(migrated));
+                if (migrated.equals(original)) {
+                    result.setUnchanged(result.getUnchanged() + 1);
+                    continue;
+                }
+                if (dryRun) {
+                    result.setMigrated(result.getMigrated() + 1);
+                    continue;
+                }
+                batch.add(new ReplaceOneModel<>(unchangedSinceRead(original), migrated));
+                if (batch.size() == batchSize) {
+                    write(collection, batch, result);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            write(collection, batch, result);
+        }
+        if (!dryRun) {
+            userCache.invalidateAll();
+            Document statsAfter = collStats(collection.getNamespace().getCollectionName());
+            result.setCollectionSizeBefore(number(statsBefore, "size"));
+            result.setStorageSizeBefore(number(statsBefore, "storageSize"));
+            result.setCollectionSizeAfter(number(statsAfter, "size"));
+            result.setStorageSizeAfter(number(statsAfter, "storageSize"));
+        }
+        if (result.getBytesBefore() > 0) {
+            result.setSavedPercent(100.0 * (result.getBytesBefore() - result.getBytesAfter()) / result.getBytesBefore());
+        }
+        result.setElapsedMillis((System.nanoTime() - start) / 1_000_000);
+        log.info("Storage {} (dryRun={}): scanned={} migrated={} skipped={} bytes {} -> {}", direction, dryRun,
+                result.getScanned(), result.getMigrated(), result.getSkipped(), result.getBytesBefore(), result.getBytesAfter());
+        return result;
+    }
+
+    private static void write(MongoCollection<Document> collection, List<WriteModel<Document>> batch, StorageCompactionResult result) {
+        BulkWriteResult written = collection.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+        result.setMigrated(result.getMigrated() + written.getMatchedCount());
+        result.setSkipped(result.getSkipped() + batch.size() - written.getMatchedCount());
+        batch.clear();
+    }
+
+    // matches only if the stored document is still exactly what we read ($literal: values like "$x" are not field paths)
+    private static Document unchangedSinceRead(Document original) {
+        return new Document("_id", original.get("_id"))
+                .append("$expr", new Document("$eq", List.of("$$ROOT", new Document("$literal", original))));
+    }
+
+    // walks the entity metadata, nested entities and collections of entities (List<Company>) get their own level
+    Renames renames(MongoPersistentEntity<?> entity, boolean compact) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, Renames> nested = new HashMap<>();
+        for (MongoPersistentProperty property : entity) {
+            if (property.isIdProperty() || property.hasExplicitFieldName()) {
+                continue;
+            }
+            String normal = property.getName();
+            String alias = CompactFieldNamingStrategy.compactName(property);
+            String source = compact ? normal : alias;
+            String target = compact ? alias : normal;
+            if (!source.equals(target)) {
+                names.put(source, target);
+            }
+            MongoPersistentEntity<?> child = property.isEntity() ? mappingContext.getPersistentEntity(property.getActualType()) : null;
+            if (child != null) {
+                nested.put(source, renames(child, compact));
+            }
+        }
+        return new Renames(names, nested);
+    }
+
+    static Document rename(Document document, Renames renames) {
+        Document renamed = new Document();
+        document.forEach((key, value) -> {
+            Renames below = renames.nested().get(key);
+            renamed.put(renames.names().getOrDefault(key, key), below == null ? value : renameValue(value, below));
+        });
+        return renamed;
+    }
+
+    private static Object renameValue(Object value, Renames renames) {
+        if (value instanceof Document document) {
+            return rename(document, renames);
+        }
+        if (value instanceof List<?> list) {
+            List<Object> renamed = new ArrayList<>(list.size());
+            list.forEach(element -> renamed.add(renameValue(element, renames)));
+            return renamed;
+        }
+        return value;
+    }
+
+    static long bsonSize(Document document) {
+        return new RawBsonDocument(document, DOCUMENT_CODEC).getByteBuffer().remaining();
+    }
+
+    private Document collStats(String collection) {
+        try {
+            return mongoTemplate.executeCommand(new Document("collStats", collection));
+        } catch (MongoException | DataAccessException e) {
+            log.warn("collStats not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Long number(Document stats, String key) {
+        return stats != null && stats.get(key) instanceof Number n ? n.longValue() : null;
+    }
+}
@@ -1,10 +1,21 @@
 package com.springboot.mongodb.springmongo.service;
 
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldPath;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.Address;
+import com.springboot.mongodb.springmongo.model.Company;
 import com.springboot.mongodb.springmongo.model.User;
 import com.springboot.mongodb.springmongo.repository.UpdateRepository;
+import com.springboot.mongodb.springmongo.request.MatchedNestedUpdateRequest;
 import com.springboot.mongodb.springmongo.request.NestedUpdateRequest;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.writebehind.UserWriteBehind;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.bson.Document;
 import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
@@ -12,6 +23,11 @@ import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.mongodb.core.query.Criteria;
 import com.mongodb.client.result.UpdateResult;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class UpdateService {
 
@@ -21,9 +37,31 @@ public class UpdateService {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    // every update below invalidates the GET /api/users/{id} cache entry of the user it changed
+    @Autowired
+    private UserCache userCache;
+
+    // only updateUser can change the counted user fields, the address updates below don't (see UserRollups)
+    @Autowired
+    private UserRollups userRollups;
+
+    // app.write-behind.enabled=true: updateNestedAddressField is buffered and merged per user (see UserWriteBehind)
+    @Autowired
+    private UserWriteBehind userWriteBehind;
+
+    // resolves and converts the fields of updateMatchedNested
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    // true when updateNestedAddressField only accepts the update, it is written within app.write-behind.flush-interval
+    public boolean writesBehind() {
+        return userWriteBehind.accepting();
+    }
 
     public User updateUser(User user){
         updateRepository.save(user);
+        userCache.invalidate(user.getId());
+        userRollups.recordChange();
         return user;
     }
 
@@ -31,6 +69,7 @@ public class UpdateService {
         User user = updateRepository.findById(id).orElseThrow();
         user.getCompany().get(1).getLocation().getAddress().get(1).setAddress1(address1);
         updateRepository.save(user); // replaces full document in Mongo
+        userCache.invalidate(id);
         return user;
     }
 
@@ -38,8 +77,12 @@ public class UpdateService {
         String path = String.format("company.%d.location.address.%d.address1",
                 req.getCompanyIndex(), req.getAddressIndex());
         Query query = new Query(Criteria.where("id").is(id));
+        if (userWriteBehind.setById(id, path, req.getAddress1())) {
+            return true;    // accepted, not known yet whether the user / path exists
+        }
         Update update = new Update().set(path, req.getAddress1());
         UpdateResult result = mongoTemplate.updateFirst(query, update, User.class);
+        userCache.invalidate(id);
         return result.getModifiedCount() > 0;
     }
 
@@ -57,5 +100,103 @@ public class UpdateService {
                 .matching(query)
                 .apply(update)
                 .first();
+        userCache.invalidate(userId);
+    }
+
+    /*
+    Same kind of update as updateNestedAddressField, but the company / address is found by its content with
+    $[identifier] array filters instead of by index:
+
+        update users set company.$[c].location.address.$[a].address1 = ...
+        where _id = id and company has { title: ..., location.address has { address2: ... } }
+        arrayFilters [ { c.title: ... }, { a.address2: ... } ]
+
+    One round trip, no read before the write, and every matching element changes in the same atomic write. Not
+    write-behind buffered, UserWriteBehind merges plain paths only. False when the user has no matching element.
+     */
+    public boolean updateMatchedNested(String id, MatchedNestedUpdateRequest req) {
+        Map<String, Object> company = req.getCompany() == null ? Map.of() : req.getCompany();
+        Map<String, Object> address = req.getAddress() == null ? Map.of() : req.getAddress();
+        if (company.isEmpty() && address.isEmpty()) {
+            throw new BadRequestException("Give the company and / or address to match");
+        }
+        if (req.getSet() == null || req.getSet().isEmpty()) {
+            throw new BadRequestException("Nothing to update, set is empty");
+        }
+        List<String> companyElement = List.of("company", "0");
+        List<String> addressElement = List.of("company", "0", "location", "address", "0");
+
+        // no company given -> the address is searched in every company ($[])
+        String target = company.isEmpty() ? "company.$[]" : "company.$[c]";
+        if (!address.isEmpty()) {
+            target += ".location.address.$[a]";
+        }
+        Update update = new Update();
+        for (Map.Entry<String, Object> entry : req.getSet().entrySet()) {
+            List<String> element = address.isEmpty() ? companyElement : addressElement;
+            UserFieldPath path = userFieldRegistry.path(tokens(element, entry.getKey()));
+            update.set(target + "." + relative(element, path, entry.getKey()),
+                    userFieldRegistry.convert(entry.getValue(), path.valueType()));
+        }
+
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        Criteria userHasElement;
+        if (company.isEmpty()) {
+            update.filterArray(arrayFilter("a", Address.class, match(addressElement, address), queryMapper));
+            userHasElement = Criteria.where("company.location.address").elemMatch(match(addressElement, address));
+        } else {
+            update.filterArray(arrayFilter("c", Company.class, match(companyElement, company), queryMapper));
+            Criteria companyMatch = match(companyElement, company);
+            if (!address.isEmpty()) {
+                update.filterArray(arrayFilter("a", Address.class, match(addressElement, address), queryMapper));
+                companyMatch = new Criteria().andOperator(companyMatch,
+                        Criteria.where("location.address").elemMatch(match(addressElement, address)));
+            }
+            userHasElement = Criteria.where("company").elemMatch(companyMatch);
+        }
+
+        Query query = new Query(Criteria.where("id").is(id).andOperator(userHasElement));
+        UpdateResult result = mongoTemplate.updateFirst(query, update, User.class);
+        userCache.invalidate(id);
+        return result.getMatchedCount() > 0;
+    }
+
+    // field -> value conditions on the element, java property paths relative to it
+    private Criteria match(List<String> element, Map<String, Object> values) {
+        Criteria criteria = new Criteria();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            UserFieldPath path = userFieldRegistry.path(tokens(element, entry.getKey()));
+            criteria = criteria.and(relative(element, path, entry.getKey()))
+                    .is(userFieldRegistry.convert(entry.getValue(), path.valueType()));
+        }
+        return criteria;
+    }
+
+    // Spring sends array filters as they are, so the stored field names (CompactFieldNamingStrategy) are mapped here
+    private Criteria arrayFilter(String identifier, Class<?> type, Criteria match, QueryMapper queryMapper) {
+        Document mapped = queryMapper.getMappedObject(match.getCriteriaObject(),
+                mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(type));
+        Criteria filter = new Criteria();
+        for (Map.Entry<String, Object> entry : mapped.entrySet()) {
+            filter = filter.and(identifier + "." + entry.getKey()).is(entry.getValue());
+        }
+        return filter;
+    }
+
+    private static List<String> tokens(List<String> element, String field) {
+        List<String> tokens = new ArrayList<>(element);
+        tokens.addAll(Arrays.asList(field.split("\\.", -1)));
+        return tokens;
+    }
+
+    // the property path below the element, e.g. location.country for company.0.location.country
+    private static String relative(List<String> element, UserFieldPath path, String field) {
+        String relative = path.propertyPath().substring(String.join(".", element).length() + 1);
+        for (String segment : relative.split("\\.")) {
+            if (segment.equals("-") || segment.chars().allMatch(Character::isDigit)) {
+                throw new BadRequestException("'" + field + "' goes into an array by index, match the element instead");
+            }
+        }
+        return relative;
     }
 }
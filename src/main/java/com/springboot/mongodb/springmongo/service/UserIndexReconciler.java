@@ -0,0 +1,181 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.IndexReport;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+Indexes for the query shapes the services really send to the users collection. Without them every one of these
+is a collection scan:
+
+    name.firstname = ?            findByQueryAndEntityClass, findOne, findAndModify, findAndReplace, exists, update*
+    age > ? / age < ?             findAllAndRemove, findDistinctNames, count, countUsersByStatusOver25, updateMulti, bulkOps
+    (age | rollNumber | dateOfJoining, _id)   keyset pagination GET /api/users/page?sort=...
+    status = ?                    bulkOps delete (sparse, hardly any user has it)
+
+Instead of @Indexed on User (needs spring.data.mongodb.auto-index-creation, builds the indexes in the foreground
+while the context starts and never tells you what differs) the list is kept here and reconciled against
+getIndexInfo() once the app is up, on a background thread:
+
+    desired keys found (any name)       -> present
+    not there                           -> created (mode=create) / missing (mode=report)
+    same keys with other options, or same name with other keys -> conflicting, never touched automatically
+    existing but not desired            -> extra, only reported (something else may use it)
+
+Drift is logged as a warning and available on GET /api/index/users/drift.
+Keys are written as User property paths and mapped like queries are (CompactFieldNamingStrategy, id -> _id).
+ */
+@Service
+@Slf4j
+public class UserIndexReconciler {
+
+    record UserIndex(Index index, String usedBy) {
+
+        String name() {
+            return index.getIndexOptions().getString("name");
+        }
+
+        boolean sparse() {
+            return index.getIndexOptions().getBoolean("sparse", false);
+        }
+    }
+
+    static final List<UserIndex> DESIRED = List.of(
+            new UserIndex(new Index().on("name.firstname", Sort.Direction.ASC).named("users_firstname").background(),
+                    "name.firstname equality (findByQueryAndEntityClass, findOne, findAndModify ...)"),
+            new UserIndex(new Index().on("age", Sort.Direction.ASC).on("id", Sort.Direction.ASC).named("users_age_id").background(),
+                    "age ranges (count, findAllAndRemove, aggregations) and paging by age"),
+            new UserIndex(new Index().on("rollNumber", Sort.Direction.ASC).on("id", Sort.Direction.ASC).named("users_rollnumber_id").background(),
+                    "paging by rollNumber"),
+            new UserIndex(new Index().on("dateOfJoining", Sort.Direction.ASC).on("id", Sort.Direction.ASC).named("users_dateofjoining_id").background(),
+                    "paging by dateOfJoining"),
+            new UserIndex(new Index().on("status", Sort.Direction.ASC).sparse().named("users_status").background(),
+                    "status equality (bulkOps delete)")
+    );
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // create | report | off
+    @Value("${app.user-indexes.mode:create}")
+    private String mode;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if ("off".equalsIgnoreCase(mode)) {
+            return;
+        }
+        // index builds can take long on a big collection, don't hold up startup or fail it when Mongo is down
+        Thread thread = new Thread(() -> {
+            try {
+                log(reconcile("create".equalsIgnoreCase(mode)));
+            } catch (RuntimeException e) {
+                log.warn("User index reconciliation failed: {}", e.getMessage());
+            }
+        }, "user-index-reconciler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public IndexReport drift() {
+        return reconcile(false);
+    }
+
+    public IndexReport reconcile(boolean create) {
+        IndexOperations indexOps = mongoTemplate.indexOps(User.class);
+        List<IndexInfo> existing = indexOps.getIndexInfo();
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(User.class);
+
+        IndexReport report = new IndexReport();
+        report.setCollection(mongoTemplate.getCollectionName(User.class));
+        Set<String> matched = new HashSet<>();
+        matched.add("_id_");
+
+        for (UserIndex desired : DESIRED) {
+            List<String> keys = keys(queryMapper.getMappedSort(desired.index().getIndexKeys(), entity));
+            String description = desired.name() + " " + keys;
+            IndexInfo sameKeys = existing.stream().filter(info -> keys(info).equals(keys)).findFirst().orElse(null);
+            IndexInfo sameName = existing.stream().filter(info -> info.getName().equals(desired.name())).findFirst().orElse(null);
+
+            if (sameKeys != null) {
+                matched.add(sameKeys.getName());
+                if (sameKeys.isSparse() != desired.sparse()) {
+                    report.getConflicting().add(description + ": exists as " + sameKeys.getName() + " with sparse=" + sameKeys.isSparse());
+                } else {
+                    report.getPresent().add(description);
+                }
+            } else if (sameName != null) {
+                matched.add(sameName.getName());
+                report.getConflicting().add(description + ": name is used for " + keys(sameName));
+            } else if (create) {
+                try {
+                    indexOps.createIndex(desired.index());
+                    report.getCreated().add(description);
+                } catch (DataAccessException e) {
+                    report.getErrors().add(description + ": " + e.getMessage());
+                }
+            } else {
+                report.getMissing().add(description + " needed for " + desired.usedBy());
+            }
+        }
+        existing.stream()
+                .filter(info -> !matched.contains(info.getName()))
+                .forEach(info -> report.getExtra().add(info.getName() + " " + keys(info)));
+        return report;
+    }
+
+    private static void log(IndexReport report) {
+        if (!report.getCreated().isEmpty()) {
+            log.info("Created indexes on {}: {}", report.getCollection(), report.getCreated());
+        }
+        if (!report.isInSync()) {
+            log.warn("Index drift on {}: missing={} conflicting={} errors={} (these queries scan the collection)",
+                    report.getCollection(), report.getMissing(), report.getConflicting(), report.getErrors());
+        }
+        if (!report.getExtra().isEmpty()) {
+            log.info("Indexes on {} not used by the services: {}", report.getCollection(), report.getExtra());
+        }
+    }
+
+    // ordered "field:1" list, index key order matters (and Document.equals ignores it)
+    private static List<String> keys(Document keys) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Object> key : keys.entrySet()) {
+            result.add(key.getKey() + ":" + key.getValue());
+        }
+        return result;
+    }
+
+    private static List<String> keys(IndexInfo info) {
+        List<String> result = new ArrayList<>();
+        for (IndexField field : info.getIndexFields()) {
+            String type = field.getDirection() != null
+                    ? (field.getDirection() == Sort.Direction.ASC ? "1" : "-1")
+                    : field.isText() ? "text" : field.isGeo() ? "geo" : "other";
+            result.add(field.getKey() + ":" + type);
+        }
+        return result;
+    }
+}
@@ -2,21 +2,36 @@ package com.springboot.mongodb.springmongo.service;
 
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import com.springboot.mongodb.springmongo.mapping.UserField;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
 import com.springboot.mongodb.springmongo.model.User;
 import com.springboot.mongodb.springmongo.repository.UserRepository;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.response.UserCacheStats;
+import com.springboot.mongodb.springmongo.response.UserPage;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
-import org.springframework.util.ReflectionUtils;
 
-import java.lang.reflect.Field;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -28,57 +43,224 @@ public class UserService {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserFieldRegistry userFieldRegistry;
+
+    @Autowired
+    private JsonPatchCompiler jsonPatchCompiler;
+
+    @Autowired
+    private UserCache userCache;
+
+    // user counts: inserts, removes and the writes below that see the user before the change move it between
+    // cells, a write that doesn't touch a counted field is not reported (see UserRollups)
+    @Autowired
+    private UserRollups userRollups;
+
+    // How many documents the driver pulls per getMore while streaming, this is what bounds the memory.
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    // Keys allowed for keyset pagination, always combined with _id as tie breaker, so the order is total.
+    private static final Set<String> PAGE_SORT_KEYS = Set.of("id", "age", "rollNumber", "dateOfJoining");
+
     public User saveUser(User user) {
-        return userRepository.save(user);
+        if (user.getId() == null) {
+            User saved = userRepository.save(user);
+            userCache.invalidate(saved.getId());
+            userRollups.recordInsert(saved);
+            return saved;
+        }
+        // an upsert by id like save(), but it hands back the document it replaced (null = inserted) for the rollup
+        User before = mongoTemplate.findAndReplace(new Query(Criteria.where("id").is(user.getId())), user,
+                FindAndReplaceOptions.options().upsert());
+        userCache.invalidate(user.getId());
+        if (before == null) {
+            userRollups.recordInsert(user);
+        } else {
+            userRollups.recordUpdate(before, user);
+        }
+        return user;
+    }
+
+    /*
+    PUT: replace the whole document, but only if it exists.
+    One findAndReplace with an _id filter (no upsert) instead of existsById + save, the replaced document tells us if
+    the user was there, so no second round-trip and no window where the user is deleted between check and write.
+    It is also what the rollup needs to move the user from its old cell to the new one.
+    Returns null if nothing matched.
+     */
+    public User replaceUser(String id, User user) {
+        user.setId(id);
+        User before = mongoTemplate.findAndReplace(new Query(Criteria.where("id").is(id)), user);
+        userCache.invalidate(id);
+        if (before == null) {
+            return null;
+        }
+        userRollups.recordUpdate(before, user);
+        return user;
     }
 
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
 
+    // Same as getAllUsers() but backed by an open cursor, documents are decoded one by one while the caller iterates.
+    // The caller must close the stream (try-with-resources), otherwise the server side cursor stays open.
+    public Stream<User> streamAllUsers() {
+        Query query = new Query().cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, User.class);
+    }
+
+    /*
+    Keyset (seek) pagination, no skip/limit.
+    Sorted by (sortKey, _id), the token carries the last (sortKey, _id) of the previous page and the next page starts
+    right after it. With an index on {sortKey: 1, _id: 1} every page is the same index range scan, whatever the page number.
+
+    fields -> optional projection, only these fields are loaded from Mongo (id and the sort key always come back).
+     */
+    public UserPage<User> findPage(int size, String sortKey, String token, Collection<String> fields) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestException("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        UserField sortField = userFieldRegistry.field(sortKey);
+        if (!PAGE_SORT_KEYS.contains(sortField.name())) {
+            throw new BadRequestException("Cannot page by '" + sortKey + "', allowed: " + PAGE_SORT_KEYS);
+        }
+        String sort = sortField.name();
+
+        Query query = new Query().limit(size + 1);   // one extra to know if there is a next page
+        query.with(sort.equals("id") ? Sort.by("id") : Sort.by(sort).and(Sort.by("id")));
+        if (token != null && !token.isBlank()) {
+            query.addCriteria(PageToken.decode(token, sort).after());
+        }
+        if (fields != null && !fields.isEmpty()) {
+            fields.forEach(field -> query.fields().include(userFieldRegistry.field(field).name()));
+            query.fields().include(sort);
+        }
+
+        List<User> users = mongoTemplate.find(query, User.class);
+        String nextToken = null;
+        if (users.size() > size) {
+            users = users.subList(0, size);
+            User last = users.get(size - 1);
+            Object lastValue = userFieldRegistry.userEntity().getPropertyAccessor(last).getProperty(sortField.property());
+            nextToken = new PageToken(sort, lastValue, last.getId()).encode();
+        }
+        return new UserPage<>(users, users.size(), nextToken);
+    }
+
+    // Read-through UserCache, only a miss goes to Mongo. The returned User may be shared, don't modify it.
     public Optional<User> getUserById(String id) {
-        return userRepository.findById(id);
+        return userCache.get(id, userRepository::findById);
+    }
+
+    // only what is in the cache already, null when not cached (nothing is loaded)
+    public User getCachedUser(String id) {
+        return userCache.nativeCache().getIfPresent(id);
+    }
+
+    public UserCacheStats getCacheStats() {
+        return userCache.stats();
     }
 
+    // findAndRemove instead of deleteById: the removed user tells the rollup which cell to take it out of
     public void deleteUser(String id) {
-        userRepository.deleteById(id);
+        User removed = mongoTemplate.findAndRemove(new Query(Criteria.where("id").is(id)), User.class);
+        userCache.invalidate(id);
+        if (removed != null) {
+            userRollups.recordRemove(removed);
+        }
     }
 
     public boolean isExistsById(String id){
         return userRepository.existsById(id);
     }
+    /*
+    PATCH as one atomic server side update, no findById + save:
+        {"age": 40, "active": true, "favoriteFruit": null}  ->  {$set: {age: 40, active: true}, $unset: {favoriteFruit: ""}}
+    run with findAndModify(returnNew), so we get the updated document back in the same round-trip and concurrent
+    PATCHes on different fields can't overwrite each other (no lost update).
+
+    Keys are java names (rollNumber) or JSON names (rollnumber), values are converted to the declared field type.
+    Returns null if the id doesn't exist. A PATCH of gender / technology / active / age costs one more read, see
+    findAndModifyCounted.
+     */
     public User patchUser(String id, Map<String, Object> updates) {
-        log.info("patch User is executing .....");
-        log.warn("patch User is executing .....");
-        log.debug("patch User is executing .....");
-        log.error("patch User is executing .....");
-        Optional<User> userOptional = userRepository.findById(id);
-        if (userOptional.isPresent()) {
-            User user = userOptional.get();
-            updates.forEach((k, v) -> {
-                Field field = ReflectionUtils.findField(User.class, k);
-                field.setAccessible(true);
-                ReflectionUtils.setField(field, user, v);
-            });
-            return userRepository.save(user);
+        Query query = new Query(Criteria.where("id").is(id));
+        if (updates.isEmpty()) {
+            return mongoTemplate.findOne(query, User.class);
+        }
+        Update update = PatchUpdates.fromMap(userFieldRegistry, updates);
+        User patched = findAndModifyCounted(id, query, update);
+        userCache.invalidate(id);
+        return patched;
+    }
+
+    /*
+    findAndModify returning the updated user. An update of a counted field (UserRollups.COUNTED_FIELDS) also needs
+    the values before it when the rollup follows this node's writes: then findAndModify returns the pre-image, the
+    rollup moves the user from its old cell to the one the update leads to, and the updated user is read after it.
+    That second round-trip is only paid by those updates, the others stay one findAndModify(returnNew).
+     */
+    private User findAndModifyCounted(String id, Query query, Update update) {
+        if (!userRollups.tracksWrites() || !UserRollups.counts(update)) {
+            return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+        }
+        User before = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(false), User.class);
+        if (before == null) {
+            return null;
         }
-      return null;
+        userRollups.recordUpdate(before, update);
+        return mongoTemplate.findOne(new Query(Criteria.where("id").is(id)), User.class);
     }
 
+    /*
+    JSON Patch.
+    Most patches (add / remove / replace / test) are compiled into one $set/$unset/$push update with the tests as
+    query guards, and run as a single findAndModify, see JsonPatchCompiler. Returns null if the user is missing or a
+    guard failed (test didn't match, replaced path doesn't exist), throws UserNotFoundException if the id doesn't exist.
+    The existence check only runs when findAndModify matched nothing, so the normal case is still one round-trip.
+
+    move / copy and the other cases the compiler can't express still go through the old in-memory way:
+    load, apply the patch on the JsonNode, convert back and save the full document.
+     */
     public User jsonPatchUpdate(String id, JsonPatch patch){
-        Optional<User> optionalUser = userRepository.findById(id);
-        User user = optionalUser.get();
+        JsonPatchCompiler.CompiledPatch compiled = jsonPatchCompiler.compile(patch);
+        if (compiled != null) {
+            Query query = new Query(PatchUpdates.guarded(id, compiled));
+            User patched;
+            if (compiled.update().getUpdateObject().isEmpty()) {
+                patched = mongoTemplate.findOne(query, User.class);    // only tests
+            } else {
+                patched = findAndModifyCounted(id, query, compiled.update());
+                userCache.invalidate(id);
+            }
+            if (patched == null && !userRepository.existsById(id)) {
+                throw new UserNotFoundException(id);
+            }
+            return patched;
+        }
+        User patched = jsonPatchInMemory(id, patch);
+        if (patched != null) {      // null = the patch didn't apply, nothing was saved
+            userCache.invalidate(id);
+        }
+        return patched;
+    }
+
+    private User jsonPatchInMemory(String id, JsonPatch patch) {
+        User user = userRepository.findById(id).orElseThrow(() -> new UserNotFoundException(id));
         try {
-            JsonNode userNode = objectMapper.convertValue(user, JsonNode.class);
-            System.out.println("Original JSON before patch:");
-            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(userNode));
-            JsonNode patched = patch.apply(userNode);
-            User updatedUser = objectMapper.treeToValue(patched, User.class);
+            User updatedUser = PatchUpdates.applyInMemory(objectMapper, user, patch);
             userRepository.save(updatedUser);
+            userRollups.recordUpdate(user, updatedUser);
             return updatedUser;
         } catch (JsonPatchException | JsonProcessingException e) {
-            //log.info("Patch failed: " + e.getMessage());
-            System.out.println(e.getMessage());
+            log.info("Patch failed: {}", e.getMessage());
         }
         return null;
     }
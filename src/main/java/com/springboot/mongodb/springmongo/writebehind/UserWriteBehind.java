@@ -0,0 +1,319 @@
+package com.springboot.mongodb.springmongo.writebehind;
+
+import com.mongodb.bulk.BulkWriteError;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+Write-behind for the small, frequent $set updates (UpdateService.updateNestedAddressField, MongoTemplateService.update /
+updateFirst), off by default: app.write-behind.enabled=true
+
+    set(user 102, a=1) -+
+    set(user 102, b=2) -+--> buffer {102: $set{a:1, b:2}, ...} --every flush-interval or max-ops--> bulkWrite(UNORDERED)
+    set(user 102, a=3) -+                                         one updateOne per user: $set{a:3, b:2}
+
+A burst of updates to the same user becomes one write, and all users changed within flush-interval go to Mongo in one
+round-trip. Updates are merged per target (the _id, or the filter for the "first user named X" updates): the last
+value of a path wins, a $set on a parent path replaces the pending ones below it. A $set below a pending parent path
+can't be merged (Mongo rejects conflicting paths in one update), the buffer is flushed first.
+
+Durability, read this before switching it on:
+- A buffered update is acknowledged to the caller (true / -1 / 202 Accepted) before it is written. Reads, including
+  GET /api/users/{id}, see the old values for up to flush-interval.
+- Updates still in the buffer are lost if the process dies (kill -9, OOM, power). On a normal shutdown the buffer is
+  flushed before the Mongo client is closed (stop()), and updates arriving after that are written through.
+- A flush that fails as a whole (timeout, failover) is retried max-retries times, flushes never overtake each other,
+  so the order of updates to a user is kept. After that, and for updates the server rejects (validation ...), the
+  updates are dropped, logged and counted in writebehind.updates{result=failed}.
+- Only use it for values where "last write wins, maybe lost" is acceptable (counters, positions, last seen ...).
+
+Backpressure: the buffer holds at most max-pending users. A writer that finds it full flushes it on its own thread,
+so it waits for the round-trip instead of the heap growing.
+
+Cache entries are invalidated and the rollups told about a change after the flush, when the new values are in Mongo.
+Metrics: writebehind.pending (users buffered), writebehind.updates{result=buffered|merged|written|failed}.
+ */
+@Component
+@Slf4j
+public class UserWriteBehind implements SmartLifecycle {
+
+    private static final long RETRY_BACKOFF_MILLIS = 100;
+
+    // pending $set of one target, paths in the order they came
+    static final class Pending {
+        final Query query;
+        final String id;        // null when the target is a filter
+        final Map<String, Object> sets = new LinkedHashMap<>();
+
+        Pending(Query query, String id) {
+            this.query = query;
+            this.id = id;
+        }
+
+        Update update() {
+            Update update = new Update();
+            sets.forEach(update::set);
+            return update;
+        }
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private UserRollups userRollups;
+
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final int maxOps;
+    private final int maxPending;
+    private final int maxRetries;
+
+    private final Map<String, Pending> buffer = new LinkedHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private int opsSinceFlush;
+    private volatile boolean running;
+    private ScheduledExecutorService executor;
+
+    private final Counter buffered;
+    private final Counter merged;
+    private final Counter written;
+    private final Counter failed;
+
+    public UserWriteBehind(MeterRegistry registry,
+                           @Value("${app.write-behind.enabled:false}") boolean enabled,
+                           @Value("${app.write-behind.flush-interval:100ms}") Duration flushInterval,
+                           @Value("${app.write-behind.max-ops:500}") int maxOps,
+                           @Value("${app.write-behind.max-pending:10000}") int maxPending,
+                           @Value("${app.write-behind.max-retries:3}") int maxRetries) {
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.maxOps = maxOps;
+        this.maxPending = maxPending;
+        this.maxRetries = maxRetries;
+        Gauge.builder("writebehind.pending", this, writeBehind -> writeBehind.pending())
+                .description("Users with updates waiting in the write-behind buffer")
+                .register(registry);
+        this.buffered = counter(registry, "buffered");
+        this.merged = counter(registry, "merged");
+        this.written = counter(registry, "written");
+        this.failed = counter(registry, "failed");
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("writebehind.updates")
+                .description("Updates taken into the write-behind buffer, merged into a pending one, written or lost")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        running = true;
+    }
+
+    // runs before the Mongo client is closed, from here on updates are written through
+    @Override
+    public void stop() {
+        // under the buffer lock: a set() either got in before (and is written by the flush below) or sees !running
+        synchronized (buffer) {
+            running = false;
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+        int left = flush();
+        if (left > 0) {
+            log.info("Flushed {} buffered user updates on shutdown", left);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // true when set() calls are buffered, the callers use it to tell "accepted" from "written"
+    public boolean accepting() {
+        return running;
+    }
+
+    // $set path=value on the user with this id, false = not buffered, the caller writes it itself
+    public boolean setById(String id, String path, Object value) {
+        return set("id:" + id, () -> new Pending(new Query(Criteria.where("id").is(id)), id), path, value);
+    }
+
+    // $set path=value on the first user matching the query (updateFirst semantics)
+    public boolean setFirst(Query query, String path, Object value) {
+        return set("first:" + query.getQueryObject().toJson(), () -> new Pending(query, null), path, value);
+    }
+
+    private boolean set(String key, Supplier<Pending> target, String path, Object value) {
+        while (true) {
+            boolean full;
+            synchronized (buffer) {
+                // checked under the lock, stop() may have done its last flush already
+                if (!running) {
+                    return false;
+                }
+                Pending pending = buffer.get(key);
+                full = pending == null && buffer.size() >= maxPending;
+                if (!full) {
+                    boolean created = pending == null;
+                    if (created) {
+                        pending = target.get();
+                        buffer.put(key, pending);
+                    }
+                    if (merge(pending, path, value)) {
+                        (created ? buffered : merged).increment();
+                        if (++opsSinceFlush >= maxOps && executor != null) {
+                            opsSinceFlush = 0;
+                            executor.execute(this::flushQuietly);
+                        }
+                        return true;
+                    }
+                }
+            }
+            // full, or a path below a pending parent: write what is there first, then try again
+            flush();
+        }
+    }
+
+    // false when path lies below a pending path, that needs its own update
+    static boolean merge(Pending pending, String path, Object value) {
+        for (String existing : pending.sets.keySet()) {
+            if (path.startsWith(existing + ".")) {
+                return false;
+            }
+        }
+        Iterator<String> paths = pending.sets.keySet().iterator();
+        while (paths.hasNext()) {
+            if (paths.next().startsWith(path + ".")) {
+                paths.remove();     // the new parent value replaces them
+            }
+        }
+        pending.sets.put(path, value);
+        return true;
+    }
+
+    public int pending() {
+        synchronized (buffer) {
+            return buffer.size();
+        }
+    }
+
+    // writes everything buffered so far, returns the number of users written (or given up on)
+    public int flush() {
+        flushLock.lock();
+        try {
+            List<Pending> batch;
+            synchronized (buffer) {
+                if (buffer.isEmpty()) {
+                    return 0;
+                }
+                batch = new ArrayList<>(buffer.values());
+                buffer.clear();
+                opsSinceFlush = 0;
+            }
+            write(batch);
+            return batch.size();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("User write-behind flush failed", e);
+        }
+    }
+
+    private void write(List<Pending> batch) {
+        for (int attempt = 1; ; attempt++) {
+            BulkOperations ops = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+            batch.forEach(pending -> ops.updateOne(pending.query, pending.update()));
+            try {
+                ops.execute();
+                written.increment(batch.size());
+                break;
+            } catch (BulkOperationException e) {
+                // rejected by the server, retrying won't help. UNORDERED: the others went through
+                for (BulkWriteError error : e.getErrors()) {
+                    log.error("Buffered user update {} dropped: {}", batch.get(error.getIndex()).sets.keySet(), error.getMessage());
+                }
+                failed.increment(e.getErrors().size());
+                written.increment(batch.size() - e.getErrors().size());
+                break;
+            } catch (DataAccessException e) {
+                if (attempt > maxRetries) {
+                    log.error("Dropping {} buffered user updates after {} attempts: {}", batch.size(), attempt, e.getMessage());
+                    failed.increment(batch.size());
+                    break;
+                }
+                log.warn("User write-behind flush failed (attempt {}), retrying: {}", attempt, e.getMessage());
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MILLIS * attempt);
+                } catch (InterruptedException interrupted) {
+                    // shutting down, one last attempt without waiting
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        // a timeout may have written part of it too, so this runs in every case
+        boolean counted = false;
+        for (Pending pending : batch) {
+            if (pending.id != null) {
+                userCache.invalidate(pending.id);
+            } else {
+                userCache.invalidateAll();
+            }
+            // writing a counted field makes the rollup stale
+            counted |= UserRollups.counts(pending.sets.keySet());
+        }
+        if (counted) {
+            userRollups.recordChange();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.springboot.mongodb.springmongo.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight singleFlight = new SingleFlight(registry);
+
+    private double calls(String operation, String result) {
+        var counter = registry.find("singleflight.calls").tag("operation", operation).tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void call_shouldShareOneReadBetweenIdenticalConcurrentCalls() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        Object result = new Object();
+
+        CompletableFuture<SingleFlight.Outcome<Object>> leader = CompletableFuture.supplyAsync(() -> singleFlight.call("findOne", List.of("Alice"), () -> {
+            reads.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<SingleFlight.Outcome<Object>> follower = CompletableFuture.supplyAsync(
+                () -> singleFlight.call("findOne", List.of("Alice"), () -> { reads.incrementAndGet(); return new Object(); }));
+        // other parameters are another read
+        assertEquals("Bob", singleFlight.execute("findOne", List.of("Bob"), () -> "Bob"));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertSame(result, leader.get(5, TimeUnit.SECONDS).value());
+        assertSame(result, follower.get(5, TimeUnit.SECONDS).value());
+        assertFalse(leader.get().coalesced());
+        assertTrue(follower.get().coalesced());
+        assertEquals(1, reads.get());
+        assertEquals(2, calls("findOne", "leader"));
+        assertEquals(1, calls("findOne", "coalesced"));
+
+        // finished reads are not kept
+        assertEquals("new", singleFlight.execute("findOne", List.of("Alice"), () -> "new"));
+    }
+
+    @Test
+    void call_shouldPassTheFailureToEveryCaller() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> singleFlight.execute("findDistinctNames", List.of(), () -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("down");
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> follower = CompletableFuture.supplyAsync(() -> singleFlight.execute("findDistinctNames", List.of(), () -> "other"));
+        Thread.sleep(100);
+        release.countDown();
+
+        Exception leaderError = assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        Exception followerError = assertThrows(Exception.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, leaderError.getCause());
+        assertInstanceOf(IllegalStateException.class, followerError.getCause());
+        assertEquals(1, calls("findDistinctNames", "coalesced"));
+    }
+}
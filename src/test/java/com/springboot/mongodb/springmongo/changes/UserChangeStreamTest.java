@@ -0,0 +1,109 @@
+package com.springboot.mongodb.springmongo.changes;
+
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class UserChangeStreamTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final MongoCollection<Document> tokens = mock(MongoCollection.class);
+    private final UserChangeSink first = mock(UserChangeSink.class);
+    private final UserChangeSink second = mock(UserChangeSink.class);
+    private final UserChangeStream stream = new UserChangeStream();
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.getCollection(UserChangeStream.TOKENS)).thenReturn(tokens);
+        ReflectionTestUtils.setField(stream, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(stream, "sinks", List.of(first, second));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeStreamDocument<Document> change(String token) {
+        ChangeStreamDocument<Document> change = mock(ChangeStreamDocument.class);
+        when(change.getResumeToken()).thenReturn(new BsonDocument("_data", new BsonString(token)));
+        return change;
+    }
+
+    @Test
+    void dispatch_shouldGiveTheBatchToEverySinkAndSaveTheLastToken() {
+        List<ChangeStreamDocument<Document>> batch = List.of(change("a"), change("b"));
+
+        stream.dispatch("users", batch);
+
+        verify(first).onChanges(batch);
+        verify(second).onChanges(batch);
+        ArgumentCaptor<Document> saved = ArgumentCaptor.forClass(Document.class);
+        verify(tokens).replaceOne(any(Bson.class), saved.capture(), any(ReplaceOptions.class));
+        assertEquals("users", saved.getValue().get("_id"));
+        assertEquals(new BsonDocument("_data", new BsonString("b")), saved.getValue().get("token"));
+    }
+
+    @Test
+    void dispatch_shouldResyncAFailingSinkAndKeepFeedingTheOthers() {
+        List<ChangeStreamDocument<Document>> batch = List.of(change("a"));
+        doThrow(new IllegalStateException("boom")).when(first).onChanges(batch);
+
+        stream.dispatch("users", batch);
+
+        verify(first).onGap();
+        verify(second).onChanges(batch);
+        verify(second, never()).onGap();
+        verify(tokens).replaceOne(any(Bson.class), any(Document.class), any(ReplaceOptions.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void watch_withoutTokenShouldOpenTheStreamBeforeTheSinksResync() {
+        MongoCollection<BsonDocument> savedTokens = mock(MongoCollection.class);
+        FindIterable<BsonDocument> noToken = mock(FindIterable.class);
+        when(tokens.withDocumentClass(BsonDocument.class)).thenReturn(savedTokens);
+        when(savedTokens.find(any(Bson.class))).thenReturn(noToken);
+        MongoCollection<Document> users = mock(MongoCollection.class);
+        ChangeStreamIterable<Document> watch = mock(ChangeStreamIterable.class, Answers.RETURNS_SELF);
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = mock(MongoChangeStreamCursor.class);
+        when(mongoTemplate.getCollectionName(any())).thenReturn("users");
+        when(mongoTemplate.getCollection("users")).thenReturn(users);
+        when(users.watch()).thenReturn(watch);
+        doReturn(cursor).when(watch).cursor();
+        when(cursor.getResumeToken()).thenReturn(new BsonDocument("_data", new BsonString("start")));
+        when(cursor.tryNext()).thenAnswer(invocation -> {
+            stream.stop();
+            return null;
+        });
+        ReflectionTestUtils.setField(stream, "batchSize", 100);
+        ReflectionTestUtils.setField(stream, "maxAwait", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(stream, "running", true);
+
+        ReflectionTestUtils.invokeMethod(stream, "watch");
+
+        // a write between the resync and opening the stream would be lost the other way round
+        InOrder order = inOrder(watch, first);
+        order.verify(watch).cursor();
+        order.verify(first).onGap();
+        verify(tokens).replaceOne(any(Bson.class), any(Document.class), any(ReplaceOptions.class));
+    }
+}
@@ -0,0 +1,91 @@
+package com.springboot.mongodb.springmongo.config;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MongoConfigTest {
+
+    private final MongoConfig mongoConfig = new MongoConfig();
+
+    @Test
+    void customizer_shouldApplyConfiguredSettings() {
+        MongoClientProperties properties = new MongoClientProperties();
+        properties.getPool().setMaxSize(200);
+        properties.getPool().setMaxWaitTime(Duration.ofSeconds(2));
+        properties.setSocketTimeout(Duration.ofSeconds(30));
+        properties.setCompressors(List.of("zstd", "snappy"));
+        properties.setReadPreference("secondaryPreferred");
+        properties.setReadConcern("majority");
+
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+        mongoConfig.mongoClientPropertiesCustomizer(properties).customize(builder);
+        MongoClientSettings settings = builder.build();
+
+        assertEquals(200, settings.getConnectionPoolSettings().getMaxSize());
+        assertEquals(2000, settings.getConnectionPoolSettings().getMaxWaitTime(TimeUnit.MILLISECONDS));
+        assertEquals(30000, settings.getSocketSettings().getReadTimeout(TimeUnit.MILLISECONDS));
+        assertEquals(List.of("zstd", "snappy"), settings.getCompressorList().stream().map(c -> c.getName()).toList());
+        assertEquals(ReadPreference.secondaryPreferred(), settings.getReadPreference());
+        assertEquals(ReadConcern.MAJORITY, settings.getReadConcern());
+    }
+
+    @Test
+    void customizer_shouldKeepDefaultsForUnsetProperties() {
+        MongoClientSettings defaults = MongoClientSettings.builder().build();
+
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+        mongoConfig.mongoClientPropertiesCustomizer(new MongoClientProperties()).customize(builder);
+        MongoClientSettings settings = builder.build();
+
+        assertEquals(defaults.getConnectionPoolSettings(), settings.getConnectionPoolSettings());
+        assertEquals(defaults.getReadPreference(), settings.getReadPreference());
+        assertTrue(settings.getCompressorList().isEmpty());
+    }
+
+    @Test
+    void compressors_shouldRejectUnknownName() {
+        assertThrows(IllegalArgumentException.class, () -> MongoConfig.compressors(List.of("lz4")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void template_shouldApplyCollectionOverrides() {
+        MongoClientProperties.CollectionSettings users = new MongoClientProperties.CollectionSettings();
+        users.setReadPreference("secondary");
+        users.setReadConcern("majority");
+        MongoConfig.CollectionSettingsMongoTemplate template = new MongoConfig.CollectionSettingsMongoTemplate(
+                mock(MongoDatabaseFactory.class),
+                new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()),
+                Map.of("users", users));
+
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        MongoCollection<Document> withReadPreference = mock(MongoCollection.class);
+        MongoCollection<Document> withReadConcern = mock(MongoCollection.class);
+        when(collection.getNamespace()).thenReturn(new MongoNamespace("springmongo", "users"));
+        when(collection.withReadPreference(ReadPreference.secondary())).thenReturn(withReadPreference);
+        when(withReadPreference.withReadConcern(ReadConcern.MAJORITY)).thenReturn(withReadConcern);
+
+        assertSame(withReadConcern, template.prepareCollection(collection));
+
+        MongoCollection<Document> other = mock(MongoCollection.class);
+        when(other.getNamespace()).thenReturn(new MongoNamespace("springmongo", "index"));
+        assertSame(other, template.prepareCollection(other));
+    }
+}
@@ -4,6 +4,7 @@ package com.springboot.mongodb.springmongo.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.MatchedNestedUpdateRequest;
 import com.springboot.mongodb.springmongo.request.NestedUpdateRequest;
 import com.springboot.mongodb.springmongo.service.UpdateService;
 
@@ -14,6 +15,8 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Map;
+
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -116,5 +119,23 @@ public class UpdateControllerTest {
                 .andExpect(content().string("Updated nested address1 successfully"));
     }
 
+    @Test
+    void testUpdateMatchedNested() throws Exception {
+        MatchedNestedUpdateRequest request = new MatchedNestedUpdateRequest();
+        request.setCompany(Map.of("title", "Software Engineer"));
+        request.setSet(Map.of("email", "new@example.com"));
+
+        when(updateService.updateMatchedNested(eq("102"), any(MatchedNestedUpdateRequest.class))).thenReturn(true);
+        when(updateService.updateMatchedNested(eq("999"), any(MatchedNestedUpdateRequest.class))).thenReturn(false);
 
+        mockMvc.perform(put("/api/users/update/{id}/matched", "102")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Updated successfully"));
+        mockMvc.perform(put("/api/users/update/{id}/matched", "999")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isNotFound());
+    }
 }
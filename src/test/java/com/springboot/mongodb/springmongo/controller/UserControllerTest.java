@@ -1,20 +1,37 @@
 package com.springboot.mongodb.springmongo.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
+import com.mongodb.client.MongoCursor;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import com.springboot.mongodb.springmongo.mapping.RawUserJson;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.RawUsers;
+import com.springboot.mongodb.springmongo.response.UserCacheStats;
+import com.springboot.mongodb.springmongo.response.UserPage;
+import com.springboot.mongodb.springmongo.service.RawUserReads;
 import com.springboot.mongodb.springmongo.service.UserService;
+import jakarta.servlet.ServletException;
+import org.bson.RawBsonDocument;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -29,6 +46,9 @@ public class UserControllerTest {
     @MockBean   // deprecated, use this later  @MockitoBean and @MockitoSpyBean.
     private UserService userService;
 
+    @MockBean
+    private RawUserReads rawUserReads;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
 
@@ -64,6 +84,83 @@ public class UserControllerTest {
     }
 
 
+    @Test
+    void testStreamUsers_Ndjson() throws Exception {
+        User first = new User();
+        first.setId("101");
+        User second = new User();
+        second.setId("102");
+
+        when(userService.streamAllUsers()).thenReturn(Stream.of(first, second));
+
+        MvcResult result = mockMvc.perform(get("/api/users/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("101", objectMapper.readTree(lines[0]).get("id").asText());
+        assertEquals("102", objectMapper.readTree(lines[1]).get("id").asText());
+    }
+
+    @Test
+    void testStreamUsers_JsonArray() throws Exception {
+        User user = new User();
+        user.setId("101");
+
+        when(userService.streamAllUsers()).thenReturn(Stream.of(user));
+
+        MvcResult result = mockMvc.perform(get("/api/users/stream").param("format", "array"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value("101"));
+    }
+
+    @Test
+    void testGetUsersPage_WithProjection() throws Exception {
+        User user = new User();
+        user.setId("101");
+        user.setRollNumber(7);
+
+        when(userService.findPage(eq(10), eq("id"), isNull(), anySet()))
+                .thenReturn(new UserPage<>(List.of(user), 1, "next"));
+
+        mockMvc.perform(get("/api/users/page").param("size", "10").param("fields", "rollnumber"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextToken").value("next"))
+                .andExpect(jsonPath("$.content[0].id").value("101"))
+                .andExpect(jsonPath("$.content[0].rollnumber").value(7))
+                .andExpect(jsonPath("$.content[0].age").doesNotExist());
+    }
+
+    @Test
+    void testGetUsersPage_BadRequest() throws Exception {
+        when(userService.findPage(anyInt(), anyString(), any(), any()))
+                .thenThrow(new BadRequestException("Invalid page token"));
+
+        mockMvc.perform(get("/api/users/page").param("token", "garbage"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid page token"));
+    }
+
+    @Test
+    void testGetUsersPage_otherIllegalArgumentIsNotABadRequest() {
+        // a bug, not bad input: not mapped to 400 and its message not echoed
+        when(userService.findPage(anyInt(), anyString(), any(), any()))
+                .thenThrow(new IllegalArgumentException("Invalid BSON field name company.$[x]"));
+
+        ServletException e = assertThrows(ServletException.class, () -> mockMvc.perform(get("/api/users/page")));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+    }
+
     @Test
     void testGetUserById() throws Exception {
         User user = new User();
@@ -76,6 +173,40 @@ public class UserControllerTest {
                 .andExpect(jsonPath("$.id").value("102"));
     }
 
+    @Test
+    void testGetUserById_rawRead() throws Exception {
+        RawBsonDocument stored = RawBsonDocument.parse("{\"_id\": \"102\", \"rollNumber\": 7}");
+        @SuppressWarnings("unchecked")
+        MongoCursor<RawBsonDocument> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenReturn(true, false);
+        when(cursor.next()).thenReturn(stored);
+        RawUserJson rawUserJson = mock(RawUserJson.class);
+        doAnswer(invocation -> {
+            JsonGenerator generator = invocation.getArgument(1);
+            generator.writeRawValue("{\"id\":\"102\",\"rollnumber\":7}");
+            return null;
+        }).when(rawUserJson).write(eq(stored), any(JsonGenerator.class), isNull());
+        when(rawUserReads.enabled()).thenReturn(true);
+        when(rawUserReads.findById("102", null, null)).thenReturn(new RawUsers(() -> cursor, true, null, rawUserJson));
+
+        mockMvc.perform(get("/api/users/102"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.rollnumber").value(7));
+        verify(userService, never()).getUserById(any());
+        verify(cursor).close();
+    }
+
+    @Test
+    void testGetCacheStats() throws Exception {
+        when(userService.getCacheStats()).thenReturn(new UserCacheStats(2, 10, 2, 10 / 12.0, 0, 1.5, 0));
+
+        mockMvc.perform(get("/api/users/cache/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hits").value(10))
+                .andExpect(jsonPath("$.misses").value(2));
+    }
+
     @Test
     void testDeleteUser() throws Exception {
         mockMvc.perform(delete("/api/users/104"))
@@ -86,7 +217,7 @@ public class UserControllerTest {
 
     @Test
     void testUpdateUser_NotFound() throws Exception {
-        when(userService.isExistsById("999")).thenReturn(false);
+        when(userService.replaceUser(eq("999"), any(User.class))).thenReturn(null);
 
         mockMvc.perform(put("/api/users/999")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -99,14 +230,16 @@ public class UserControllerTest {
         User updatedUser = new User();
         updatedUser.setId("103");
 
-        when(userService.isExistsById("103")).thenReturn(true);
-        when(userService.saveUser(any(User.class))).thenReturn(updatedUser);
+        when(userService.replaceUser(eq("103"), any(User.class))).thenReturn(updatedUser);
 
         mockMvc.perform(put("/api/users/103")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(updatedUser)))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.id").value("103"));
+
+        // a single conditional write, no exists check first
+        verify(userService, never()).isExistsById(anyString());
     }
 
 
@@ -118,7 +251,6 @@ public class UserControllerTest {
         updatedUser.setId(id);
         updatedUser.setTechnology("Spring Boot");
 
-        when(userService.isExistsById(id)).thenReturn(true);
         when(userService.patchUser(eq(id), anyMap())).thenReturn(updatedUser);
 
         mockMvc.perform(patch("/api/users/{id}", id)
@@ -133,16 +265,15 @@ public class UserControllerTest {
         String id = "103";
         Map<String, Object> updates = Map.of("technology", "Spring Boot");
 
-        // Mock the service to say user does NOT exist
-        when(userService.isExistsById(id)).thenReturn(false);
+        // findAndModify matched nothing, the service returns null
+        when(userService.patchUser(eq(id), anyMap())).thenReturn(null);
 
         mockMvc.perform(patch("/api/users/{id}", id)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(updates)))
                 .andExpect(status().isNotFound());
 
-        // Verify patchUser is never called
-        verify(userService, never()).patchUser(anyString(), anyMap());
+        verify(userService, never()).isExistsById(anyString());
     }
 
     @Test
@@ -158,7 +289,6 @@ public class UserControllerTest {
         updatedUser.setId(id);
         updatedUser.setTechnology("Spring Boot");
 
-        when(userService.isExistsById(id)).thenReturn(true);
         when(userService.jsonPatchUpdate(eq(id), any(JsonPatch.class))).thenReturn(updatedUser);
 
         mockMvc.perform(patch("/api/users/jsonpatch/{id}", id)
@@ -172,7 +302,7 @@ public class UserControllerTest {
     void patchUser_jsonPatch_UserNotFound() throws Exception {
         String userId = "123";
 
-        when(userService.isExistsById(userId)).thenReturn(false);
+        when(userService.jsonPatchUpdate(eq(userId), any(JsonPatch.class))).thenThrow(new UserNotFoundException(userId));
 
         String patchJson = "[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Spring\" }]";
 
@@ -181,14 +311,13 @@ public class UserControllerTest {
                         .content(patchJson))
                 .andExpect(status().isNotFound());
 
-        verify(userService, never()).jsonPatchUpdate(anyString(), any());
+        verify(userService, never()).isExistsById(anyString());
     }
 
     @Test
     void patchUser_jsonPatch_PatchFails_ReturnsInternalServerError() throws Exception {
         String userId = "123";
 
-        when(userService.isExistsById(userId)).thenReturn(true);
         when(userService.jsonPatchUpdate(eq(userId), any(JsonPatch.class))).thenReturn(null);
 
         String patchJson = "[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Spring\" }]";
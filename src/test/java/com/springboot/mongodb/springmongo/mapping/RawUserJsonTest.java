@@ -0,0 +1,112 @@
+package com.springboot.mongodb.springmongo.mapping;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.model.Address;
+import com.springboot.mongodb.springmongo.model.Company;
+import com.springboot.mongodb.springmongo.model.Location;
+import com.springboot.mongodb.springmongo.model.Name;
+import com.springboot.mongodb.springmongo.model.User;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RawUserJsonTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static User user() {
+        User user = new User();
+        user.setId("100");
+        user.setRollNumber(7);
+        user.setName(new Name("Ranjith", "K"));
+        user.setDateOfJoining("2020-01-01");
+        user.setAge(31);
+        user.setTechnology("Java");
+        user.setCompany(List.of(new Company("IBS", "a@ibs.com", null,
+                new Location("India", List.of(new Address("Infopark", "Kakkanad"))))));
+        user.setSkillSet(List.of("java", "mongo"));
+        user.setActive(true);
+        user.getExtras().put("nickname", "Ranju");
+        return user;
+    }
+
+    private static MongoMappingContext context(boolean compact) {
+        MongoMappingContext context = new MongoMappingContext();
+        if (compact) {
+            context.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+        }
+        context.afterPropertiesSet();
+        return context;
+    }
+
+    private static RawBsonDocument stored(MongoMappingContext context, User user) {
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setTypeMapper(new DefaultMongoTypeMapper(null));
+        converter.afterPropertiesSet();
+        Document document = new Document();
+        converter.write(user, document);
+        return new RawBsonDocument(document, new DocumentCodec());
+    }
+
+    private JsonNode transcode(MongoMappingContext context, RawBsonDocument document, Set<String> properties) throws Exception {
+        RawUserJson rawUserJson = new RawUserJson();
+        ReflectionTestUtils.setField(rawUserJson, "mappingContext", context);
+        ReflectionTestUtils.setField(rawUserJson, "objectMapper", objectMapper);
+        StringWriter json = new StringWriter();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            rawUserJson.write(document, generator, properties);
+        }
+        return objectMapper.readTree(json.toString());
+    }
+
+    @Test
+    void write_shouldGiveTheSameJsonAsTheEntity() throws Exception {
+        User user = user();
+        JsonNode expected = objectMapper.valueToTree(user);
+
+        assertEquals(expected, transcode(context(false), stored(context(false), user), null));
+        // short stored names are mapped back as well
+        assertEquals(expected, transcode(context(true), stored(context(true), user), null));
+        assertTrue(transcode(context(false), stored(context(false), user), null).has("rollnumber"));
+    }
+
+    @Test
+    void write_shouldFillMissingFieldsAndDropUnmappedOnes() throws Exception {
+        ObjectId id = new ObjectId();
+        Document stored = new Document("_id", id).append("name", new Document("firstname", "Soumya"))
+                .append("company", List.of(new Document("title", "UST")))
+                .append("_class", "com.example.User");
+
+        JsonNode json = transcode(context(false), new RawBsonDocument(stored, new DocumentCodec()), null);
+
+        User read = new User();
+        read.setId(id.toHexString());
+        read.setName(new Name("Soumya", null));
+        read.setCompany(List.of(new Company("UST", null, null, null)));
+        assertEquals(objectMapper.valueToTree(read), json);
+    }
+
+    @Test
+    void write_shouldOnlyWriteTheRequestedFields() throws Exception {
+        Document stored = new Document("_id", "100").append("age", 31);
+
+        JsonNode json = transcode(context(false), new RawBsonDocument(stored, new DocumentCodec()), Set.of("age", "rollNumber"));
+
+        assertEquals(objectMapper.readTree("{\"id\":\"100\",\"age\":31,\"rollnumber\":0}"), json);
+    }
+}
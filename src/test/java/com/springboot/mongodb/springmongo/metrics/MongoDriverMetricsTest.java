@@ -0,0 +1,55 @@
+package com.springboot.mongodb.springmongo.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MongoDriverMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MongoDriverMetrics metrics = new MongoDriverMetrics(registry);
+    private final ServerId serverId = new ServerId(new ClusterId(), new ServerAddress());
+
+    @Test
+    void commandSucceeded_shouldRecordDocumentsPerBatch() {
+        BsonDocument response = BsonDocument.parse("{ok: 1, cursor: {id: 0, ns: 'springmongo.users', firstBatch: [{_id: 1}, {_id: 2}, {_id: 3}]}}");
+
+        metrics.commandSucceeded(new CommandSucceededEvent(null, 1, 1, new ConnectionDescription(serverId),
+                "springmongo", "find", response, 1_000_000));
+
+        DistributionSummary documents = registry.get("mongodb.driver.commands.documents")
+                .tag("command", "find").tag("collection", "users").summary();
+        assertEquals(1, documents.count());
+        assertEquals(3, documents.totalAmount());
+    }
+
+    @Test
+    void commandSucceeded_shouldIgnoreCommandsWithoutCursor() {
+        metrics.commandSucceeded(new CommandSucceededEvent(null, 1, 1, new ConnectionDescription(serverId),
+                "springmongo", "update", BsonDocument.parse("{ok: 1, n: 1}"), 1_000_000));
+
+        assertNull(registry.find("mongodb.driver.commands.documents").summary());
+    }
+
+    @Test
+    void connectionCheckedOut_shouldRecordWaitTime() {
+        metrics.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId), 1, TimeUnit.MILLISECONDS.toNanos(5)));
+
+        Timer wait = registry.get("mongodb.driver.pool.checkout.wait").tag("outcome", "success").timer();
+        assertEquals(1, wait.count());
+        assertEquals(5, wait.totalTime(TimeUnit.MILLISECONDS), 0.001);
+    }
+}
@@ -0,0 +1,83 @@
+package com.springboot.mongodb.springmongo.metrics;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.springboot.mongodb.springmongo.response.QueryPlanSummary;
+import com.springboot.mongodb.springmongo.response.SlowQuery;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlowQueryLogTest {
+
+    private final ServerId serverId = new ServerId(new ClusterId(), new ServerAddress());
+    private final SlowQueryLog slowQueryLog = new SlowQueryLog(Duration.ofMillis(100), 2);
+
+    @AfterEach
+    void tearDown() {
+        slowQueryLog.close();
+    }
+
+    private void run(int requestId, String commandName, String command, long elapsedMillis) {
+        ConnectionDescription connection = new ConnectionDescription(serverId);
+        slowQueryLog.commandStarted(new CommandStartedEvent(null, 1, requestId, connection, "springmongo", commandName,
+                BsonDocument.parse(command)));
+        slowQueryLog.commandSucceeded(new CommandSucceededEvent(null, 1, requestId, connection, "springmongo", commandName,
+                BsonDocument.parse("{ok: 1}"), TimeUnit.MILLISECONDS.toNanos(elapsedMillis)));
+    }
+
+    @Test
+    void shouldKeepOnlySlowQueriesNewestFirst() {
+        run(1, "find", "{find: 'users', filter: {age: {$gt: 39}}}", 150);
+        run(2, "find", "{find: 'users', filter: {age: 1}}", 5);
+        run(3, "count", "{count: 'users', query: {}}", 300);
+
+        List<SlowQuery> slowQueries = slowQueryLog.slowQueries();
+        assertEquals(2, slowQueries.size());
+        assertEquals("count", slowQueries.get(0).getCommandName());
+        assertEquals(300, slowQueries.get(0).getElapsedMillis());
+        assertEquals("users", slowQueries.get(1).getCollection());
+        assertTrue(slowQueries.get(1).getCommand().contains("$gt"));
+    }
+
+    @Test
+    void shouldDropOldestWhenFullAndIgnoreUntrackedCommands() {
+        run(1, "find", "{find: 'users', filter: {n: 1}}", 150);
+        run(2, "find", "{find: 'users', filter: {n: 2}}", 150);
+        run(3, "insert", "{insert: 'users', documents: []}", 500);
+        run(4, "find", "{find: 'users', filter: {n: 3}}", 150);
+
+        List<SlowQuery> slowQueries = slowQueryLog.slowQueries();
+        assertEquals(2, slowQueries.size());
+        assertTrue(slowQueries.get(0).getCommand().contains("3"));
+        assertTrue(slowQueries.get(1).getCommand().contains("2"));
+    }
+
+    @Test
+    void shouldAttachPlanInTheBackground() throws InterruptedException {
+        QueryPlanSummary plan = new QueryPlanSummary();
+        plan.setCollectionScan(true);
+        slowQueryLog.setPlanner((database, command) -> {
+            assertEquals("users", command.getString("find").getValue());
+            return plan;
+        });
+
+        run(1, "find", "{find: 'users', filter: {age: 1}}", 150);
+
+        SlowQuery slowQuery = slowQueryLog.slowQueries().get(0);
+        for (int i = 0; i < 100 && slowQuery.getPlan() == null; i++) {
+            Thread.sleep(10);
+        }
+        assertSame(plan, slowQuery.getPlan());
+    }
+}
@@ -0,0 +1,240 @@
+package com.springboot.mongodb.springmongo.rollup;
+
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.UserRollupView;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UserRollupsTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulkOps = mock(BulkOperations.class, Answers.RETURNS_SELF);
+    private UserRollups userRollups;
+
+    private UserRollups rollups(String mode) {
+        return rollups(mode, Duration.ofHours(1));
+    }
+
+    private UserRollups rollups(String mode, Duration maxAge) {
+        userRollups = new UserRollups(mode, Duration.ofHours(1), Duration.ZERO, maxAge, Duration.ZERO);
+        ReflectionTestUtils.setField(userRollups, "mongoTemplate", mongoTemplate);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(UserRollups.COLLECTION))).thenReturn(bulkOps);
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class))).thenReturn(new AggregationResults<>(List.of(
+                group("male", "java", true, 30, 4),
+                group("female", "java", false, 24, 2),
+                group("female", "python", true, 41, 3),
+                group(null, null, false, 26, 1)), new Document()));
+        return userRollups;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (userRollups != null) {
+            userRollups.close();
+        }
+    }
+
+    private static Document group(String gender, String technology, boolean active, int age, int count) {
+        return new Document("_id", new Document("gender", gender).append("technology", technology)
+                .append("active", active).append("age", age)).append("count", count);
+    }
+
+    private static User user(String gender, String technology, boolean active, int age) {
+        User user = new User();
+        user.setGender(gender);
+        user.setTechnology(technology);
+        user.setActive(active);
+        user.setAge(age);
+        return user;
+    }
+
+    @Test
+    void rebuild_shouldServeCountsFromMemory() {
+        UserRollups rollups = rollups("writes");
+        assertTrue(rollups.countOlderThan(25).isEmpty());   // not built yet -> the services query
+
+        UserRollupView view = rollups.rebuild();
+
+        assertTrue(view.isCurrent());
+        assertEquals(10, view.getTotal());
+        assertEquals(Map.of("female", 5L, "male", 4L, "none", 1L), view.getByGender());
+        assertEquals(Map.of("java", 6L, "python", 3L, "none", 1L), view.getByTechnology());
+        assertEquals(Map.of("true", 7L, "false", 3L), view.getByActive());
+        assertEquals(Map.of("20-29", 3L, "30-39", 4L, "40-49", 3L), view.getByAgeBucket());
+        assertEquals(8, rollups.countOlderThan(25).getAsLong());
+        assertEquals(3, rollups.countOlderThan(40).getAsLong());
+        assertEquals(List.of(new Document("_id", null).append("count", 1L),
+                        new Document("_id", "female").append("count", 3L),
+                        new Document("_id", "male").append("count", 4L)),
+                rollups.countByGenderOlderThan(25).orElseThrow());
+        verify(bulkOps, times(4)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOps).remove(any(Query.class));
+    }
+
+    @Test
+    void rebuild_shouldReadValuesStoredWithTheWrongType() {
+        UserRollups rollups = rollups("writes");
+        Document ageAsString = new Document("_id", new Document("gender", "male").append("technology", "java")
+                .append("active", true).append("age", "60")).append("count", 2);
+        Document oddTypes = new Document("_id", new Document("gender", 1).append("technology", List.of("go"))
+                .append("active", "yes").append("age", "sixty")).append("count", 1);
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(List.of(ageAsString, oddTypes), new Document()));
+
+        UserRollupView view = rollups.rebuild();
+
+        assertTrue(view.isCurrent());
+        assertEquals(3, view.getTotal());
+        assertEquals(2, rollups.countOlderThan(59).getAsLong());
+        assertEquals(Map.of("male", 2L, "none", 1L), view.getByGender());
+        assertEquals(Map.of("java", 2L, "none", 1L), view.getByTechnology());
+        assertEquals(Map.of("true", 2L, "false", 1L), view.getByActive());
+    }
+
+    @Test
+    void writes_shouldApplyInsertsAndRemovesAndGoStaleOnOtherChanges() {
+        UserRollups rollups = rollups("writes");
+        rollups.rebuild();
+
+        rollups.recordInsert(user("male", "go", true, 50));
+        rollups.recordRemove(user("male", "java", true, 30));
+        assertTrue(rollups.current());
+        assertEquals(8, rollups.countOlderThan(25).getAsLong());
+        assertEquals(Map.of("java", 5L, "python", 3L, "go", 1L, "none", 1L), rollups.view().getByTechnology());
+        // both changed cells are written with their absolute count
+        verify(bulkOps, timeout(2_000).times(4 + 2)).upsert(any(Query.class), any(Update.class));
+
+        rollups.recordChange();
+        assertFalse(rollups.current());
+        assertTrue(rollups.countOlderThan(25).isEmpty());
+        assertTrue(rollups.countByGenderOlderThan(25).isEmpty());
+    }
+
+    @Test
+    void writes_shouldGoStaleWhenRemovingAnUncountedUser() {
+        UserRollups rollups = rollups("writes");
+        rollups.rebuild();
+
+        rollups.recordRemove(user("male", "cobol", true, 70));
+
+        assertFalse(rollups.current());
+    }
+
+    @Test
+    void changeStreamAndOff_shouldIgnoreTheServiceHooks() {
+        UserRollups rollups = rollups("change-stream");
+        rollups.rebuild();
+
+        rollups.recordInsert(user("male", "go", true, 50));
+        rollups.recordChange();
+
+        assertTrue(rollups.current());
+        assertEquals(8, rollups.countOlderThan(25).getAsLong());
+
+        // the watcher moves a user from one cell to another
+        rollups.apply(new UserRollups.Cell("male", "java", true, 30), new UserRollups.Cell("male", "java", true, 20));
+        assertEquals(7, rollups.countOlderThan(25).getAsLong());
+        assertEquals(10, rollups.view().getTotal());
+        rollups.close();
+
+        rollups = rollups("off");
+        rollups.recordChange();
+        assertFalse(rollups.current());
+    }
+
+    @Test
+    void writes_duringARebuildShouldNotBeLost() {
+        UserRollups rollups = rollups("writes");
+        AggregationResults<Document> results = new AggregationResults<>(List.of(group("male", "java", true, 30, 4)), new Document());
+        when(mongoTemplate.aggregate(any(TypedAggregation.class), eq(Document.class))).thenAnswer(invocation -> {
+            // inserted while the aggregation runs, it may not be in its result
+            rollups.recordInsert(user("male", "go", true, 50));
+            return results;
+        });
+
+        rollups.rebuild();
+
+        // the rebuilt cells would miss the insert, they are not served and another rebuild follows
+        assertFalse(rollups.current());
+        assertTrue(rollups.countOlderThan(25).isEmpty());
+    }
+
+    @Test
+    void writes_shouldNotTrustTheRollupLongerThanMaxAge() throws InterruptedException {
+        // writes of other nodes / the shell are not seen in writes mode, an old rollup may be off by them
+        UserRollups rollups = rollups("writes", Duration.ofMillis(500));
+        rollups.rebuild();
+        assertTrue(rollups.current());
+
+        Thread.sleep(600);
+
+        // not served, and rebuilt in the background because someone asked (no refresh-interval)
+        assertTrue(rollups.countOlderThan(25).isEmpty());
+        verify(mongoTemplate, timeout(2_000).times(2)).aggregate(any(TypedAggregation.class), eq(Document.class));
+        assertTrue(rollups.current());
+    }
+
+    @Test
+    void writes_shouldOnlyGoStaleForUpdatesOfCountedFields() {
+        UserRollups rollups = rollups("writes");
+        rollups.rebuild();
+
+        rollups.recordChange(new Update().set("favoriteFruit", "Mango").set("company.0.email", "a@b.c"));
+        assertTrue(rollups.current());
+
+        rollups.recordChange(new Update().set("age", 50));
+        assertFalse(rollups.current());
+    }
+
+    @Test
+    void writes_shouldMoveAnUpdatedUserBetweenCellsFromItsPreImage() {
+        UserRollups rollups = rollups("writes");
+        rollups.rebuild();
+        User before = user("male", "java", true, 30);
+
+        // PATCH {"age": 20, "gender": null}
+        rollups.recordUpdate(before, new Update().set("age", 20).unset("gender"));
+        assertTrue(rollups.current());
+        assertEquals(7, rollups.countOlderThan(25).getAsLong());
+        assertEquals(Map.of("female", 5L, "male", 3L, "none", 2L), rollups.view().getByGender());
+
+        // PUT of the whole user
+        rollups.recordUpdate(user("female", "java", false, 24), user("female", "go", false, 25));
+        assertEquals(Map.of("java", 5L, "python", 3L, "go", 1L, "none", 1L), rollups.view().getByTechnology());
+        assertEquals(10, rollups.view().getTotal());
+        assertTrue(rollups.current());
+
+        // $inc is followed, a path below a counted field is not
+        rollups.recordUpdate(user("female", "python", true, 41), new Update().inc("age", -20));
+        assertEquals(6, rollups.countOlderThan(25).getAsLong());
+        rollups.recordUpdate(user("female", "python", true, 41), new Update().set("age.years", 1));
+        assertFalse(rollups.current());
+    }
+
+    @Test
+    void counts_shouldMatchCountedFieldsAndPathsBelowThem() {
+        assertTrue(UserRollups.counts(List.of("favoriteFruit", "age")));
+        assertTrue(UserRollups.counts(List.of("gender.code")));
+        assertFalse(UserRollups.counts(List.of("company.0.email", "ageGroup")));
+        assertTrue(UserRollups.counts(new Update().unset("active")));
+        assertFalse(UserRollups.counts(new Update().push("skillSet", "go")));
+    }
+}
@@ -0,0 +1,143 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class AggregationServiceTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final AggregationService service = new AggregationService();
+    private TypeBasedAggregationOperationContext context;
+
+    @BeforeEach
+    void setUp() {
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        context = new TypeBasedAggregationOperationContext(User.class, mappingContext, new QueryMapper(converter));
+
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "userFieldRegistry", userFieldRegistry);
+    }
+
+    private AggregationRequest request(String json) throws Exception {
+        return objectMapper.readValue(json, AggregationRequest.class);
+    }
+
+    private List<Document> pipeline(AggregationRequest request) {
+        return service.build(request).toPipeline(context);
+    }
+
+    @Test
+    void build_shouldRenderValidatedPipelineWithOptions() throws Exception {
+        AggregationRequest request = request("""
+                {"pipeline": [
+                   {"match": [{"field": "age", "op": "gt", "value": "25"}, {"field": "skillset", "value": "java"}]},
+                   {"group": {"by": ["gender"], "accumulators": [{"name": "count", "op": "count"},
+                                                                 {"name": "avgAge", "op": "avg", "field": "age"}]}},
+                   {"sort": [{"field": "count", "direction": "desc"}]},
+                   {"limit": 5}],
+                 "allowDiskUse": true, "batchSize": 200}
+                """);
+
+        TypedAggregation<User> aggregation = service.build(request);
+        List<Document> pipeline = aggregation.toPipeline(context);
+
+        // "25" converted to the int type of age, skillset (json name) -> skillSet elements
+        assertEquals(Document.parse("{$match: {$and: [{age: {$gt: 25}}, {skillSet: 'java'}]}}"), pipeline.get(0));
+        assertEquals(Document.parse("{$group: {_id: '$gender', count: {$sum: 1}, avgAge: {$avg: '$age'}}}"), pipeline.get(1));
+        assertEquals(Document.parse("{$sort: {count: -1}}"), pipeline.get(2));
+        assertEquals(5L, ((Number) pipeline.get(3).get("$limit")).longValue());
+        assertTrue(aggregation.getOptions().isAllowDiskUse());
+        assertEquals(200, aggregation.getOptions().getCursorBatchSize());
+    }
+
+    @Test
+    void build_shouldRenderFacetsAndNestedFields() throws Exception {
+        List<Document> pipeline = pipeline(request("""
+                {"pipeline": [{"facet": {
+                    "byName": [{"group": {"by": ["name.firstname"], "accumulators": [{"name": "n", "op": "count"}]}}],
+                    "oldest": [{"sort": [{"field": "age", "direction": "desc"}]}, {"limit": 1}, {"project": ["name", "age"]}]}}]}
+                """));
+
+        Document facet = pipeline.get(0).get("$facet", Document.class);
+        assertEquals(Document.parse("{$group: {_id: '$name.firstname', n: {$sum: 1}}}"), facet.getList("byName", Document.class).get(0));
+        assertEquals(3, facet.getList("oldest", Document.class).size());
+    }
+
+    @Test
+    void build_shouldRejectInvalidSpecs() {
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": []}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"limit\": 1, \"sort\": [{\"field\": \"age\"}]}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"match\": [{\"field\": \"age\", \"op\": \"where\", \"value\": 1}]}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"match\": [{\"field\": \"age\", \"value\": \"old\"}]}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"group\": {\"accumulators\": [{\"name\": \"a.b\", \"op\": \"count\"}]}}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"sort\": [{\"field\": \"$age\"}]}]}")));
+        // a misspelled field is rejected, not matched as extras.agee; extras are addressed explicitly
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"match\": [{\"field\": \"agee\", \"value\": 1}]}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"group\": {\"by\": [\"gendre\"], \"accumulators\": [{\"name\": \"n\", \"op\": \"count\"}]}}]}")));
+        assertDoesNotThrow(() -> service.build(request("{\"pipeline\": [{\"match\": [{\"field\": \"extras.nickname\", \"value\": \"x\"}]}]}")));
+        assertThrows(BadRequestException.class, () -> service.build(request("{\"pipeline\": [{\"limit\": 1}], \"batchSize\": 0}")));
+        assertThrows(BadRequestException.class, () -> service.build(request(
+                "{\"pipeline\": [{\"facet\": {\"a\": [{\"facet\": {\"b\": [{\"limit\": 1}]}}]}}]}")));
+        // after the group only its output fields exist, Spring refuses the reference when rendering
+        assertThrows(BadRequestException.class, () -> service.build(request("""
+                {"pipeline": [{"group": {"by": ["gender"], "accumulators": [{"name": "count", "op": "count"}]}},
+                              {"sort": [{"field": "technology"}]}]}
+                """)));
+    }
+
+    @Test
+    void aggregate_shouldStreamDocumentsAsJson() throws Exception {
+        ObjectId id = new ObjectId();
+        when(mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Document.class)))
+                .thenReturn(Stream.of(new Document("_id", id).append("count", 2)));
+
+        List<RawValue> results = service.aggregate(request("{\"pipeline\": [{\"limit\": 1}]}")).toList();
+
+        assertEquals("{\"_id\": \"" + id.toHexString() + "\", \"count\": 2}", results.get(0).rawValue());
+    }
+
+    @Test
+    void prepare_shouldValidateNowAndOpenTheCursorOnlyWhenRead() throws Exception {
+        assertThrows(BadRequestException.class, () -> service.prepare(request("{\"pipeline\": []}")));
+
+        Supplier<Stream<RawValue>> results = service.prepare(request("{\"pipeline\": [{\"limit\": 1}]}"));
+        verifyNoInteractions(mongoTemplate);
+
+        when(mongoTemplate.aggregateStream(any(TypedAggregation.class), eq(Document.class))).thenReturn(Stream.of(new Document("count", 2)));
+        assertEquals(1, results.get().count());
+    }
+}
@@ -0,0 +1,130 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.WriteConcernError;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.response.BulkIngestResult;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BulkIngestServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    private final BulkOperations bulkOperations = mock(BulkOperations.class);
+
+    private BulkIngestService bulkIngestService;
+
+    @BeforeEach
+    void setUp() {
+        bulkIngestService = new BulkIngestService();
+        ReflectionTestUtils.setField(bulkIngestService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(bulkIngestService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(bulkIngestService, "ingestExecutor", (Executor) Runnable::run);
+        ReflectionTestUtils.setField(bulkIngestService, "userRollups", new UserRollups("off", Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ZERO));
+        ReflectionTestUtils.setField(bulkIngestService, "defaultBatchSize", 2);
+        ReflectionTestUtils.setField(bulkIngestService, "defaultMaxInFlight", 2);
+
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(User.class))).thenReturn(bulkOperations);
+    }
+
+    private static ByteArrayInputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BulkWriteResult inserted(int count) {
+        return BulkWriteResult.acknowledged(count, 0, 0, 0, Collections.emptyList(), Collections.emptyList());
+    }
+
+    @Test
+    void ingest_ndjsonIsSplitIntoBatches() {
+        when(bulkOperations.execute()).thenReturn(inserted(2), inserted(1));
+
+        BulkIngestResult result = bulkIngestService.ingest(body("""
+                {"id": "1", "age": 20}
+                {"id": "2", "age": 21}
+                {"id": "3", "age": 22}
+                """), null, null, false);
+
+        assertNull(result.getError());
+        assertEquals(3, result.getReceived());
+        assertEquals(3, result.getInserted());
+        assertEquals(2, result.getBatches().size());
+        assertEquals(2, result.getBatches().get(1).getOffset());
+        verify(mongoTemplate, times(2)).bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+    }
+
+    @Test
+    void ingest_jsonArrayReportsFailedIndicesInBodyPositions() {
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1);
+        MongoBulkWriteException driverException = new MongoBulkWriteException(inserted(1), List.of(duplicate), (WriteConcernError) null, new ServerAddress(), Collections.emptySet());
+        when(bulkOperations.execute()).thenReturn(inserted(2)).thenThrow(new BulkOperationException("duplicate", driverException));
+
+        BulkIngestResult result = bulkIngestService.ingest(body("""
+                [{"id": "1"}, {"id": "2"}, {"id": "3"}, {"id": "1"}]
+                """), null, null, false);
+
+        assertEquals(4, result.getReceived());
+        assertEquals(3, result.getInserted());
+        assertEquals(1, result.getFailed());
+        assertEquals(List.of(3L), result.getBatches().get(1).getFailedIndices());
+    }
+
+    @Test
+    void ingest_badJsonKeepsWhatWasReadBefore() {
+        when(bulkOperations.execute()).thenReturn(inserted(2));
+
+        BulkIngestResult result = bulkIngestService.ingest(body("""
+                {"id": "1"}
+                {"id": "2"}
+                {"id": oops}
+                """), null, null, false);
+
+        assertNotNull(result.getError());
+        assertEquals(2, result.getReceived());
+        assertEquals(2, result.getInserted());
+    }
+
+    @Test
+    void ingest_batchFailingWithANonDataAccessErrorIsReportedNotThrown() {
+        when(bulkOperations.execute()).thenReturn(inserted(2)).thenThrow(new IllegalStateException("state should be: open"));
+
+        BulkIngestResult result = bulkIngestService.ingest(body("""
+                {"id": "1"}
+                {"id": "2"}
+                {"id": "3"}
+                """), null, null, false);
+
+        assertEquals(3, result.getReceived());
+        assertEquals(2, result.getInserted());
+        assertEquals(1, result.getFailed());
+        assertEquals(List.of(2L), result.getBatches().get(1).getFailedIndices());
+        assertEquals(List.of("state should be: open"), result.getBatches().get(1).getErrors());
+    }
+
+    @Test
+    void ingest_rejectsBadBatchSize() {
+        assertThrows(BadRequestException.class, () -> bulkIngestService.ingest(body("[]"), 0, null, false));
+    }
+}
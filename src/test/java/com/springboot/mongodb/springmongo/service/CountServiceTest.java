@@ -0,0 +1,166 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Condition;
+import com.springboot.mongodb.springmongo.request.CountRequest;
+import com.springboot.mongodb.springmongo.response.CountResult;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.rollup.UserRollups.Cell;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CountServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserRollups userRollups = mock(UserRollups.class);
+    private final CountService countService = new CountService(100, Duration.ofMinutes(10));
+
+    @BeforeEach
+    void setUp() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+
+        IndexOperations indexOps = mock(IndexOperations.class);
+        when(indexOps.getIndexInfo()).thenReturn(List.of(
+                new IndexInfo(List.of(IndexField.create("_id", Sort.Direction.ASC)), "_id_", true, false, null),
+                new IndexInfo(List.of(IndexField.create("name.firstname", Sort.Direction.ASC)), "users_firstname", false, false, null),
+                new IndexInfo(List.of(IndexField.create("extras.status", Sort.Direction.ASC)), "users_status", false, true, null)));
+        when(mongoTemplate.indexOps(User.class)).thenReturn(indexOps);
+        when(userRollups.count(any())).thenReturn(OptionalLong.empty());
+
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", new ObjectMapper());
+        AggregationService aggregationService = new AggregationService();
+        ReflectionTestUtils.setField(aggregationService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(countService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(countService, "aggregationService", aggregationService);
+        ReflectionTestUtils.setField(countService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(countService, "userRollups", userRollups);
+        ReflectionTestUtils.setField(countService, "singleFlight", new SingleFlight(new SimpleMeterRegistry()));
+    }
+
+    private static Condition condition(String field, String op, Object value) {
+        Condition condition = new Condition();
+        condition.setField(field);
+        condition.setOp(op);
+        condition.setValue(value);
+        return condition;
+    }
+
+    private static CountRequest request(Duration maxStaleness, Condition... filter) {
+        CountRequest request = new CountRequest();
+        request.setFilter(List.of(filter));
+        request.setMaxStaleness(maxStaleness);
+        return request;
+    }
+
+    @Test
+    void count_shouldAnswerFromTheRollupWhenItCovers() {
+        when(userRollups.count(any())).thenReturn(OptionalLong.of(7));
+
+        CountResult result = countService.count(request(null, condition("age", "gt", "25"), condition("technology", "in", List.of("java"))));
+
+        assertEquals(new CountResult(7, "rollup", 0, false, null), result);
+        verify(mongoTemplate, never()).count(any(Query.class), eq(User.class));
+
+        Predicate<Cell> filter = countService.rollupFilter(List.of(condition("age", "gt", "25"), condition("technology", "in", List.of("java"))));
+        assertTrue(filter.test(new Cell("male", "java", true, 26)));
+        assertFalse(filter.test(new Cell("male", "java", true, 25)));
+        assertFalse(filter.test(new Cell("male", "go", true, 30)));
+        assertNull(countService.rollupFilter(List.of(condition("name.firstname", "eq", "Alice"))));
+        assertNull(countService.rollupFilter(List.of(condition("gender", "gt", "f"))));
+    }
+
+    @Test
+    void count_shouldQueryWithCoveringHintThenServeFromCacheWithinBudget() {
+        when(mongoTemplate.count(any(Query.class), eq(User.class))).thenReturn(3L, 4L);
+
+        CountResult first = countService.count(request(null, condition("name.firstname", "eq", "Alice")));
+        CountResult cached = countService.count(request(Duration.ofMinutes(1), condition("name.firstname", "eq", "Alice")));
+        CountResult fresh = countService.count(request(Duration.ZERO, condition("name.firstname", "eq", "Alice")));
+
+        assertEquals(new CountResult(3, "query", 0, false, "users_firstname"), first);
+        assertEquals("cache", cached.getSource());
+        assertEquals(3, cached.getCount());
+        assertEquals(4, fresh.getCount());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).count(query.capture(), eq(User.class));
+        assertEquals("users_firstname", query.getValue().getHint());
+
+        // sparse index -> no hint, it would miss the users without a status
+        countService.count(request(null, condition("extras.status", "eq", "inactive")));
+        verify(mongoTemplate).count(argThat((Query q) -> q.getHint() == null), eq(User.class));
+    }
+
+    @Test
+    void count_shouldEstimateAnEmptyFilterOnlyWhenAllowed() {
+        when(mongoTemplate.estimatedCount(User.class)).thenReturn(1000L);
+        when(mongoTemplate.count(any(Query.class), eq(User.class))).thenReturn(998L);
+
+        CountRequest approximate = request(null);
+        approximate.setApproximate(true);
+
+        assertEquals(new CountResult(1000, "estimate", 0, false, null), countService.count(approximate));
+        assertEquals(new CountResult(998, "query", 0, false, null), countService.count(request(null)));
+        assertThrows(BadRequestException.class, () -> countService.count(request(Duration.ofSeconds(-1))));
+        assertThrows(BadRequestException.class, () -> countService.count(request(null, condition("age", "where", 1))));
+    }
+
+    @Test
+    void count_shouldCoalesceConcurrentIdenticalQueries() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(mongoTemplate.count(any(Query.class), eq(User.class))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 42L;
+        });
+
+        CompletableFuture<CountResult> leader = CompletableFuture.supplyAsync(() -> countService.count(request(null, condition("favoriteFruit", "eq", "Apple"))));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<CountResult> follower = CompletableFuture.supplyAsync(() -> countService.count(request(null, condition("favoriteFruit", "eq", "Apple"))));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals(42, leader.get(5, TimeUnit.SECONDS).getCount());
+        assertFalse(leader.get().isCoalesced());
+        assertEquals(42, follower.get(5, TimeUnit.SECONDS).getCount());
+        assertTrue(follower.get().isCoalesced());
+        verify(mongoTemplate, times(1)).count(any(Query.class), eq(User.class));
+    }
+}
@@ -0,0 +1,111 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonPatchCompilerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonPatchCompiler compiler;
+
+    @BeforeEach
+    void setUp() {
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", new MongoMappingContext());
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", objectMapper);
+
+        compiler = new JsonPatchCompiler();
+        ReflectionTestUtils.setField(compiler, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(compiler, "objectMapper", objectMapper);
+    }
+
+    private JsonPatchCompiler.CompiledPatch compile(String json) throws Exception {
+        return compiler.compile(objectMapper.readValue(json, JsonPatch.class));
+    }
+
+    private static String guards(JsonPatchCompiler.CompiledPatch compiled) {
+        return new Criteria().andOperator(compiled.guards()).getCriteriaObject().toJson();
+    }
+
+    @Test
+    void compile_nestedReplaceAndAppendAndTest() throws Exception {
+        JsonPatchCompiler.CompiledPatch compiled = compile("""
+                [
+                  { "op": "test", "path": "/age", "value": 39 },
+                  { "op": "replace", "path": "/company/0/location/address/1/address1", "value": "Updated Trivandrum" },
+                  { "op": "add", "path": "/skillset/-", "value": "postgresql" },
+                  { "op": "replace", "path": "/rollnumber", "value": 100 }
+                ]
+                """);
+
+        assertNotNull(compiled);
+        Document set = compiled.update().getUpdateObject().get("$set", Document.class);
+        assertEquals("Updated Trivandrum", set.get("company.0.location.address.1.address1"));
+        assertEquals(100, set.get("rollNumber"));
+        assertEquals("postgresql", compiled.update().getUpdateObject().get("$push", Document.class).get("skillSet"));
+        assertTrue(guards(compiled).contains("\"age\": 39"));
+        assertTrue(guards(compiled).contains("\"company.0.location.address.1.address1\": {\"$exists\": true}"));
+    }
+
+    @Test
+    void compile_addAtIndexUsesPushWithPosition() throws Exception {
+        JsonPatchCompiler.CompiledPatch compiled = compile("""
+                [ { "op": "add", "path": "/company/0/location/address/1", "value": { "address1": "NewArea1", "address2": "NewLandmark1" } } ]
+                """);
+
+        assertNotNull(compiled);
+        Document push = compiled.update().getUpdateObject().get("$push", Document.class);
+        assertTrue(push.containsKey("company.0.location.address"));
+        assertTrue(guards(compiled).contains("\"company.0.location.address.0\": {\"$exists\": true}"));
+    }
+
+    @Test
+    void compile_unknownTopLevelFieldGoesToExtras() throws Exception {
+        JsonPatchCompiler.CompiledPatch compiled = compile("""
+                [ { "op": "add", "path": "/nickname", "value": "Bibin" }, { "op": "remove", "path": "/company/1/email" } ]
+                """);
+
+        assertNotNull(compiled);
+        assertEquals("Bibin", compiled.update().getUpdateObject().get("$set", Document.class).get("extras.nickname"));
+        assertTrue(compiled.update().getUpdateObject().get("$unset", Document.class).containsKey("company.1.email"));
+    }
+
+    @Test
+    void compile_returnsNullForWhatCannotBeOneUpdate() throws Exception {
+        // move / copy
+        assertNull(compile("[{ \"op\": \"move\", \"from\": \"/skillset/6\", \"path\": \"/skillset/2\" }]"));
+        assertNull(compile("[{ \"op\": \"copy\", \"from\": \"/technology\", \"path\": \"/favoriteFruit\" }]"));
+        // remove of an array element
+        assertNull(compile("[{ \"op\": \"remove\", \"path\": \"/company/1\" }]"));
+        // overlapping paths
+        assertNull(compile("""
+                [ { "op": "replace", "path": "/company/0/email", "value": "a@b.com" }, { "op": "add", "path": "/company/-", "value": {} } ]
+                """));
+        // test after a change of the same path
+        assertNull(compile("""
+                [ { "op": "replace", "path": "/age", "value": 40 }, { "op": "test", "path": "/age", "value": 40 } ]
+                """));
+        // wrong value type and path not in the model
+        assertNull(compile("[{ \"op\": \"replace\", \"path\": \"/age\", \"value\": \"forty\" }]"));
+        assertNull(compile("[{ \"op\": \"replace\", \"path\": \"/company/0/unknown\", \"value\": 1 }]"));
+    }
+
+    @Test
+    void pointerTokens_unescapes() {
+        assertEquals(List.of("extras", "a/b", "c~d"), JsonPatchCompiler.pointerTokens("/extras/a~1b/c~0d"));
+        assertThrows(BadRequestException.class, () -> JsonPatchCompiler.pointerTokens("/extras/a.b"));
+    }
+}
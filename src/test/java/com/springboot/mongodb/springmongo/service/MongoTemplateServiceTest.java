@@ -0,0 +1,120 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.writebehind.UserWriteBehind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class MongoTemplateServiceTest {
+
+    private MongoTemplateService mongoTemplateService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", new MongoMappingContext());
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", new ObjectMapper());
+
+        mongoTemplateService = new MongoTemplateService();
+        ReflectionTestUtils.setField(mongoTemplateService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(mongoTemplateService, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+        ReflectionTestUtils.setField(mongoTemplateService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(mongoTemplateService, "singleFlight", new SingleFlight(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(mongoTemplateService, "userWriteBehind", new UserWriteBehind(new SimpleMeterRegistry(), false, Duration.ofMillis(100), 500, 10_000, 3));
+        ReflectionTestUtils.setField(mongoTemplateService, "userRollups", new UserRollups("off", Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ZERO));
+    }
+
+    @Test
+    void findByQueryAndEntityClass_shouldProjectRequestedFields() {
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(List.of(new User()));
+
+        mongoTemplateService.findByQueryAndEntityClass("Ranjith", Set.of("name", "rollnumber"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(User.class));
+        // json name (rollnumber) is accepted, the projection uses the property name
+        assertEquals(new Document("name", 1).append("rollNumber", 1), query.getValue().getFieldsObject());
+        assertEquals("Ranjith", query.getValue().getQueryObject().get("name.firstname"));
+    }
+
+    @Test
+    void findByQueryAndEntityClass_shouldLoadFullDocumentWithoutFields() {
+        mongoTemplateService.findByQueryAndEntityClass("Ranjith");
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(User.class));
+        assertTrue(query.getValue().getFieldsObject().isEmpty());
+    }
+
+    @Test
+    void findById_shouldUseProjectedFindOneOnlyWithFields() {
+        mongoTemplateService.findByIdWithObjectAndEntityClass("100");
+        verify(mongoTemplate).findById("100", User.class);
+
+        mongoTemplateService.findByIdWithObjectAndEntityClass("100", Set.of("age"));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findOne(query.capture(), eq(User.class));
+        assertEquals("100", query.getValue().getQueryObject().get("id"));
+        assertEquals(new Document("age", 1), query.getValue().getFieldsObject());
+    }
+
+    @Test
+    void findAndModify_shouldProjectReturnedDocument() {
+        mongoTemplateService.findAndModify("Ranjith", 60, Set.of("age"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(UpdateDefinition.class), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(new Document("age", 1), query.getValue().getFieldsObject());
+    }
+
+    @Test
+    void updateFirst_shouldMatchTheGivenName() {
+        // used to match the hard-coded "Alice" whatever name was passed
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        assertEquals(1, mongoTemplateService.updateFirst("Bob"));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(User.class));
+        assertEquals(new Document("name.firstname", "Bob"), query.getValue().getQueryObject());
+        assertEquals(new Document("$set", new Document("age", 35)), update.getValue().getUpdateObject());
+    }
+
+    @Test
+    void findOne_shouldRejectUnknownField() {
+        assertThrows(BadRequestException.class, () -> mongoTemplateService.findOne("Ranjith", Set.of("password")));
+        verifyNoInteractions(mongoTemplate);
+    }
+}
@@ -0,0 +1,170 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.request.AggregationRequest.Condition;
+import com.springboot.mongodb.springmongo.request.MultiUpdateRequest;
+import com.springboot.mongodb.springmongo.response.MultiUpdateResult;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class MultiUpdateServiceTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final UserCache userCache = mock(UserCache.class);
+    private final UserRollups userRollups = mock(UserRollups.class);
+    private final MultiUpdateService multiUpdateService = new MultiUpdateService();
+
+    @BeforeEach
+    void setUp() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", new ObjectMapper());
+        AggregationService aggregationService = new AggregationService();
+        ReflectionTestUtils.setField(aggregationService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(multiUpdateService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(multiUpdateService, "aggregationService", aggregationService);
+        ReflectionTestUtils.setField(multiUpdateService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(multiUpdateService, "userCache", userCache);
+        ReflectionTestUtils.setField(multiUpdateService, "userRollups", userRollups);
+        ReflectionTestUtils.setField(multiUpdateService, "defaultBatchSize", 1000);
+    }
+
+    private static Condition condition(String field, String op, Object value) {
+        Condition condition = new Condition();
+        condition.setField(field);
+        condition.setOp(op);
+        condition.setValue(value);
+        return condition;
+    }
+
+    private static MultiUpdateRequest request() {
+        MultiUpdateRequest request = new MultiUpdateRequest();
+        request.setFilter(List.of(condition("age", "lt", 18)));
+        return request;
+    }
+
+    @Test
+    void update_shouldConvertValuesToTheFieldTypes() {
+        MultiUpdateRequest request = request();
+        request.setSet(Map.of("favoriteFruit", "Apple", "age", "31"));
+        request.setInc(Map.of("rollnumber", 2));
+        request.setPush(Map.of("skillset", List.of("java", "mongo")));
+        request.setPull(Map.of("company.0.location.address", Map.of("address1", "Old")));
+        request.setUnset(List.of("extras.nickname"));
+
+        Document update = multiUpdateService.update(request, new ArrayList<>()).getUpdateObject();
+
+        assertEquals(31, update.get("$set", Document.class).get("age"));
+        assertEquals(2, update.get("$inc", Document.class).get("rollNumber"));
+        assertNotNull(update.get("$push", Document.class).get("skillSet"));
+        assertTrue(update.get("$pull", Document.class).containsKey("company.0.location.address"));
+        assertTrue(update.get("$unset", Document.class).containsKey("extras.nickname"));
+    }
+
+    @Test
+    void update_shouldRejectWhatDoesNotFitTheMapping() {
+        MultiUpdateRequest inc = request();
+        inc.setInc(Map.of("technology", 1));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(inc));
+
+        MultiUpdateRequest fraction = request();
+        fraction.setInc(Map.of("age", 1.5));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(fraction));
+
+        MultiUpdateRequest push = request();
+        push.setPush(Map.of("technology", "x"));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(push));
+
+        MultiUpdateRequest overlap = request();
+        overlap.setSet(Map.of("company.0", Map.of("title", "x")));
+        overlap.setUnset(List.of("company.0.email"));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(overlap));
+
+        MultiUpdateRequest id = request();
+        id.setSet(Map.of("id", "1"));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(id));
+
+        MultiUpdateRequest typo = request();
+        typo.setSet(Map.of("agee", 5));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(typo));
+
+        MultiUpdateRequest noFilter = new MultiUpdateRequest();
+        noFilter.setSet(Map.of("favoriteFruit", "Apple"));
+        assertThrows(BadRequestException.class, () -> multiUpdateService.update(noFilter));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void update_multiShouldRunOneUpdateMulti() {
+        MultiUpdateRequest request = request();
+        request.setInc(Map.of("age", 1));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(User.class))).thenReturn(UpdateResult.acknowledged(5, 4L, null));
+
+        MultiUpdateResult result = multiUpdateService.update(request);
+
+        assertEquals(5, result.getMatched());
+        assertEquals(4, result.getModified());
+        assertEquals(1, result.getBatches());
+        verify(userCache).invalidateAll();
+        verify(userRollups).recordChange();     // age is counted
+    }
+
+    @Test
+    void update_bulkShouldWriteTheMatchingIdsInBatches() {
+        MultiUpdateRequest request = request();
+        request.setSet(Map.of("favoriteFruit", "Apple"));
+        request.setMode("bulk");
+        request.setBatchSize(2);
+        List<User> users = new ArrayList<>();
+        for (String id : List.of("1", "2", "3")) {
+            User user = new User();
+            user.setId(id);
+            users.add(user);
+        }
+        when(mongoTemplate.stream(any(Query.class), eq(User.class))).thenReturn(users.stream());
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOps);
+        when(bulkOps.execute()).thenReturn(BulkWriteResult.acknowledged(0, 2, 0, 2, List.of(), List.of()),
+                BulkWriteResult.acknowledged(0, 1, 0, 0, List.of(), List.of()));
+
+        MultiUpdateResult result = multiUpdateService.update(request);
+
+        assertEquals(3, result.getMatched());
+        assertEquals(2, result.getModified());
+        assertEquals(2, result.getBatches());
+        assertEquals(2, result.getBatchMillis().size());
+        ArgumentCaptor<Query> ids = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(ids.capture(), eq(User.class));
+        assertEquals(new Document("id", 1), ids.getValue().getSortObject());     // _id order, no user seen twice
+        verify(userCache).invalidate("3");
+        verify(userRollups, never()).recordChange();
+    }
+}
@@ -0,0 +1,82 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.QueryPlanSummary;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class QueryDiagnosticsServiceTest {
+
+    private QueryDiagnosticsService service(MongoMappingContext mappingContext) {
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        QueryDiagnosticsService service = new QueryDiagnosticsService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        return service;
+    }
+
+    @Test
+    void command_shouldUseServiceFiltersWithStoredFieldNames() {
+        QueryDiagnosticsService service = service(new MongoMappingContext());
+        assertEquals(Document.parse("{find: 'users', filter: {'name.firstname': 'Ranjith'}}"),
+                service.command("findByQueryAndEntityClass", "Ranjith", 0, "id"));
+        assertEquals(Document.parse("{count: 'users', query: {age: {$gt: 30}}}"), service.command("count", null, 30, "id"));
+
+        MongoMappingContext compact = new MongoMappingContext();
+        compact.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+        Document page = service(compact).command("findPage", null, 0, "rollNumber");
+        assertEquals(List.of("rn", "_id"), List.copyOf(page.get("sort", Document.class).keySet()));
+
+        assertThrows(BadRequestException.class, () -> service.command("dropDatabase", null, 0, "id"));
+    }
+
+    @Test
+    void summarize_shouldReportCollectionScan() {
+        Document explain = Document.parse("""
+                {queryPlanner: {winningPlan: {stage: 'COLLSCAN', filter: {age: {$gt: 39}}}},
+                 executionStats: {nReturned: 3, executionTimeMillis: 12, totalKeysExamined: 0, totalDocsExamined: 10000}}
+                """);
+
+        QueryPlanSummary summary = QueryDiagnosticsService.summarize(explain);
+
+        assertTrue(summary.isCollectionScan());
+        assertEquals(List.of("COLLSCAN"), summary.getStages());
+        assertEquals(10000, summary.getDocsExamined());
+        assertEquals(3, summary.getReturned());
+    }
+
+    @Test
+    void summarize_shouldFindIndexInSbeAndAggregatePlans() {
+        Document explain = Document.parse("""
+                {stages: [{$cursor: {
+                    queryPlanner: {winningPlan: {queryPlan: {stage: 'FETCH', inputStage: {stage: 'IXSCAN', indexName: 'users_age_id'}}}},
+                    executionStats: {nReturned: 40, executionTimeMillis: 1, totalKeysExamined: 40, totalDocsExamined: 40}}},
+                  {$group: {_id: '$gender'}}]}
+                """);
+
+        QueryPlanSummary summary = QueryDiagnosticsService.summarize(explain);
+
+        assertFalse(summary.isCollectionScan());
+        assertEquals(List.of("FETCH", "IXSCAN"), summary.getStages());
+        assertEquals(List.of("users_age_id"), summary.getIndexes());
+        assertEquals(40, summary.getKeysExamined());
+    }
+}
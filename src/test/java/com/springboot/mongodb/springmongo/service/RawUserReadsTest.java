@@ -0,0 +1,101 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.springboot.mongodb.springmongo.cache.SingleFlight;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.RawUsers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RawUserReadsTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final RawUserReads rawUserReads = new RawUserReads();
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    @Mock
+    private MongoCollection<RawBsonDocument> rawCollection;
+
+    @Mock
+    private FindIterable<RawBsonDocument> find;
+
+    @Mock
+    private MongoCursor<RawBsonDocument> cursor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.getCollection("users")).thenReturn(collection);
+        when(collection.withDocumentClass(RawBsonDocument.class)).thenReturn(rawCollection);
+        when(rawCollection.find(any(Bson.class))).thenReturn(find);
+        when(find.projection(any())).thenReturn(find);
+        when(find.limit(1)).thenReturn(find);
+        when(find.cursor()).thenReturn(cursor);
+
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(rawUserReads, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(rawUserReads, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(rawUserReads, "singleFlight", new SingleFlight(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    void findById_concurrentReadsShouldShareOneRoundTrip() throws Exception {
+        RawBsonDocument stored = RawBsonDocument.parse("{\"_id\": \"102\"}");
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(cursor.hasNext()).thenAnswer(invocation -> {
+            reading.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        when(cursor.next()).thenReturn(stored);
+
+        RawUsers first = rawUserReads.findById("102", null, null);
+        RawUsers second = rawUserReads.findById("102", null, null);
+        CompletableFuture<Iterator<RawBsonDocument>> leader = CompletableFuture.supplyAsync(() -> first.cursor().get());
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Iterator<RawBsonDocument>> waiter = CompletableFuture.supplyAsync(() -> second.cursor().get());
+        Thread.sleep(200);     // the second read is waiting for the first one
+        release.countDown();
+
+        assertSame(stored, leader.get(5, TimeUnit.SECONDS).next());
+        assertSame(stored, waiter.get(5, TimeUnit.SECONDS).next());
+        verify(find, times(1)).cursor();
+        verify(cursor).close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.model.User;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReactiveMongoTemplateServiceTest {
+
+    private ReactiveMongoTemplateService reactiveMongoTemplateService;
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        reactiveMongoTemplateService = new ReactiveMongoTemplateService();
+        ReflectionTestUtils.setField(reactiveMongoTemplateService, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(reactiveMongoTemplateService, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void exactCount_shouldCountUsersOver25LikeTheServletService() {
+        when(reactiveMongoTemplate.exactCount(any(Query.class), eq(User.class))).thenReturn(Mono.just(7L));
+
+        StepVerifier.create(reactiveMongoTemplateService.exactCount())
+                .expectNext(7L)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoTemplate).exactCount(query.capture(), eq(User.class));
+        assertEquals(new Document("age", new Document("$gt", 25)), query.getValue().getQueryObject());
+    }
+}
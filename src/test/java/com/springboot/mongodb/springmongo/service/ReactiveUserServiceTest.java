@@ -0,0 +1,154 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.mongodb.client.result.UpdateResult;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.repository.ReactiveUserRepository;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ReactiveUserServiceTest {
+
+    private ReactiveUserService reactiveUserService;
+
+    @Mock
+    private ReactiveUserRepository reactiveUserRepository;
+
+    @Mock
+    private ReactiveMongoTemplate reactiveMongoTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", new MongoMappingContext());
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", objectMapper);
+        JsonPatchCompiler jsonPatchCompiler = new JsonPatchCompiler();
+        ReflectionTestUtils.setField(jsonPatchCompiler, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(jsonPatchCompiler, "objectMapper", objectMapper);
+
+        reactiveUserService = new ReactiveUserService();
+        ReflectionTestUtils.setField(reactiveUserService, "reactiveUserRepository", reactiveUserRepository);
+        ReflectionTestUtils.setField(reactiveUserService, "reactiveMongoTemplate", reactiveMongoTemplate);
+        ReflectionTestUtils.setField(reactiveUserService, "userFieldRegistry", userFieldRegistry);
+        ReflectionTestUtils.setField(reactiveUserService, "jsonPatchCompiler", jsonPatchCompiler);
+        ReflectionTestUtils.setField(reactiveUserService, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(reactiveUserService, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void findAll_shouldStreamWithCursorBatchSize() {
+        when(reactiveMongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(Flux.just(new User(), new User()));
+
+        StepVerifier.create(reactiveUserService.findAll(), 1)
+                .expectNextCount(1)
+                .thenRequest(1)
+                .expectNextCount(1)
+                .verifyComplete();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoTemplate).find(query.capture(), eq(User.class));
+        assertEquals(500, query.getValue().getMeta().getCursorBatchSize());
+    }
+
+    @Test
+    void replace_shouldBeEmptyWhenNothingMatched() {
+        when(reactiveMongoTemplate.replace(any(Query.class), any(User.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(0, 0L, null)));
+
+        StepVerifier.create(reactiveUserService.replace("999", new User())).verifyComplete();
+    }
+
+    @Test
+    void replace_shouldKeepTheId() {
+        when(reactiveMongoTemplate.replace(any(Query.class), any(User.class)))
+                .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+
+        StepVerifier.create(reactiveUserService.replace("103", new User()))
+                .assertNext(user -> assertEquals("103", user.getId()))
+                .verifyComplete();
+    }
+
+    @Test
+    void patch_shouldSendOneSetUpdate() {
+        User patched = new User();
+        patched.setAge(40);
+        when(reactiveMongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.just(patched));
+
+        StepVerifier.create(reactiveUserService.patch("102", Map.of("age", 40)))
+                .expectNext(patched)
+                .verifyComplete();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(reactiveMongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(40, update.getValue().getUpdateObject().get("$set", Document.class).get("age"));
+    }
+
+    @Test
+    void jsonPatch_shouldErrorWhenUserNotFound() throws Exception {
+        JsonPatch patch = objectMapper.readValue("[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Go\" }]", JsonPatch.class);
+        when(reactiveMongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.empty());
+        when(reactiveUserRepository.existsById("999")).thenReturn(Mono.just(false));
+
+        StepVerifier.create(reactiveUserService.jsonPatch("999", patch))
+                .expectError(UserNotFoundException.class)
+                .verify();
+    }
+
+    @Test
+    void jsonPatch_shouldNotCheckExistenceWhenPatched() throws Exception {
+        JsonPatch patch = objectMapper.readValue("[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Go\" }]", JsonPatch.class);
+        when(reactiveMongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.just(new User()));
+
+        StepVerifier.create(reactiveUserService.jsonPatch("100", patch)).expectNextCount(1).verifyComplete();
+
+        verify(reactiveUserRepository, never()).existsById(anyString());
+    }
+
+    @Test
+    void jsonPatch_shouldFallBackToInMemoryForMove() throws Exception {
+        User original = new User();
+        original.setId("100");
+        original.setSkillSet(new ArrayList<>(List.of("java", "spring", "mongo")));
+        JsonPatch patch = objectMapper.readValue("[{ \"op\": \"move\", \"from\": \"/skillset/2\", \"path\": \"/skillset/0\" }]", JsonPatch.class);
+
+        when(reactiveUserRepository.findById("100")).thenReturn(Mono.just(original));
+        when(reactiveUserRepository.save(any(User.class))).thenAnswer(inv -> Mono.just(inv.getArgument(0)));
+
+        StepVerifier.create(reactiveUserService.jsonPatch("100", patch))
+                .assertNext(user -> assertEquals(List.of("mongo", "java", "spring"), user.getSkillSet()))
+                .verifyComplete();
+        verifyNoInteractions(reactiveMongoTemplate);
+    }
+}
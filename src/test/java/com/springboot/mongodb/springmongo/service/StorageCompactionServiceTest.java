@@ -0,0 +1,127 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy;
+import com.springboot.mongodb.springmongo.model.Address;
+import com.springboot.mongodb.springmongo.model.Company;
+import com.springboot.mongodb.springmongo.model.Location;
+import com.springboot.mongodb.springmongo.model.Name;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.StorageCompactionResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class StorageCompactionServiceTest {
+
+    private final MongoMappingContext mappingContext = new MongoMappingContext();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final StorageCompactionService service = new StorageCompactionService();
+
+    @BeforeEach
+    void setUp() {
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(service, "userCache", new UserCache(10, Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void rename_shouldMatchWhatTheCompactConverterWrites() {
+        Document normal = write(new MongoMappingContext());
+        Document compact = write(compactContext());
+
+        StorageCompactionService.Renames toCompact = service.renames(mappingContext.getRequiredPersistentEntity(User.class), true);
+        StorageCompactionService.Renames toNormal = service.renames(mappingContext.getRequiredPersistentEntity(User.class), false);
+
+        assertEquals(compact, StorageCompactionService.rename(normal, toCompact));
+        assertEquals(normal, StorageCompactionService.rename(compact, toNormal));
+        assertEquals("Infopark", compact.getList("co", Document.class).get(0)
+                .get("loc", Document.class).getList("adr", Document.class).get(0).getString("a1"));
+        assertTrue(StorageCompactionService.bsonSize(compact) < StorageCompactionService.bsonSize(normal));
+    }
+
+    @Test
+    void migrate_dryRunShouldMeasureWithoutWriting() {
+        Document stored = write(new MongoMappingContext()).append("_class", User.class.getName());
+        Document compact = write(compactContext());
+        mockCollection(List.of(stored, compact));
+
+        StorageCompactionResult result = service.migrate("compact", true, 100);
+
+        assertEquals(2, result.getScanned());
+        assertEquals(1, result.getMigrated());
+        assertEquals(1, result.getUnchanged());
+        assertTrue(result.getBytesAfter() < result.getBytesBefore());
+        assertTrue(result.getSavedPercent() > 0);
+        verify(mongoTemplate, never()).executeCommand(any(Document.class));
+    }
+
+    @Test
+    void migrate_shouldRejectUnknownDirection() {
+        assertThrows(BadRequestException.class, () -> service.migrate("shrink", true, 100));
+        assertThrows(BadRequestException.class, () -> service.migrate("compact", true, 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockCollection(List<Document> documents) {
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        FindIterable<Document> find = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        var iterator = documents.iterator();
+        when(cursor.hasNext()).thenAnswer(inv -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(inv -> iterator.next());
+        when(find.batchSize(anyInt())).thenReturn(find);
+        when(find.iterator()).thenReturn(cursor);
+        when(collection.find()).thenReturn(find);
+        when(collection.getNamespace()).thenReturn(new MongoNamespace("springmongo", "users"));
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.getCollection("users")).thenReturn(collection);
+    }
+
+    private static MongoMappingContext compactContext() {
+        MongoMappingContext context = new MongoMappingContext();
+        context.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+        return context;
+    }
+
+    private static Document write(MongoMappingContext context) {
+        context.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setTypeMapper(new DefaultMongoTypeMapper(null));
+        converter.afterPropertiesSet();
+        User user = new User();
+        user.setId("100");
+        user.setRollNumber(7);
+        user.setName(new Name("Ranjith", "K"));
+        user.setTechnology("Java");
+        user.setCompany(List.of(new Company("IBS", "a@ibs.com", "123",
+                new Location("India", List.of(new Address("Infopark", "Kakkanad"))))));
+        user.setSkillSet(List.of("java"));
+        user.getExtras().put("nickname", "Ranju");
+        Document document = new Document();
+        converter.write(user, document);
+        return document;
+    }
+}
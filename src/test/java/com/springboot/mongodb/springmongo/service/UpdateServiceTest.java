@@ -1,15 +1,25 @@
 package com.springboot.mongodb.springmongo.service;
 
 import com.mongodb.client.result.UpdateResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
 import com.springboot.mongodb.springmongo.model.Address;
 import com.springboot.mongodb.springmongo.model.Company;
 import com.springboot.mongodb.springmongo.model.Location;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import com.springboot.mongodb.springmongo.writebehind.UserWriteBehind;
 import com.springboot.mongodb.springmongo.repository.UpdateRepository;
+import com.springboot.mongodb.springmongo.request.MatchedNestedUpdateRequest;
 import com.springboot.mongodb.springmongo.request.NestedUpdateRequest;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -17,12 +27,18 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.mongodb.core.ExecutableUpdateOperation;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -39,6 +55,15 @@ public class UpdateServiceTest {
     @Mock
     private MongoTemplate mongoTemplate;
 
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private UserRollups userRollups;
+
+    @Mock
+    private UserWriteBehind userWriteBehind;
+
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
@@ -100,6 +125,7 @@ public class UpdateServiceTest {
         boolean updated = updateService.updateNestedAddressField("102", req);
 
         assertTrue(updated);
+        verify(userCache).invalidate("102");
     }
 
     @Test
@@ -156,4 +182,80 @@ public class UpdateServiceTest {
         verify(terminatingUpdate).first();
     }
 
+    // real mapping with the short stored names, the array filters have to be mapped by the service itself
+    private void compactMapping() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+        ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", mappingContext);
+        ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(updateService, "userFieldRegistry", userFieldRegistry);
+    }
+
+    @Test
+    void updateMatchedNested_shouldUseArrayFiltersInsteadOfIndexes() {
+        compactMapping();
+        MatchedNestedUpdateRequest req = new MatchedNestedUpdateRequest();
+        req.setCompany(Map.of("title", "Software Engineer"));
+        req.setAddress(Map.of("address2", "Kerala"));
+        req.setSet(Map.of("address1", "Updated Trivandrum"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 2L, null));
+
+        assertTrue(updateService.updateMatchedNested("102", req));
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(User.class));
+        assertEquals("Updated Trivandrum", update.getValue().getUpdateObject().get("$set", Document.class)
+                .get("company.$[c].location.address.$[a].address1"));
+        assertEquals(List.of(new Document("c.t", "Software Engineer"), new Document("a.a2", "Kerala")),
+                update.getValue().getArrayFilters().stream().map(Update.ArrayFilter::asDocument).toList());
+        // the user must hold a matching element, no read before the write
+        assertTrue(query.getValue().getQueryObject().toJson().contains("$elemMatch"));
+        verify(updateRepository, never()).findById(any());
+        verify(userCache).invalidate("102");
+    }
+
+    @Test
+    void updateMatchedNested_addressOnlyShouldSearchEveryCompany() {
+        compactMapping();
+        MatchedNestedUpdateRequest req = new MatchedNestedUpdateRequest();
+        req.setAddress(Map.of("address2", "Kerala"));
+        req.setSet(Map.of("address1", "Updated"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        assertFalse(updateService.updateMatchedNested("999", req));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(User.class));
+        assertTrue(update.getValue().getUpdateObject().get("$set", Document.class)
+                .containsKey("company.$[].location.address.$[a].address1"));
+        assertEquals(1, update.getValue().getArrayFilters().size());
+    }
+
+    @Test
+    void updateMatchedNested_shouldRejectIndexesAndUnknownFields() {
+        compactMapping();
+        MatchedNestedUpdateRequest byIndex = new MatchedNestedUpdateRequest();
+        byIndex.setCompany(Map.of("title", "Software Engineer"));
+        byIndex.setSet(Map.of("location.address.0.address1", "x"));
+        assertThrows(BadRequestException.class, () -> updateService.updateMatchedNested("102", byIndex));
+
+        MatchedNestedUpdateRequest unknown = new MatchedNestedUpdateRequest();
+        unknown.setCompany(Map.of("name", "x"));
+        unknown.setSet(Map.of("title", "y"));
+        assertThrows(BadRequestException.class, () -> updateService.updateMatchedNested("102", unknown));
+
+        MatchedNestedUpdateRequest noMatch = new MatchedNestedUpdateRequest();
+        noMatch.setSet(Map.of("title", "y"));
+        assertThrows(BadRequestException.class, () -> updateService.updateMatchedNested("102", noMatch));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(User.class));
+    }
 }
@@ -0,0 +1,90 @@
+package com.springboot.mongodb.springmongo.service;
+
+import com.springboot.mongodb.springmongo.mapping.CompactFieldNamingStrategy;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.response.IndexReport;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class UserIndexReconcilerTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final IndexOperations indexOps = mock(IndexOperations.class);
+    private final UserIndexReconciler reconciler = new UserIndexReconciler();
+
+    private void setUp(MongoMappingContext mappingContext, List<Document> existing) {
+        mappingContext.setInitialEntitySet(Set.of(User.class));
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.afterPropertiesSet();
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(mongoTemplate.getCollectionName(User.class)).thenReturn("users");
+        when(mongoTemplate.indexOps(User.class)).thenReturn(indexOps);
+        List<IndexInfo> infos = new ArrayList<>();
+        existing.forEach(index -> infos.add(IndexInfo.indexInfoOf(index)));
+        when(indexOps.getIndexInfo()).thenReturn(infos);
+        ReflectionTestUtils.setField(reconciler, "mongoTemplate", mongoTemplate);
+    }
+
+    private static Document index(String name, Document keys) {
+        return new Document("name", name).append("key", keys);
+    }
+
+    @Test
+    void drift_shouldReportMissingWithoutCreating() {
+        setUp(new MongoMappingContext(), List.of(index("_id_", new Document("_id", 1))));
+
+        IndexReport report = reconciler.drift();
+
+        assertFalse(report.isInSync());
+        assertEquals(UserIndexReconciler.DESIRED.size(), report.getMissing().size());
+        assertTrue(report.getMissing().get(1).startsWith("users_age_id [age:1, _id:1]"));
+        verify(indexOps, never()).createIndex(any());
+    }
+
+    @Test
+    void reconcile_shouldMatchByKeysAndCreateOnlyMissing() {
+        setUp(new MongoMappingContext(), List.of(
+                index("_id_", new Document("_id", 1)),
+                index("name.firstname_1", new Document("name.firstname", 1)),              // other name, same keys
+                index("users_age_id", new Document("_id", 1).append("age", 1)),           // our name, keys in the wrong order
+                index("technology_1", new Document("technology", 1))));
+
+        IndexReport report = reconciler.reconcile(true);
+
+        assertEquals(List.of("users_firstname [name.firstname:1]"), report.getPresent());
+        assertEquals(1, report.getConflicting().size());
+        assertTrue(report.getConflicting().get(0).startsWith("users_age_id"));
+        assertEquals(List.of("technology_1 [technology:1]"), report.getExtra());
+        assertEquals(3, report.getCreated().size());
+        verify(indexOps, times(3)).createIndex(any(Index.class));
+    }
+
+    @Test
+    void drift_shouldUseStoredFieldNames() {
+        MongoMappingContext compact = new MongoMappingContext();
+        compact.setFieldNamingStrategy(new CompactFieldNamingStrategy());
+        setUp(compact, List.of(index("users_firstname", new Document("name.fn", 1))));
+
+        IndexReport report = reconciler.drift();
+
+        assertEquals(List.of("users_firstname [name.fn:1]"), report.getPresent());
+        assertTrue(report.getMissing().stream().anyMatch(missing -> missing.startsWith("users_rollnumber_id [rn:1, _id:1]")));
+    }
+}
@@ -4,12 +4,29 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.exception.BadRequestException;
+import com.springboot.mongodb.springmongo.exception.UserNotFoundException;
+import com.springboot.mongodb.springmongo.mapping.UserFieldRegistry;
 import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
 import com.springboot.mongodb.springmongo.repository.UserRepository;
+import org.bson.Document;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+import com.springboot.mongodb.springmongo.response.UserPage;
+
+import java.time.Duration;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +42,9 @@ public class UserServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private MongoTemplate mongoTemplate;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -47,6 +67,24 @@ public class UserServiceTest {
             var userRepositoryField = UserService.class.getDeclaredField("userRepository");
             userRepositoryField.setAccessible(true);
             userRepositoryField.set(userService, userRepository);
+
+            var mongoTemplateField = UserService.class.getDeclaredField("mongoTemplate");
+            mongoTemplateField.setAccessible(true);
+            mongoTemplateField.set(userService, mongoTemplate);
+
+            UserFieldRegistry userFieldRegistry = new UserFieldRegistry();
+            ReflectionTestUtils.setField(userFieldRegistry, "mappingContext", new MongoMappingContext());
+            ReflectionTestUtils.setField(userFieldRegistry, "objectMapper", objectMapper);
+            var userFieldRegistryField = UserService.class.getDeclaredField("userFieldRegistry");
+            userFieldRegistryField.setAccessible(true);
+            userFieldRegistryField.set(userService, userFieldRegistry);
+
+            JsonPatchCompiler jsonPatchCompiler = new JsonPatchCompiler();
+            ReflectionTestUtils.setField(jsonPatchCompiler, "userFieldRegistry", userFieldRegistry);
+            ReflectionTestUtils.setField(jsonPatchCompiler, "objectMapper", objectMapper);
+            ReflectionTestUtils.setField(userService, "jsonPatchCompiler", jsonPatchCompiler);
+            ReflectionTestUtils.setField(userService, "userCache", new UserCache(100, Duration.ofMinutes(1)));
+            ReflectionTestUtils.setField(userService, "userRollups", new UserRollups("off", Duration.ofSeconds(5), Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ZERO));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -55,9 +93,11 @@ public class UserServiceTest {
     @Test
     void saveUser_shouldReturnSavedUser() {
         User user = new User();
-        user.setId("101");
 
-        when(userRepository.save(user)).thenReturn(user);
+        when(userRepository.save(user)).thenAnswer(invocation -> {
+            user.setId("101");
+            return user;
+        });
 
         User result = userService.saveUser(user);
 
@@ -65,6 +105,26 @@ public class UserServiceTest {
         verify(userRepository, times(1)).save(user);
     }
 
+    @Test
+    void saveUser_withIdShouldMoveTheReplacedUserBetweenRollupCells() {
+        UserRollups userRollups = mock(UserRollups.class);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        User before = new User();
+        before.setAge(30);
+        User user = new User();
+        user.setId("101");
+        user.setAge(40);
+        when(mongoTemplate.findAndReplace(any(Query.class), eq(user), any(FindAndReplaceOptions.class))).thenReturn(before);
+
+        assertSame(user, userService.saveUser(user));
+
+        ArgumentCaptor<FindAndReplaceOptions> options = ArgumentCaptor.forClass(FindAndReplaceOptions.class);
+        verify(mongoTemplate).findAndReplace(any(Query.class), eq(user), options.capture());
+        assertTrue(options.getValue().isUpsert());
+        verify(userRollups).recordUpdate(before, user);
+        verify(userRollups, never()).recordChange();
+    }
+
 
     @Test
     void getAllUsers_shouldReturnListOfUsers() {
@@ -76,6 +136,92 @@ public class UserServiceTest {
         assertEquals(2, result.size());
     }
 
+    @Test
+    void streamAllUsers_shouldUseCursorWithBatchSize() {
+        User user = new User();
+        user.setId("101");
+        when(mongoTemplate.stream(any(Query.class), eq(User.class))).thenReturn(Stream.of(user));
+
+        try (Stream<User> result = userService.streamAllUsers()) {
+            assertEquals(1, result.count());
+        }
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(User.class));
+        assertTrue(query.getValue().getMeta().getCursorBatchSize() > 0);
+    }
+
+    @Test
+    void findPage_shouldReturnTokenWhenMoreResultsExist() {
+        User first = new User();
+        first.setId("101");
+        first.setAge(30);
+        User second = new User();
+        second.setId("102");
+        second.setAge(31);
+        User third = new User();
+        third.setId("103");
+        third.setAge(32);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(new ArrayList<>(List.of(first, second, third)));
+
+        UserPage<User> page = userService.findPage(2, "age", null, Set.of("name"));
+
+        assertEquals(2, page.getSize());
+        assertNotNull(page.getNextToken());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(User.class));
+        assertEquals(3, query.getValue().getLimit());
+        assertTrue(query.getValue().getFieldsObject().containsKey("name"));
+        assertTrue(query.getValue().getFieldsObject().containsKey("age"));
+
+        // the token of page one becomes a range condition for page two, no skip
+        reset(mongoTemplate);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(new ArrayList<>(List.of(third)));
+
+        UserPage<User> next = userService.findPage(2, "age", page.getNextToken(), null);
+
+        assertNull(next.getNextToken());
+        verify(mongoTemplate).find(query.capture(), eq(User.class));
+        assertEquals(0, query.getValue().getSkip());
+        assertTrue(query.getValue().getQueryObject().toJson().contains("\"$gt\": 31"));
+    }
+
+    @Test
+    void findPage_shouldContinuePastUsersWithoutTheSortValue() {
+        User first = new User();
+        first.setId("101");
+        User second = new User();
+        second.setId("102");
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(new ArrayList<>(List.of(first, second)));
+
+        // no dateOfJoining -> null sorts first, the next page must still reach the users that have one
+        String token = userService.findPage(1, "dateofjoining", null, null).getNextToken();
+        reset(mongoTemplate);
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(new ArrayList<>());
+        userService.findPage(1, "dateofjoining", token, null);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(User.class));
+        Document expected = Document.parse("""
+                {"$or": [{"dateOfJoining": {"$ne": null}}, {"$and": [{"dateOfJoining": null}, {"id": {"$gt": "101"}}]}]}""");
+        assertEquals(expected, query.getValue().getQueryObject());
+    }
+
+    @Test
+    void findPage_shouldRejectTokenOfAnotherSort() {
+        User first = new User();
+        first.setId("101");
+        User second = new User();
+        second.setId("102");
+        when(mongoTemplate.find(any(Query.class), eq(User.class))).thenReturn(new ArrayList<>(List.of(first, second)));
+
+        String token = userService.findPage(1, "id", null, null).getNextToken();
+
+        assertThrows(BadRequestException.class, () -> userService.findPage(1, "age", token, null));
+        assertThrows(BadRequestException.class, () -> userService.findPage(1, "gender", null, null));
+    }
+
     @Test
     void getUserById_shouldReturnUser() {
         User user = new User();
@@ -89,12 +235,51 @@ public class UserServiceTest {
     }
 
     @Test
-    void deleteUser_shouldCallDelete() {
-        doNothing().when(userRepository).deleteById("101");
+    void getUserById_shouldReadMongoOnlyOnceUntilInvalidated() {
+        User user = new User();
+        user.setId("105");
+        when(userRepository.findById("105")).thenReturn(Optional.of(user));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(user);
+
+        userService.getUserById("105");
+        userService.getUserById("105");
+        verify(userRepository, times(1)).findById("105");
+        assertEquals(1, userService.getCacheStats().getHits());
+
+        // a write evicts the entry, the next read goes to Mongo again
+        userService.patchUser("105", Map.of("technology", "Go"));
+        userService.getUserById("105");
+        verify(userRepository, times(2)).findById("105");
+
+        userService.deleteUser("105");
+        userService.getUserById("105");
+        verify(userRepository, times(3)).findById("105");
+    }
+
+    @Test
+    void getUserById_shouldNotCacheMissingUser() {
+        User user = new User();
+        user.setId("106");
+        when(userRepository.findById("106")).thenReturn(Optional.empty()).thenReturn(Optional.of(user));
+
+        assertTrue(userService.getUserById("106").isEmpty());
+        assertTrue(userService.getUserById("106").isPresent());
+    }
+
+    @Test
+    void deleteUser_shouldTakeTheRemovedUserOutOfTheRollup() {
+        UserRollups userRollups = mock(UserRollups.class);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        User removed = new User();
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(User.class))).thenReturn(removed);
 
         userService.deleteUser("101");
 
-        verify(userRepository).deleteById("101");
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndRemove(query.capture(), eq(User.class));
+        assertEquals("101", query.getValue().getQueryObject().get("id"));
+        verify(userRollups).recordRemove(removed);
     }
 
     @Test
@@ -106,17 +291,72 @@ public class UserServiceTest {
 
     @Test
     void patchUser_shouldUpdateFields() {
-        User existingUser = new User();
-        existingUser.setTechnology("Java");
+        User updatedUser = new User();
+        updatedUser.setTechnology("Python");
         Map<String, Object> updates = new HashMap<>();
         updates.put("technology", "Python");
+        updates.put("rollnumber", 12);
+        updates.put("favoriteFruit", null);
 
-        when(userRepository.findById("123")).thenReturn(Optional.of(existingUser));
-        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(updatedUser);
 
         User updated = userService.patchUser("123", updates);
 
         assertEquals("Python", updated.getTechnology());
+
+        // one atomic $set/$unset, no read and no full document save
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), options.capture(), eq(User.class));
+        assertEquals("Python", update.getValue().getUpdateObject().get("$set", Document.class).get("technology"));
+        assertEquals(12, update.getValue().getUpdateObject().get("$set", Document.class).get("rollNumber"));
+        assertTrue(update.getValue().getUpdateObject().get("$unset", Document.class).containsKey("favoriteFruit"));
+        assertTrue(options.getValue().isReturnNew());
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void patchUser_ofUncountedFieldsShouldNotTouchTheRollup() {
+        UserRollups userRollups = mock(UserRollups.class);
+        when(userRollups.tracksWrites()).thenReturn(true);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(new User());
+
+        userService.patchUser("123", Map.of("favoriteFruit", "Mango"));
+
+        // still the one findAndModify(returnNew), no rebuild
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), any(Update.class), options.capture(), eq(User.class));
+        assertTrue(options.getValue().isReturnNew());
+        verify(mongoTemplate, never()).findOne(any(Query.class), eq(User.class));
+        verify(userRollups, never()).recordChange();
+        verify(userRollups, never()).recordUpdate(any(User.class), any(Update.class));
+    }
+
+    @Test
+    void patchUser_ofACountedFieldShouldApplyItToThePreImage() {
+        UserRollups userRollups = mock(UserRollups.class);
+        when(userRollups.tracksWrites()).thenReturn(true);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        User before = new User();
+        before.setAge(30);
+        User after = new User();
+        after.setAge(40);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(before);
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(after);
+
+        assertSame(after, userService.patchUser("123", Map.of("age", 40)));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), options.capture(), eq(User.class));
+        assertFalse(options.getValue().isReturnNew());
+        verify(userRollups).recordUpdate(before, update.getValue());
+        verify(userRollups, never()).recordChange();
     }
 
     @Test
@@ -126,8 +366,9 @@ public class UserServiceTest {
         Map<String, Object> updates = new HashMap<>();
         updates.put("technology", "Go");
 
-        // Simulate user not found
-        when(userRepository.findById(id)).thenReturn(Optional.empty());
+        // Simulate user not found, findAndModify matches nothing
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(null);
 
         // When
         User result = userService.patchUser(id, updates);
@@ -137,20 +378,27 @@ public class UserServiceTest {
         verify(userRepository, never()).save(any());
     }
 
+    @Test
+    void patchUser_shouldRejectUnknownFieldAndId() {
+        assertThrows(BadRequestException.class, () -> userService.patchUser("1", Map.of("nickname", "x")));
+        assertThrows(BadRequestException.class, () -> userService.patchUser("1", Map.of("id", "2")));
+        assertThrows(BadRequestException.class, () -> userService.patchUser("1", Map.of("age", "not a number")));
+        verifyNoInteractions(mongoTemplate);
+    }
+
     @Test
     void jsonPatchUpdate_shouldApplyJsonPatchCorrectly() throws Exception {
-        // Original User
-        User originalUser = new User();
-        originalUser.setId("100");
-        originalUser.setTechnology("Java");
+        User patchedUser = new User();
+        patchedUser.setId("100");
+        patchedUser.setTechnology("Python");
 
         // Patch JSON (change technology)
         String patchStr = "[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Python\" }]";
         JsonPatch patch = objectMapper.readValue(patchStr, JsonPatch.class);
 
-        // Mock repo call
-        when(userRepository.findById("100")).thenReturn(Optional.of(originalUser));
-        when(userRepository.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
+        // compiled into a single findAndModify
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(patchedUser);
 
         // Call service method
         User result = userService.jsonPatchUpdate("100", patch);
@@ -158,20 +406,42 @@ public class UserServiceTest {
         // Assert
         assertNotNull(result);
         assertEquals("Python", result.getTechnology());
-        verify(userRepository, times(1)).save(result);
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals("Python", update.getValue().getUpdateObject().get("$set", Document.class).get("technology"));
+        assertTrue(query.getValue().getQueryObject().toJson().contains("\"technology\": {\"$exists\": true}"));
+        verify(userRepository, never()).findById(any());
+        verify(userRepository, never()).save(any());
     }
 
-
     @Test
-    void jsonPatchUpdate_shouldReturnNullOnPatchFailure() throws Exception {
+    void jsonPatchUpdate_shouldFallBackToInMemoryForMove() throws Exception {
         User originalUser = new User();
         originalUser.setId("100");
-        originalUser.setTechnology("Java");
+        originalUser.setSkillSet(new ArrayList<>(List.of("java", "spring", "mongo")));
 
+        JsonPatch patch = objectMapper.readValue("[{ \"op\": \"move\", \"from\": \"/skillset/2\", \"path\": \"/skillset/0\" }]", JsonPatch.class);
+
+        when(userRepository.findById("100")).thenReturn(Optional.of(originalUser));
+        when(userRepository.save(any(User.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        User result = userService.jsonPatchUpdate("100", patch);
+
+        assertEquals(List.of("mongo", "java", "spring"), result.getSkillSet());
+        verify(userRepository, times(1)).save(result);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void jsonPatchUpdate_shouldReturnNullOnPatchFailure() throws Exception {
         String invalidPatchStr = "[{ \"op\": \"replace\", \"path\": \"/invalidPath\", \"value\": \"Oops\" }]";
         JsonPatch patch = objectMapper.readValue(invalidPatchStr, JsonPatch.class);
 
-        when(userRepository.findById("100")).thenReturn(Optional.of(originalUser));
+        // the replace is guarded by "path exists", nothing matches so findAndModify gives null
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(null);
+        when(userRepository.existsById("100")).thenReturn(true);
 
         User result = userService.jsonPatchUpdate("100", patch);
 
@@ -179,4 +449,64 @@ public class UserServiceTest {
         verify(userRepository, never()).save(any());
     }
 
+    @Test
+    void jsonPatchUpdate_inMemoryFailureShouldNotTouchTheRollup() throws Exception {
+        UserRollups userRollups = mock(UserRollups.class);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        User user = new User();
+        user.setId("100");
+        when(userRepository.findById("100")).thenReturn(Optional.of(user));
+        // move can't be compiled, the in-memory way fails on the missing "from"
+        JsonPatch move = objectMapper.readValue("[{ \"op\": \"move\", \"from\": \"/skillset/5\", \"path\": \"/skillset/0\" }]", JsonPatch.class);
+
+        assertNull(userService.jsonPatchUpdate("100", move));
+
+        verify(userRepository, never()).save(any());
+        verifyNoInteractions(userRollups);
+    }
+
+    @Test
+    void jsonPatchUpdate_shouldThrowWhenUserNotFound() throws Exception {
+        JsonPatch patch = objectMapper.readValue("[{ \"op\": \"replace\", \"path\": \"/technology\", \"value\": \"Go\" }]", JsonPatch.class);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(null);
+        when(userRepository.existsById("999")).thenReturn(false);
+
+        assertThrows(UserNotFoundException.class, () -> userService.jsonPatchUpdate("999", patch));
+
+        // in-memory fallback: the load itself tells us
+        JsonPatch move = objectMapper.readValue("[{ \"op\": \"move\", \"from\": \"/skillset/1\", \"path\": \"/skillset/0\" }]", JsonPatch.class);
+        when(userRepository.findById("999")).thenReturn(Optional.empty());
+
+        assertThrows(UserNotFoundException.class, () -> userService.jsonPatchUpdate("999", move));
+    }
+
+    @Test
+    void replaceUser_shouldReplaceByIdInOneCall() {
+        UserRollups userRollups = mock(UserRollups.class);
+        ReflectionTestUtils.setField(userService, "userRollups", userRollups);
+        User before = new User();
+        before.setTechnology("Java");
+        User user = new User();
+        user.setTechnology("Go");
+        when(mongoTemplate.findAndReplace(any(Query.class), any(User.class))).thenReturn(before);
+
+        User result = userService.replaceUser("103", user);
+
+        assertEquals("103", result.getId());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndReplace(query.capture(), eq(user));
+        verify(userRollups).recordUpdate(before, user);
+        assertEquals("103", query.getValue().getQueryObject().get("id"));
+        verify(userRepository, never()).existsById(any());
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    void replaceUser_shouldReturnNullWhenNothingMatched() {
+        when(mongoTemplate.findAndReplace(any(Query.class), any(User.class))).thenReturn(null);
+
+        assertNull(userService.replaceUser("999", new User()));
+    }
+
 }
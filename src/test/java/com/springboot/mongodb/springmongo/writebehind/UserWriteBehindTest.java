@@ -0,0 +1,151 @@
+package com.springboot.mongodb.springmongo.writebehind;
+
+import com.springboot.mongodb.springmongo.cache.UserCache;
+import com.springboot.mongodb.springmongo.model.User;
+import com.springboot.mongodb.springmongo.rollup.UserRollups;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UserWriteBehindTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final BulkOperations bulkOps = mock(BulkOperations.class);
+    private final UserCache userCache = mock(UserCache.class);
+    private final UserRollups userRollups = mock(UserRollups.class);
+    private UserWriteBehind writeBehind;
+
+    private UserWriteBehind writeBehind(int maxPending) {
+        // long interval and max-ops, only the test flushes
+        UserWriteBehind writeBehind = new UserWriteBehind(new SimpleMeterRegistry(), true, Duration.ofHours(1), 1_000, maxPending, 0);
+        ReflectionTestUtils.setField(writeBehind, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(writeBehind, "userCache", userCache);
+        ReflectionTestUtils.setField(writeBehind, "userRollups", userRollups);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOps);
+        writeBehind.start();
+        return writeBehind;
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.stop();
+    }
+
+    @Test
+    void flush_shouldWriteOneMergedUpdatePerUser() {
+        writeBehind = writeBehind(100);
+
+        assertTrue(writeBehind.setById("102", "company.0.location.address.1.address1", "A"));
+        assertTrue(writeBehind.setById("103", "company.0.location.address.0.address1", "X"));
+        assertTrue(writeBehind.setById("102", "company.0.location.address.1.address1", "B"));
+        assertTrue(writeBehind.setById("102", "company.0.location.address.0.address2", "C"));
+        assertEquals(2, writeBehind.pending());
+        verifyNoInteractions(mongoTemplate);
+
+        assertEquals(2, writeBehind.flush());
+
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOps).updateOne(eq(new Query(Criteria.where("id").is("102"))), updates.capture());
+        verify(bulkOps).updateOne(eq(new Query(Criteria.where("id").is("103"))), any(Update.class));
+        verify(bulkOps).execute();
+        assertEquals(new Document("company.0.location.address.1.address1", "B").append("company.0.location.address.0.address2", "C"),
+                updates.getValue().getUpdateObject().get("$set", Document.class));
+        verify(userCache).invalidate("102");
+        verify(userCache).invalidate("103");
+        verify(userRollups, never()).recordChange();    // addresses aren't counted
+        assertEquals(0, writeBehind.pending());
+    }
+
+    @Test
+    void set_shouldReplaceChildPathsAndFlushBeforeSettingBelowAPendingParent() {
+        UserWriteBehind.Pending pending = new UserWriteBehind.Pending(new Query(), "102");
+        assertTrue(UserWriteBehind.merge(pending, "company.0.email", "a@b.c"));
+        assertTrue(UserWriteBehind.merge(pending, "company.0", Map.of("title", "x")));
+        assertEquals(Map.of("company.0", Map.of("title", "x")), pending.sets);
+        assertFalse(UserWriteBehind.merge(pending, "company.0.title", "y"));
+
+        writeBehind = writeBehind(100);
+        writeBehind.setById("102", "company.0", Map.of("title", "x"));
+        writeBehind.setById("102", "company.0.title", "y");
+        // the parent went out first, the child waits for the next flush
+        verify(bulkOps, times(1)).execute();
+        assertEquals(1, writeBehind.pending());
+    }
+
+    @Test
+    void set_shouldFlushOnTheCallersThreadWhenFull() {
+        writeBehind = writeBehind(2);
+
+        writeBehind.setFirst(new Query(Criteria.where("name.firstname").is("Alice")), "age", 30);
+        writeBehind.setById("102", "company.0.title", "x");
+        verifyNoInteractions(bulkOps);
+        writeBehind.setById("103", "company.0.title", "y");
+
+        verify(bulkOps, times(2)).updateOne(any(Query.class), any(Update.class));
+        verify(bulkOps).execute();
+        verify(userCache).invalidateAll();      // by name, the id is not known
+        verify(userRollups).recordChange();     // age is counted
+        assertEquals(1, writeBehind.pending());
+    }
+
+    @Test
+    void stop_shouldFlushAndWriteThroughAfterwards() {
+        writeBehind = writeBehind(100);
+        writeBehind.setById("102", "company.0.title", "x");
+
+        writeBehind.stop();
+
+        verify(bulkOps).execute();
+        assertFalse(writeBehind.accepting());
+        assertFalse(writeBehind.setById("102", "company.0.title", "y"));
+    }
+
+    @Test
+    void stop_shouldWriteEveryUpdateItAcceptedWhileStopping() throws Exception {
+        writeBehind = writeBehind(100_000);
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        CountDownLatch started = new CountDownLatch(4);
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.execute(() -> {
+                started.countDown();
+                for (int i = 0; i < 5_000; i++) {
+                    if (writeBehind.setById(writer + "-" + i, "company.0.title", "x")) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        started.await();
+
+        writeBehind.stop();
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+
+        // nothing answered "accepted" is left behind in the buffer
+        assertEquals(0, writeBehind.pending());
+        verify(bulkOps, times(accepted.get())).updateOne(any(Query.class), any(Update.class));
+    }
+}